@@ -0,0 +1,41 @@
+package io.github.douira.glsl_transformer_physics.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import io.github.douira.glsl_transformer_physics.ast.node.TranslationUnit;
+import io.github.douira.glsl_transformer_physics.ast.transform.ASTParser;
+import io.github.douira.glsl_transformer_physics.ast.transform.ASTParser.CacheStrategy;
+
+/**
+ * Measures the whole way from a string to an AST through
+ * {@link ASTParser#parseTranslationUnit(String)} with each cache strategy.
+ * Since the same input is parsed repeatedly, the caching strategies show their
+ * best case here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ASTParserBenchmark {
+  @Param({ Corpus.SMALL, Corpus.MEDIUM, Corpus.LARGE })
+  public String corpus;
+
+  @Param({ "ALL", "ALL_EXCLUDING_TRANSLATION_UNIT", "NONE" })
+  public CacheStrategy cacheStrategy;
+
+  private String source;
+  private ASTParser parser;
+
+  @Setup
+  public void setup() {
+    source = Corpus.load(corpus);
+    parser = new ASTParser();
+    parser.setCacheStrategy(cacheStrategy);
+  }
+
+  @Benchmark
+  public TranslationUnit parseTranslationUnit() {
+    return parser.parseTranslationUnit(source);
+  }
+}
@@ -0,0 +1,34 @@
+package io.github.douira.glsl_transformer_physics.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import io.github.douira.glsl_transformer_physics.GLSLParser.TranslationUnitContext;
+import io.github.douira.glsl_transformer_physics.ast.node.TranslationUnit;
+import io.github.douira.glsl_transformer_physics.ast.transform.ASTBuilder;
+import io.github.douira.glsl_transformer_physics.basic.EnhancedParser;
+
+/**
+ * Measures building an AST from an already parsed tree, including the
+ * registration of all nodes with a new root.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BuildBenchmark {
+  @Param({ Corpus.SMALL, Corpus.MEDIUM, Corpus.LARGE })
+  public String corpus;
+
+  private TranslationUnitContext parseTree;
+
+  @Setup
+  public void setup() {
+    parseTree = new EnhancedParser().parse(Corpus.load(corpus));
+  }
+
+  @Benchmark
+  public TranslationUnit build() {
+    return ASTBuilder.build(parseTree, ASTBuilder::visitTranslationUnit);
+  }
+}
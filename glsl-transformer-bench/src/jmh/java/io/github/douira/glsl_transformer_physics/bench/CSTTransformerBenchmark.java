@@ -0,0 +1,46 @@
+package io.github.douira.glsl_transformer_physics.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import io.github.douira.glsl_transformer_physics.cst.transform.*;
+import io.github.douira.glsl_transformer_physics.job_parameter.NonFixedJobParameters;
+
+/**
+ * Measures the CST path: parsing, running the transformation and printing
+ * with whitespace preservation. The empty transformer only parses and prints
+ * while the injecting transformer also modifies the parse tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CSTTransformerBenchmark {
+  @Param({ Corpus.SMALL, Corpus.MEDIUM, Corpus.LARGE })
+  public String corpus;
+
+  private String source;
+  private CSTTransformer<NonFixedJobParameters> emptyTransformer;
+  private CSTTransformer<NonFixedJobParameters> injectingTransformer;
+
+  @Setup
+  public void setup() {
+    source = Corpus.load(corpus);
+    emptyTransformer = new CSTTransformer<>();
+    injectingTransformer = new CSTTransformer<>(new Transformation<>(
+        RunPhase.withInjectExternalDeclarations(
+            CSTInjectionPoint.BEFORE_DECLARATIONS,
+            "uniform vec4 benchColor;",
+            "vec4 benchTint(vec4 color) { return color * benchColor; }")));
+  }
+
+  @Benchmark
+  public String transformEmpty() {
+    return emptyTransformer.transform(source, NonFixedJobParameters.INSTANCE);
+  }
+
+  @Benchmark
+  public String transformInject() {
+    return injectingTransformer.transform(source, NonFixedJobParameters.INSTANCE);
+  }
+}
@@ -0,0 +1,28 @@
+package io.github.douira.glsl_transformer_physics.bench;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Loads the bundled GLSL corpus that the benchmarks run on. The corpus files
+ * are realistic shaders of different sizes: {@code small} is a short vertex
+ * shader, {@code medium} a forward lighting fragment shader and {@code large}
+ * a deferred composite shader with many utility functions.
+ */
+public class Corpus {
+  public static final String SMALL = "small";
+  public static final String MEDIUM = "medium";
+  public static final String LARGE = "large";
+
+  public static String load(String name) {
+    var path = "/corpus/" + name + ".glsl";
+    try (var stream = Corpus.class.getResourceAsStream(path)) {
+      if (stream == null) {
+        throw new IllegalArgumentException("Missing corpus file " + path);
+      }
+      return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
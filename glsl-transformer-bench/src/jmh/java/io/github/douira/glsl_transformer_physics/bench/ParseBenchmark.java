@@ -0,0 +1,39 @@
+package io.github.douira.glsl_transformer_physics.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import io.github.douira.glsl_transformer_physics.GLSLParser.TranslationUnitContext;
+import io.github.douira.glsl_transformer_physics.basic.EnhancedParser;
+import io.github.douira.glsl_transformer_physics.basic.EnhancedParser.ParsingStrategy;
+
+/**
+ * Measures lexing and parsing into a parse tree with the non-caching
+ * {@link EnhancedParser} in both prediction modes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParseBenchmark {
+  @Param({ Corpus.SMALL, Corpus.MEDIUM, Corpus.LARGE })
+  public String corpus;
+
+  @Param({ "SLL_ONLY", "LL_ONLY" })
+  public ParsingStrategy strategy;
+
+  private String source;
+  private EnhancedParser parser;
+
+  @Setup
+  public void setup() {
+    source = Corpus.load(corpus);
+    parser = new EnhancedParser();
+    parser.setParsingStrategy(strategy);
+  }
+
+  @Benchmark
+  public TranslationUnitContext parse() {
+    return parser.parse(source);
+  }
+}
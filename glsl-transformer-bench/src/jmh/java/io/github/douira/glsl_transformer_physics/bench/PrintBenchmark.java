@@ -0,0 +1,35 @@
+package io.github.douira.glsl_transformer_physics.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import io.github.douira.glsl_transformer_physics.ast.node.TranslationUnit;
+import io.github.douira.glsl_transformer_physics.ast.print.*;
+import io.github.douira.glsl_transformer_physics.ast.transform.ASTParser;
+
+/**
+ * Measures printing an AST with each print type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrintBenchmark {
+  @Param({ Corpus.SMALL, Corpus.MEDIUM, Corpus.LARGE })
+  public String corpus;
+
+  @Param
+  public PrintType printType;
+
+  private TranslationUnit translationUnit;
+
+  @Setup
+  public void setup() {
+    translationUnit = new ASTParser().parseTranslationUnit(Corpus.load(corpus));
+  }
+
+  @Benchmark
+  public String print() {
+    return ASTPrinter.print(printType, translationUnit);
+  }
+}
@@ -0,0 +1,52 @@
+package io.github.douira.glsl_transformer_physics.bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.github.douira.glsl_transformer_physics.ast.node.expression.ReferenceExpression;
+import io.github.douira.glsl_transformer_physics.ast.query.Root;
+import io.github.douira.glsl_transformer_physics.ast.transform.ASTParser;
+
+/**
+ * Measures index-based operations on the root of a parsed AST. The renamed
+ * identifier is the most frequently used one in the corpus file. It's renamed
+ * and then renamed back so that every invocation does the same work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RootBenchmark {
+  @Param({ Corpus.SMALL, Corpus.MEDIUM, Corpus.LARGE })
+  public String corpus;
+
+  private Root root;
+  private String name;
+
+  @Setup
+  public void setup() {
+    root = new ASTParser().parseTranslationUnit(Corpus.load(corpus)).getRoot();
+    name = root.identifierIndex.index.entrySet().stream()
+        .max(Map.Entry.comparingByValue((a, b) -> Integer.compare(a.size(), b.size())))
+        .map(Map.Entry::getKey)
+        .orElseThrow();
+  }
+
+  @Benchmark
+  public boolean rename() {
+    root.rename(name, "bench_renamed");
+    return root.rename("bench_renamed", name);
+  }
+
+  @Benchmark
+  public boolean processIdentifiers(Blackhole blackhole) {
+    return root.process(name, blackhole::consume);
+  }
+
+  @Benchmark
+  public boolean processNodes(Blackhole blackhole) {
+    return root.process(root.nodeIndex.getStream(ReferenceExpression.class), blackhole::consume);
+  }
+}
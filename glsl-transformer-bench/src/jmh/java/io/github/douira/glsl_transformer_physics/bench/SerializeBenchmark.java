@@ -0,0 +1,42 @@
+package io.github.douira.glsl_transformer_physics.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import io.github.douira.glsl_transformer_physics.ast.node.TranslationUnit;
+import io.github.douira.glsl_transformer_physics.ast.transform.*;
+
+/**
+ * Measures writing an AST to the binary format and reading it back into a new
+ * root. Compare the read time with {@link ASTParserBenchmark} to see how much
+ * faster loading a serialized tree is than parsing the code again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializeBenchmark {
+  @Param({ Corpus.SMALL, Corpus.MEDIUM, Corpus.LARGE })
+  public String corpus;
+
+  private TranslationUnit translationUnit;
+  private byte[] serialized;
+
+  @Setup
+  public void setup() {
+    var parser = new ASTParser();
+    parser.setCacheStrategy(ASTParser.CacheStrategy.NONE);
+    translationUnit = parser.parseTranslationUnit(Corpus.load(corpus));
+    serialized = ASTSerializer.serialize(translationUnit);
+  }
+
+  @Benchmark
+  public byte[] serialize() {
+    return ASTSerializer.serialize(translationUnit);
+  }
+
+  @Benchmark
+  public TranslationUnit deserialize() {
+    return ASTSerializer.deserializeTranslationUnit(serialized);
+  }
+}
@@ -0,0 +1,627 @@
+#version 430 core
+#extension GL_ARB_shader_texture_lod : enable
+
+#define ATMOSPHERE_STEPS 16
+#define ATMOSPHERE_LIGHT_STEPS 4
+#define CLOUD_STEPS 24
+#define SSR_STEPS 32
+#define BLOOM_LEVELS 6
+#define TONEMAP_ACES
+
+uniform sampler2D colortex0;
+uniform sampler2D colortex1;
+uniform sampler2D colortex2;
+uniform sampler2D colortex3;
+uniform sampler2D colortex4;
+uniform sampler2D depthtex0;
+uniform sampler2D depthtex1;
+uniform sampler2D noisetex;
+uniform sampler2D shadowtex0;
+uniform sampler2D shadowtex1;
+uniform sampler2D shadowcolor0;
+
+uniform mat4 gbufferProjection;
+uniform mat4 gbufferProjectionInverse;
+uniform mat4 gbufferModelView;
+uniform mat4 gbufferModelViewInverse;
+uniform mat4 gbufferPreviousProjection;
+uniform mat4 gbufferPreviousModelView;
+uniform mat4 shadowModelView;
+uniform mat4 shadowProjection;
+
+uniform vec3 cameraPosition;
+uniform vec3 previousCameraPosition;
+uniform vec3 sunPosition;
+uniform vec3 moonPosition;
+uniform vec3 shadowLightPosition;
+uniform vec3 upPosition;
+uniform vec3 skyColor;
+uniform vec3 fogColor;
+
+uniform float viewWidth;
+uniform float viewHeight;
+uniform float near;
+uniform float far;
+uniform float frameTimeCounter;
+uniform float rainStrength;
+uniform float wetness;
+uniform float sunAngle;
+uniform float eyeAltitude;
+uniform float aspectRatio;
+uniform int frameCounter;
+uniform int worldTime;
+uniform int isEyeInWater;
+uniform ivec2 eyeBrightnessSmooth;
+
+in vec2 texcoord;
+flat in vec3 sunColor;
+flat in vec3 moonColor;
+flat in vec3 ambientColor;
+
+layout(location = 0) out vec4 outColor;
+layout(location = 1) out vec4 outBloom;
+
+layout(std140, binding = 0) uniform CameraData {
+	mat4 viewMatrix;
+	mat4 projectionMatrix;
+	vec4 viewport;
+	float exposure;
+	float bloomStrength;
+} camera;
+
+layout(std430, binding = 1) buffer LuminanceHistogram {
+	uint bins[256];
+	float averageLuminance;
+} histogram;
+
+const float PI = 3.14159265358979;
+const float TAU = 6.28318530717959;
+const float EARTH_RADIUS = 6371e3;
+const float ATMOSPHERE_HEIGHT = 100e3;
+const float RAYLEIGH_SCALE_HEIGHT = 8.5e3;
+const float MIE_SCALE_HEIGHT = 1.2e3;
+const vec3 RAYLEIGH_COEFFICIENT = vec3(5.802e-6, 13.558e-6, 33.1e-6);
+const vec3 MIE_COEFFICIENT = vec3(3.996e-6);
+const vec3 OZONE_COEFFICIENT = vec3(0.650e-6, 1.881e-6, 0.085e-6);
+const float MIE_G = 0.76;
+
+struct Ray {
+	vec3 origin;
+	vec3 direction;
+};
+
+struct SurfaceData {
+	vec3 albedo;
+	vec3 normal;
+	vec3 viewPos;
+	vec3 worldPos;
+	vec2 lightmap;
+	float roughness;
+	float f0;
+	float emission;
+	float porosity;
+	float subsurface;
+	float depth;
+	bool isWater;
+	bool isHand;
+};
+
+struct LightingResult {
+	vec3 diffuse;
+	vec3 specular;
+	vec3 scattered;
+};
+
+float saturate(float x) {
+	return clamp(x, 0.0, 1.0);
+}
+
+vec3 saturate(vec3 x) {
+	return clamp(x, vec3(0.0), vec3(1.0));
+}
+
+float pow2(float x) {
+	return x * x;
+}
+
+float pow5(float x) {
+	float x2 = x * x;
+	return x2 * x2 * x;
+}
+
+float luminance(vec3 color) {
+	return dot(color, vec3(0.2126, 0.7152, 0.0722));
+}
+
+vec3 toLinear(vec3 srgb) {
+	return mix(srgb / 12.92, pow((srgb + 0.055) / 1.055, vec3(2.4)), step(0.04045, srgb));
+}
+
+vec3 toSRGB(vec3 linear) {
+	return mix(linear * 12.92, 1.055 * pow(linear, vec3(1.0 / 2.4)) - 0.055, step(0.0031308, linear));
+}
+
+float linearizeDepth(float depth) {
+	return (2.0 * near * far) / (far + near - (depth * 2.0 - 1.0) * (far - near));
+}
+
+vec3 projectAndDivide(mat4 projectionMatrix, vec3 position) {
+	vec4 homogeneousPos = projectionMatrix * vec4(position, 1.0);
+	return homogeneousPos.xyz / homogeneousPos.w;
+}
+
+vec3 screenToView(vec3 screenPos) {
+	vec3 ndcPos = screenPos * 2.0 - 1.0;
+	return projectAndDivide(gbufferProjectionInverse, ndcPos);
+}
+
+vec3 viewToScreen(vec3 viewPos) {
+	return projectAndDivide(gbufferProjection, viewPos) * 0.5 + 0.5;
+}
+
+vec3 viewToWorld(vec3 viewPos) {
+	return mat3(gbufferModelViewInverse) * viewPos + gbufferModelViewInverse[3].xyz;
+}
+
+vec2 octEncode(vec3 n) {
+	n /= abs(n.x) + abs(n.y) + abs(n.z);
+	vec2 encoded = n.z >= 0.0 ? n.xy : (1.0 - abs(n.yx)) * sign(n.xy);
+	return encoded * 0.5 + 0.5;
+}
+
+vec3 octDecode(vec2 encoded) {
+	encoded = encoded * 2.0 - 1.0;
+	vec3 n = vec3(encoded, 1.0 - abs(encoded.x) - abs(encoded.y));
+	float t = max(-n.z, 0.0);
+	n.x += n.x >= 0.0 ? -t : t;
+	n.y += n.y >= 0.0 ? -t : t;
+	return normalize(n);
+}
+
+float bayer2(vec2 a) {
+	a = floor(a);
+	return fract(dot(a, vec2(0.5, a.y * 0.75)));
+}
+
+float bayer4(vec2 a) {
+	return bayer2(0.5 * a) * 0.25 + bayer2(a);
+}
+
+float bayer8(vec2 a) {
+	return bayer4(0.5 * a) * 0.25 + bayer2(a);
+}
+
+float bayer16(vec2 a) {
+	return bayer8(0.5 * a) * 0.25 + bayer2(a);
+}
+
+float interleavedGradientNoise(vec2 coord) {
+	coord += float(frameCounter % 64) * 5.588238;
+	return fract(52.9829189 * fract(0.06711056 * coord.x + 0.00583715 * coord.y));
+}
+
+float hash12(vec2 p) {
+	vec3 p3 = fract(vec3(p.xyx) * 0.1031);
+	p3 += dot(p3, p3.yzx + 33.33);
+	return fract((p3.x + p3.y) * p3.z);
+}
+
+vec3 hash33(vec3 p3) {
+	p3 = fract(p3 * vec3(0.1031, 0.1030, 0.0973));
+	p3 += dot(p3, p3.yxz + 33.33);
+	return fract((p3.xxy + p3.yxx) * p3.zyx);
+}
+
+float valueNoise(vec3 x) {
+	vec3 p = floor(x);
+	vec3 f = fract(x);
+	f = f * f * (3.0 - 2.0 * f);
+	vec2 uv = (p.xy + vec2(37.0, 17.0) * p.z) + f.xy;
+	vec2 rg = textureLod(noisetex, (uv + 0.5) / 256.0, 0.0).yx;
+	return mix(rg.x, rg.y, f.z);
+}
+
+float fbm(vec3 position, int octaves) {
+	float result = 0.0;
+	float amplitude = 0.5;
+	float frequency = 1.0;
+	for (int i = 0; i < octaves; ++i) {
+		result += amplitude * valueNoise(position * frequency);
+		frequency *= 2.03;
+		amplitude *= 0.5;
+	}
+	return result;
+}
+
+vec2 raySphereIntersection(Ray ray, float radius) {
+	float b = dot(ray.origin, ray.direction);
+	float c = dot(ray.origin, ray.origin) - radius * radius;
+	float discriminant = b * b - c;
+	if (discriminant < 0.0) {
+		return vec2(-1.0);
+	}
+	discriminant = sqrt(discriminant);
+	return vec2(-b - discriminant, -b + discriminant);
+}
+
+float rayleighPhase(float cosTheta) {
+	return 3.0 / (16.0 * PI) * (1.0 + cosTheta * cosTheta);
+}
+
+float henyeyGreenstein(float cosTheta, float g) {
+	float g2 = g * g;
+	return (1.0 - g2) / (4.0 * PI * pow(1.0 + g2 - 2.0 * g * cosTheta, 1.5));
+}
+
+float cornetteShanks(float cosTheta, float g) {
+	float g2 = g * g;
+	float numerator = 3.0 * (1.0 - g2) * (1.0 + cosTheta * cosTheta);
+	float denominator = 8.0 * PI * (2.0 + g2) * pow(1.0 + g2 - 2.0 * g * cosTheta, 1.5);
+	return numerator / denominator;
+}
+
+vec3 atmosphereDensity(float height) {
+	float rayleigh = exp(-height / RAYLEIGH_SCALE_HEIGHT);
+	float mie = exp(-height / MIE_SCALE_HEIGHT);
+	float ozone = max(0.0, 1.0 - abs(height - 25e3) / 15e3);
+	return vec3(rayleigh, mie, ozone);
+}
+
+vec3 atmosphereTransmittance(vec3 density) {
+	vec3 extinction = RAYLEIGH_COEFFICIENT * density.x + MIE_COEFFICIENT * 1.11 * density.y + OZONE_COEFFICIENT * density.z;
+	return exp(-extinction);
+}
+
+vec3 lightOpticalDepth(vec3 position, vec3 lightDir) {
+	Ray lightRay = Ray(position, lightDir);
+	float stepSize = raySphereIntersection(lightRay, EARTH_RADIUS + ATMOSPHERE_HEIGHT).y / float(ATMOSPHERE_LIGHT_STEPS);
+	vec3 opticalDepth = vec3(0.0);
+	for (int i = 0; i < ATMOSPHERE_LIGHT_STEPS; i++) {
+		vec3 samplePos = position + lightDir * (float(i) + 0.5) * stepSize;
+		float height = length(samplePos) - EARTH_RADIUS;
+		opticalDepth += atmosphereDensity(height) * stepSize;
+	}
+	return opticalDepth;
+}
+
+vec3 computeAtmosphere(vec3 viewDir, vec3 lightDir, vec3 lightColor, float dither) {
+	Ray ray = Ray(vec3(0.0, EARTH_RADIUS + max(eyeAltitude, 1.0), 0.0), viewDir);
+	vec2 atmosphereHit = raySphereIntersection(ray, EARTH_RADIUS + ATMOSPHERE_HEIGHT);
+	vec2 planetHit = raySphereIntersection(ray, EARTH_RADIUS);
+	float rayLength = planetHit.x > 0.0 ? planetHit.x : atmosphereHit.y;
+	float stepSize = rayLength / float(ATMOSPHERE_STEPS);
+
+	float cosTheta = dot(viewDir, lightDir);
+	float phaseRayleigh = rayleighPhase(cosTheta);
+	float phaseMie = cornetteShanks(cosTheta, MIE_G);
+
+	vec3 rayleighScattering = vec3(0.0);
+	vec3 mieScattering = vec3(0.0);
+	vec3 opticalDepth = vec3(0.0);
+
+	for (int i = 0; i < ATMOSPHERE_STEPS; i++) {
+		vec3 samplePos = ray.origin + ray.direction * (float(i) + dither) * stepSize;
+		float height = length(samplePos) - EARTH_RADIUS;
+		vec3 density = atmosphereDensity(height) * stepSize;
+		opticalDepth += density;
+
+		vec3 lightDepth = lightOpticalDepth(samplePos, lightDir);
+		vec3 totalDepth = opticalDepth + lightDepth;
+		vec3 attenuation = exp(-(RAYLEIGH_COEFFICIENT * totalDepth.x + MIE_COEFFICIENT * 1.11 * totalDepth.y + OZONE_COEFFICIENT * totalDepth.z));
+
+		rayleighScattering += density.x * attenuation;
+		mieScattering += density.y * attenuation;
+	}
+
+	return lightColor * (rayleighScattering * RAYLEIGH_COEFFICIENT * phaseRayleigh + mieScattering * MIE_COEFFICIENT * phaseMie);
+}
+
+float cloudDensity(vec3 position) {
+	vec3 wind = vec3(frameTimeCounter * 4.0, 0.0, frameTimeCounter * 2.0);
+	float base = fbm((position + wind) * 0.0015, 4);
+	float coverage = mix(0.45, 0.75, rainStrength);
+	float heightFraction = saturate((position.y - 1200.0) / 800.0);
+	float heightGradient = smoothstep(0.0, 0.2, heightFraction) * smoothstep(1.0, 0.6, heightFraction);
+	return saturate((base - (1.0 - coverage)) * heightGradient * 4.0);
+}
+
+vec4 raymarchClouds(vec3 worldDir, vec3 lightDir, float dither) {
+	if (worldDir.y <= 0.0) {
+		return vec4(0.0, 0.0, 0.0, 1.0);
+	}
+
+	float startDistance = (1200.0 - cameraPosition.y) / worldDir.y;
+	float endDistance = (2000.0 - cameraPosition.y) / worldDir.y;
+	float stepSize = (endDistance - startDistance) / float(CLOUD_STEPS);
+	vec3 position = cameraPosition + worldDir * (startDistance + stepSize * dither);
+
+	float phase = mix(henyeyGreenstein(dot(worldDir, lightDir), 0.6), henyeyGreenstein(dot(worldDir, lightDir), -0.3), 0.3);
+	vec3 scattering = vec3(0.0);
+	float transmittance = 1.0;
+
+	for (int i = 0; i < CLOUD_STEPS; i++) {
+		float density = cloudDensity(position);
+		if (density > 0.01) {
+			float lightDensity = 0.0;
+			for (int j = 1; j <= 3; j++) {
+				lightDensity += cloudDensity(position + lightDir * float(j) * 60.0);
+			}
+			float beer = exp(-lightDensity * 60.0 * 0.04);
+			float powder = 1.0 - exp(-density * 2.0);
+			vec3 luminanceStep = (sunColor * beer * powder * phase + ambientColor * 0.25) * density;
+			scattering += luminanceStep * transmittance * stepSize * 0.04;
+			transmittance *= exp(-density * stepSize * 0.04);
+			if (transmittance < 0.01) {
+				break;
+			}
+		}
+		position += worldDir * stepSize;
+	}
+
+	return vec4(scattering, transmittance);
+}
+
+SurfaceData decodeSurface(vec2 coord) {
+	SurfaceData surface;
+	vec4 data0 = texture(colortex0, coord);
+	vec4 data1 = texture(colortex1, coord);
+	vec4 data2 = texture(colortex2, coord);
+
+	surface.albedo = toLinear(data0.rgb);
+	surface.normal = octDecode(data1.xy);
+	surface.lightmap = data1.zw;
+	surface.roughness = pow2(1.0 - data2.r);
+	surface.f0 = data2.g;
+	surface.porosity = data2.b;
+	surface.emission = data2.a < 1.0 ? data2.a : 0.0;
+	surface.subsurface = data0.a;
+	surface.depth = texture(depthtex0, coord).r;
+	surface.isWater = texture(depthtex1, coord).r > surface.depth + 0.00001;
+	surface.isHand = surface.depth < 0.56;
+
+	vec3 screenPos = vec3(coord, surface.depth);
+	surface.viewPos = screenToView(screenPos);
+	surface.worldPos = viewToWorld(surface.viewPos);
+	return surface;
+}
+
+vec3 fresnelSchlick(float cosTheta, vec3 f0) {
+	return f0 + (1.0 - f0) * pow5(1.0 - cosTheta);
+}
+
+float distributionGGX(float NdotH, float alpha) {
+	float alpha2 = alpha * alpha;
+	float denominator = NdotH * NdotH * (alpha2 - 1.0) + 1.0;
+	return alpha2 / (PI * denominator * denominator);
+}
+
+float geometrySmith(float NdotV, float NdotL, float alpha) {
+	float k = alpha * 0.5;
+	float gv = NdotV / (NdotV * (1.0 - k) + k);
+	float gl = NdotL / (NdotL * (1.0 - k) + k);
+	return gv * gl;
+}
+
+vec3 specularBRDF(SurfaceData surface, vec3 viewDir, vec3 lightDir) {
+	vec3 halfway = normalize(viewDir + lightDir);
+	float NdotL = max(dot(surface.normal, lightDir), 0.0);
+	float NdotV = max(dot(surface.normal, viewDir), 1e-3);
+	float NdotH = max(dot(surface.normal, halfway), 0.0);
+	float VdotH = max(dot(viewDir, halfway), 0.0);
+
+	vec3 f0 = surface.f0 > 0.9 ? surface.albedo : vec3(surface.f0);
+	vec3 fresnel = fresnelSchlick(VdotH, f0);
+	float distribution = distributionGGX(NdotH, surface.roughness);
+	float geometry = geometrySmith(NdotV, NdotL, surface.roughness);
+	return fresnel * distribution * geometry / (4.0 * NdotV) ;
+}
+
+vec3 getShadowScreenPos(vec3 worldPos, vec3 worldNormal) {
+	vec3 shadowViewPos = (shadowModelView * vec4(worldPos + worldNormal * 0.03, 1.0)).xyz;
+	vec4 shadowClipPos = shadowProjection * vec4(shadowViewPos, 1.0);
+	float distortion = length(shadowClipPos.xy) * 0.85 + 0.15;
+	shadowClipPos.xy /= distortion;
+	shadowClipPos.z *= 0.2;
+	return shadowClipPos.xyz * 0.5 + 0.5;
+}
+
+vec3 sampleColoredShadow(vec3 shadowPos, float dither) {
+	vec3 shadowSum = vec3(0.0);
+	float angle = dither * TAU;
+	vec2 rotation = vec2(cos(angle), sin(angle));
+	const int samples = 12;
+	for (int i = 0; i < samples; i++) {
+		float r = sqrt((float(i) + 0.5) / float(samples));
+		float theta = float(i) * 2.39996323;
+		vec2 offset = vec2(cos(theta), sin(theta)) * r;
+		offset = vec2(offset.x * rotation.x - offset.y * rotation.y, offset.x * rotation.y + offset.y * rotation.x);
+		vec2 sampleCoord = shadowPos.xy + offset / 1536.0;
+
+		float solid = step(shadowPos.z, texture(shadowtex0, sampleCoord).r);
+		float transparent = step(shadowPos.z, texture(shadowtex1, sampleCoord).r);
+		vec4 color = texture(shadowcolor0, sampleCoord);
+		shadowSum += mix(vec3(solid), color.rgb * (1.0 - color.a), transparent - solid);
+	}
+	return shadowSum / float(samples);
+}
+
+float subsurfaceApproximation(SurfaceData surface, vec3 viewDir, vec3 lightDir) {
+	if (surface.subsurface <= 0.0) {
+		return 0.0;
+	}
+	float scatter = henyeyGreenstein(dot(viewDir, -lightDir), 0.4);
+	return surface.subsurface * scatter * 0.5;
+}
+
+vec3 blockLightColor(float blockLight) {
+	vec3 torchColor = vec3(1.0, 0.57, 0.28);
+	float falloff = pow(blockLight, 5.0) * 2.0 + pow(blockLight, 1.5) * 0.08;
+	return torchColor * falloff;
+}
+
+LightingResult computeLighting(SurfaceData surface, vec3 viewDir, float dither) {
+	LightingResult result;
+	vec3 lightDir = normalize(mat3(gbufferModelViewInverse) * shadowLightPosition * 0.01);
+	vec3 lightColor = sunAngle < 0.5 ? sunColor : moonColor;
+
+	vec3 shadowPos = getShadowScreenPos(surface.worldPos - cameraPosition, surface.normal);
+	vec3 shadow = sampleColoredShadow(shadowPos, dither);
+	float NdotL = max(dot(surface.normal, lightDir), 0.0);
+
+	vec3 skyLight = ambientColor * pow2(surface.lightmap.y);
+	vec3 blockLight = blockLightColor(surface.lightmap.x);
+	float sss = subsurfaceApproximation(surface, viewDir, lightDir);
+
+	result.diffuse = surface.albedo / PI * (lightColor * shadow * (NdotL + sss) + skyLight + blockLight);
+	result.diffuse += surface.albedo * surface.emission * 4.0;
+	result.specular = lightColor * shadow * NdotL * specularBRDF(surface, viewDir, lightDir);
+	result.scattered = vec3(0.0);
+	return result;
+}
+
+vec3 screenSpaceReflection(SurfaceData surface, vec3 viewDir, float dither, out bool hit) {
+	vec3 reflected = reflect(-normalize(surface.viewPos), mat3(gbufferModelView) * surface.normal);
+	vec3 startPos = surface.viewPos;
+	vec3 endPos = startPos + reflected * far * 0.5;
+	vec3 startScreen = viewToScreen(startPos);
+	vec3 endScreen = viewToScreen(endPos);
+	vec3 stepVector = (endScreen - startScreen) / float(SSR_STEPS);
+	vec3 rayPos = startScreen + stepVector * dither;
+
+	hit = false;
+	for (int i = 0; i < SSR_STEPS; i++) {
+		rayPos += stepVector;
+		if (any(lessThan(rayPos.xy, vec2(0.0))) || any(greaterThan(rayPos.xy, vec2(1.0)))) {
+			break;
+		}
+		float sceneDepth = texture(depthtex1, rayPos.xy).r;
+		float difference = rayPos.z - sceneDepth;
+		if (difference > 0.0 && difference < abs(stepVector.z) * 4.0) {
+			hit = true;
+			break;
+		}
+	}
+	return hit ? texture(colortex3, rayPos.xy).rgb : vec3(0.0);
+}
+
+vec3 waterAbsorption(vec3 color, float distance) {
+	const vec3 absorption = vec3(0.35, 0.065, 0.045);
+	const vec3 scatter = vec3(0.02, 0.08, 0.09);
+	vec3 transmittance = exp(-absorption * distance);
+	return color * transmittance + scatter * (1.0 - transmittance) * ambientColor;
+}
+
+vec3 applyFog(vec3 color, vec3 worldDir, float distance, vec3 sky) {
+	float fogDensity = mix(0.0008, 0.006, rainStrength);
+	if (isEyeInWater == 1) {
+		return waterAbsorption(color, distance);
+	} else if (isEyeInWater == 2) {
+		return mix(color, vec3(1.0, 0.3, 0.05), saturate(distance / 3.0));
+	}
+	float heightFalloff = exp(-max(cameraPosition.y + worldDir.y * distance - 63.0, 0.0) * 0.02);
+	float fogAmount = 1.0 - exp(-distance * fogDensity * heightFalloff);
+	return mix(color, sky, fogAmount);
+}
+
+vec3 tonemapACES(vec3 color) {
+	const mat3 inputMatrix = mat3(
+		0.59719, 0.07600, 0.02840,
+		0.35458, 0.90834, 0.13383,
+		0.04823, 0.01566, 0.83777);
+	const mat3 outputMatrix = mat3(
+		1.60475, -0.10208, -0.00327,
+		-0.53108, 1.10813, -0.07276,
+		-0.07367, -0.00605, 1.07602);
+	color = inputMatrix * color;
+	vec3 a = color * (color + 0.0245786) - 0.000090537;
+	vec3 b = color * (0.983729 * color + 0.4329510) + 0.238081;
+	return saturate(outputMatrix * (a / b));
+}
+
+vec3 tonemapReinhard(vec3 color) {
+	float lum = luminance(color);
+	return color / (1.0 + lum);
+}
+
+vec3 tonemap(vec3 color) {
+	color *= camera.exposure / max(histogram.averageLuminance, 1e-4);
+#ifdef TONEMAP_ACES
+	return tonemapACES(color);
+#else
+	return tonemapReinhard(color);
+#endif
+}
+
+vec3 bloomThreshold(vec3 color) {
+	float brightness = luminance(color);
+	float knee = 0.5;
+	float soft = clamp(brightness - 1.0 + knee, 0.0, 2.0 * knee);
+	soft = soft * soft / (4.0 * knee + 1e-4);
+	float contribution = max(soft, brightness - 1.0) / max(brightness, 1e-4);
+	return color * contribution;
+}
+
+vec3 starField(vec3 worldDir) {
+	vec3 cell = floor(worldDir * 300.0);
+	vec3 random = hash33(cell);
+	float star = step(0.9985, random.x) * random.y;
+	float night = saturate(-dot(normalize(sunPosition), normalize(upPosition)) * 4.0);
+	return vec3(star * night * 2.0);
+}
+
+vec3 renderSky(vec3 viewDir, vec3 worldDir, float dither) {
+	vec3 sunDir = normalize(mat3(gbufferModelViewInverse) * sunPosition);
+	vec3 moonDir = normalize(mat3(gbufferModelViewInverse) * moonPosition);
+	vec3 sky = computeAtmosphere(worldDir, sunDir, sunColor * 20.0, dither);
+	sky += computeAtmosphere(worldDir, moonDir, moonColor * 2.0, dither);
+	sky += starField(worldDir);
+
+	float sunDisk = smoothstep(0.9995, 0.9998, dot(worldDir, sunDir));
+	sky += sunColor * sunDisk * 50.0;
+
+	vec4 clouds = raymarchClouds(worldDir, sunAngle < 0.5 ? sunDir : moonDir, dither);
+	return sky * clouds.a + clouds.rgb;
+}
+
+void accumulateHistogram(vec3 color) {
+	float lum = luminance(color);
+	float logLum = clamp((log2(max(lum, 1e-5)) + 10.0) / 20.0, 0.0, 1.0);
+	uint bin = uint(logLum * 255.0);
+	atomicAdd(histogram.bins[bin], 1u);
+}
+
+void main() {
+	ivec2 texel = ivec2(gl_FragCoord.xy);
+	float dither = interleavedGradientNoise(gl_FragCoord.xy);
+	SurfaceData surface = decodeSurface(texcoord);
+
+	vec3 viewDir = -normalize(surface.viewPos);
+	vec3 worldDir = normalize(mat3(gbufferModelViewInverse) * -viewDir);
+	vec3 sky = renderSky(viewDir, worldDir, dither);
+	vec3 color;
+
+	if (surface.depth >= 1.0) {
+		color = sky;
+	} else {
+		vec3 worldViewDir = mat3(gbufferModelViewInverse) * viewDir;
+		LightingResult lighting = computeLighting(surface, worldViewDir, dither);
+		color = lighting.diffuse + lighting.specular;
+
+		if (surface.isWater || surface.f0 > 0.5 || surface.roughness < 0.1) {
+			bool hit;
+			vec3 reflection = screenSpaceReflection(surface, worldViewDir, dither, hit);
+			if (!hit) {
+				reflection = sky * pow2(surface.lightmap.y);
+			}
+			vec3 fresnel = fresnelSchlick(max(dot(surface.normal, worldViewDir), 0.0), vec3(surface.isWater ? 0.02 : surface.f0));
+			color = mix(color, reflection, fresnel * (1.0 - surface.roughness));
+		}
+
+		float distance = length(surface.viewPos);
+		color = applyFog(color, worldDir, distance, sky);
+	}
+
+	accumulateHistogram(color);
+	outBloom = vec4(bloomThreshold(color) * camera.bloomStrength, 1.0);
+	outColor = vec4(toSRGB(tonemap(color)), 1.0);
+}
@@ -0,0 +1,26 @@
+#version 330 core
+
+layout(location = 0) in vec3 vaPosition;
+layout(location = 1) in vec2 vaUV0;
+layout(location = 2) in vec4 vaColor;
+layout(location = 3) in vec3 vaNormal;
+
+uniform mat4 modelViewMatrix;
+uniform mat4 projectionMatrix;
+uniform mat3 normalMatrix;
+uniform vec3 chunkOffset;
+
+out vec2 texcoord;
+out vec4 glcolor;
+out vec3 normal;
+out float vertexDistance;
+
+void main() {
+	vec4 viewPos = modelViewMatrix * vec4(vaPosition + chunkOffset, 1.0);
+	gl_Position = projectionMatrix * viewPos;
+
+	texcoord = vaUV0;
+	glcolor = vaColor;
+	normal = normalize(normalMatrix * vaNormal);
+	vertexDistance = length(viewPos.xyz);
+}
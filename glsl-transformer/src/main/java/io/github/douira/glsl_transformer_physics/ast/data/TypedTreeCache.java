@@ -1,24 +1,61 @@
 package io.github.douira.glsl_transformer_physics.ast.data;
 
+import java.util.*;
 import java.util.function.*;
 
 import io.github.douira.glsl_transformer_physics.ast.data.TypedTreeCache.CacheKey;
 import io.github.douira.glsl_transformer_physics.tree.ExtendedContext;
-import io.github.douira.glsl_transformer_physics.util.LRUCache;
+import io.github.douira.glsl_transformer_physics.util.*;
 
-public class TypedTreeCache<V> extends LRUCache<CacheKey, V> {
+/**
+ * Caches trees by the string they were parsed from and the type of parse rule
+ * that was used. The actual storage is delegated to a cache that is also a
+ * map, which is how the map methods of this class are implemented. By default
+ * an {@link LRUCache} is used which may only be used by one thread. Create the
+ * tree cache with {@link #concurrent(int)} to share it between threads.
+ */
+public class TypedTreeCache<V> extends AbstractMap<CacheKey, V> implements Cache<CacheKey, V> {
   private static final int defaultCacheSize = 400;
+  private final Cache<CacheKey, V> cache;
+  private final Map<CacheKey, V> map;
+
+  public <C extends Map<CacheKey, V> & Cache<CacheKey, V>> TypedTreeCache(C cache) {
+    this.cache = cache;
+    this.map = cache;
+  }
 
   public TypedTreeCache(int maxSize, float loadFactor) {
-    super(maxSize, loadFactor);
+    this(new LRUCache<CacheKey, V>(maxSize, loadFactor));
   }
 
   public TypedTreeCache(int maxSize) {
-    super(maxSize);
+    this(new LRUCache<CacheKey, V>(maxSize));
   }
 
   public TypedTreeCache() {
-    super(defaultCacheSize);
+    this(defaultCacheSize);
+  }
+
+  /**
+   * Creates a tree cache that may be used by multiple threads at the same time.
+   * 
+   * @param <V>     The type of the cached trees
+   * @param maxSize The maximum number of cached trees
+   * @return The new concurrent tree cache
+   */
+  public static <V> TypedTreeCache<V> concurrent(int maxSize) {
+    return new TypedTreeCache<>(new ConcurrentLRUCache<CacheKey, V>(maxSize));
+  }
+
+  /**
+   * Creates a tree cache with the default size that may be used by multiple
+   * threads at the same time.
+   * 
+   * @param <V> The type of the cached trees
+   * @return The new concurrent tree cache
+   */
+  public static <V> TypedTreeCache<V> concurrent() {
+    return concurrent(defaultCacheSize);
   }
 
   public static class CacheKey {
@@ -62,13 +99,58 @@ public class TypedTreeCache<V> extends LRUCache<CacheKey, V> {
     }
   }
 
+  @Override
+  public V cachedGet(CacheKey key, Supplier<V> supplier) {
+    return cache.cachedGet(key, supplier);
+  }
+
+  @Override
+  public V cachedGetHydrateHit(CacheKey key, Supplier<V> supplier, Function<V, V> hydrator) {
+    return cache.cachedGetHydrateHit(key, supplier, hydrator);
+  }
+
+  @Override
+  public void clear() {
+    cache.clear();
+  }
+
+  @Override
+  public V get(Object key) {
+    return map.get(key);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return map.containsKey(key);
+  }
+
+  @Override
+  public V put(CacheKey key, V value) {
+    return map.put(key, value);
+  }
+
+  @Override
+  public V remove(Object key) {
+    return map.remove(key);
+  }
+
+  @Override
+  public int size() {
+    return map.size();
+  }
+
+  @Override
+  public Set<Map.Entry<CacheKey, V>> entrySet() {
+    return map.entrySet();
+  }
+
   public V cachedGet(String str, Class<? extends ExtendedContext> ruleType,
       Supplier<V> supplier) {
-    return super.cachedGet(new CacheKey(str, ruleType), supplier);
+    return cachedGet(new CacheKey(str, ruleType), supplier);
   }
 
   public V cachedGetHydrateHit(String str, Class<? extends ExtendedContext> ruleType,
       Supplier<V> supplier, Function<V, V> hydrator) {
-    return super.cachedGetHydrateHit(new CacheKey(str, ruleType), supplier, hydrator);
+    return cachedGetHydrateHit(new CacheKey(str, ruleType), supplier, hydrator);
   }
 }
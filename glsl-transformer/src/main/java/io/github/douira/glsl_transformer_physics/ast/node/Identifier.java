@@ -5,13 +5,20 @@ import org.antlr.v4.runtime.Token;
 import io.github.douira.glsl_transformer_physics.ast.node.basic.ASTNode;
 import io.github.douira.glsl_transformer_physics.ast.query.Root;
 import io.github.douira.glsl_transformer_physics.ast.traversal.ASTVisitor;
+import io.github.douira.glsl_transformer_physics.util.StringInterner;
 
 public class Identifier extends ASTNode {
+  /**
+   * The names of all identifiers are interned so that trees, including cached
+   * ones, share a single string instance for each name.
+   */
+  private static final StringInterner names = new StringInterner();
+
   private String name;
 
   public Identifier(String name) {
-    this.name = name;
     validateContents(name);
+    this.name = internName(name);
   }
 
   public Identifier(Token token) {
@@ -28,20 +35,30 @@ public class Identifier extends ASTNode {
     }
     validateContents(name);
     getRoot().unregisterIdentifierRename(this);
-    this.name = name;
+    this.name = internName(name);
     getRoot().registerIdentifierRename(this);
   }
 
   /**
    * Sets the name of this identifier without performing validation or registering
    * this change in the index. This method should only be called internally. Using
-   * it will lead to inconsistencies.
+   * it will lead to inconsistencies. The name is still interned.
    * 
    * @param name The new name of this identifier.
    */
   @Deprecated
   public void setNameInternal(String name) {
-    this.name = name;
+    this.name = internName(name);
+  }
+
+  /**
+   * Returns the shared instance of the given identifier name.
+   * 
+   * @param name The name to intern
+   * @return The shared instance of the name
+   */
+  public static String internName(String name) {
+    return names.intern(name);
   }
 
   public static final void validateContents(String str) {
@@ -91,7 +91,15 @@ public class TranslationUnit extends ListASTNode<ExternalDeclaration> {
   }
 
   public CompoundStatement getFunctionDefinitionBody(String functionName) {
-    return getRoot().identifierIndex.getStream(functionName)
+    // function names are never declared inside of a function body, so the
+    // identifiers are read without building the pending bodies
+    var root = getRoot();
+    root.buildIndexes();
+    var identifiers = root.identifierIndex.index.get(functionName);
+    if (identifiers == null) {
+      return null;
+    }
+    return identifiers.stream()
         .map(id -> id.getBranchAncestor(FunctionDefinition.class, FunctionDefinition::getFunctionPrototype))
         .filter(Objects::nonNull).findAny().map(FunctionDefinition::getBody).orElse(null);
   }
@@ -7,6 +7,7 @@ import java.util.stream.Stream;
 import org.antlr.v4.runtime.misc.Interval;
 
 import io.github.douira.glsl_transformer_physics.ast.data.ChildNodeList;
+import io.github.douira.glsl_transformer_physics.ast.node.external_declaration.FunctionDefinition;
 import io.github.douira.glsl_transformer_physics.ast.query.Root;
 import io.github.douira.glsl_transformer_physics.ast.transform.*;
 import io.github.douira.glsl_transformer_physics.ast.traversal.*;
@@ -37,10 +38,10 @@ import io.github.douira.glsl_transformer_physics.util.CompatUtil;
 public abstract class ASTNode {
   private ASTNode parent;
   private Consumer<ASTNode> selfReplacer;
-  private Root root = Root.getActiveBuildRoot();
+  private Root root;
   protected Template<?> template = null;
   public static final Interval SYNTHETIC_SOURCE = new Interval(0, 0);
-  private final Interval sourceLines = ASTBuilder.getActiveSourceLines();
+  private final Interval sourceLines;
 
   /**
    * Whether this node has been registered with the root. This is only used when
@@ -50,6 +51,10 @@ public abstract class ASTNode {
   private boolean registered = false;
 
   public ASTNode() {
+    // read both values from the build context of this thread with one lookup
+    var context = BuildContext.get();
+    root = context.getActiveBuildRoot();
+    sourceLines = context.getActiveSourceLines();
   }
 
   public abstract <R> R accept(ASTVisitor<R> visitor);
@@ -267,6 +272,16 @@ public abstract class ASTNode {
     public void visitVoid(ASTNode node) {
       node.setRoot(root);
     }
+
+    @Override
+    public Void visitFunctionDefinition(FunctionDefinition node) {
+      // a pending body is built in whichever root the definition is in by then
+      visit(node.getFunctionPrototype());
+      if (!node.isBodyPending()) {
+        visitSafe(null, node.getBody());
+      }
+      return null;
+    }
   }
 
   private static class UnregisterVisitor extends ASTVoidVisitor {
@@ -274,6 +289,16 @@ public abstract class ASTNode {
     public void visitVoid(ASTNode node) {
       node.unregister();
     }
+
+    @Override
+    public Void visitFunctionDefinition(FunctionDefinition node) {
+      // the nodes of a pending body haven't been registered
+      visit(node.getFunctionPrototype());
+      if (!node.isBodyPending()) {
+        visitSafe(null, node.getBody());
+      }
+      return null;
+    }
   }
 
   private void setRoot(Root root) {
@@ -307,6 +332,9 @@ public abstract class ASTNode {
   @SuppressWarnings("unchecked") // we rely on our construction doing the right thing
   public boolean setParent(ASTNode parent, Consumer<? extends ASTNode> setter) {
     Objects.requireNonNull(parent);
+    if (root != null) {
+      root.notifyParentChange(this);
+    }
 
     // always set the self replacer since the node might have moved inside its
     // parent without changing the parent
@@ -394,6 +422,9 @@ public abstract class ASTNode {
    * been (efficiently) removed from the parent.
    */
   public void detachParent() {
+    if (parent != null && root != null) {
+      root.notifyDetached(this);
+    }
     parent = null;
     selfReplacer = null;
   }
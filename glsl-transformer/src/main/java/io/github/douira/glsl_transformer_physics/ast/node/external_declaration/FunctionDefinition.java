@@ -1,5 +1,7 @@
 package io.github.douira.glsl_transformer_physics.ast.node.external_declaration;
 
+import java.util.function.Supplier;
+
 import io.github.douira.glsl_transformer_physics.ast.node.statement.CompoundStatement;
 import io.github.douira.glsl_transformer_physics.ast.node.type.specifier.FunctionPrototype;
 import io.github.douira.glsl_transformer_physics.ast.query.Root;
@@ -9,11 +11,32 @@ public class FunctionDefinition extends ExternalDeclaration {
   protected FunctionPrototype functionPrototype;
   protected CompoundStatement body;
 
+  /**
+   * The supplier of the body if it hasn't been built yet. It is called with the
+   * root of this node as the active build root and may be called more than
+   * once if this node is cloned before the body is built.
+   */
+  private Supplier<CompoundStatement> bodyBuilder;
+
   public FunctionDefinition(FunctionPrototype functionPrototype, CompoundStatement body) {
     this.functionPrototype = setup(functionPrototype, this::setFunctionPrototype);
     this.body = setup(body, this::setBody);
   }
 
+  /**
+   * Creates a function definition with a body that is only built when it is
+   * first accessed. Until then, the nodes of the body aren't part of the tree
+   * and aren't registered with the root. The root builds all pending bodies
+   * before it answers queries that could return nodes from them.
+   * 
+   * @param functionPrototype The function prototype
+   * @param bodyBuilder       The supplier that builds the body
+   */
+  public FunctionDefinition(FunctionPrototype functionPrototype, Supplier<CompoundStatement> bodyBuilder) {
+    this.functionPrototype = setup(functionPrototype, this::setFunctionPrototype);
+    this.bodyBuilder = bodyBuilder;
+  }
+
   public FunctionPrototype getFunctionPrototype() {
     return functionPrototype;
   }
@@ -24,14 +47,44 @@ public class FunctionDefinition extends ExternalDeclaration {
   }
 
   public CompoundStatement getBody() {
+    buildBody();
     return body;
   }
 
   public void setBody(CompoundStatement body) {
+    if (bodyBuilder != null) {
+      bodyBuilder = null;
+      getRoot().unregisterPendingBody(this);
+    }
     updateParents(this.body, body, this::setBody);
     this.body = body;
   }
 
+  /**
+   * Checks if the body of this function definition still needs to be built.
+   * 
+   * @return {@code true} if the body hasn't been built yet
+   */
+  public boolean isBodyPending() {
+    return bodyBuilder != null;
+  }
+
+  /**
+   * Builds the body of this function definition if it was constructed with a
+   * body builder and the body hasn't been built yet. The nodes of the body are
+   * registered with the root of this node.
+   */
+  public void buildBody() {
+    if (bodyBuilder == null) {
+      return;
+    }
+    var builder = bodyBuilder;
+    bodyBuilder = null;
+    var root = getRoot();
+    root.unregisterPendingBody(this);
+    body = setup(Root.indexNodes(root, builder), this::setBody);
+  }
+
   @Override
   public ExternalDeclarationType getExternalDeclarationType() {
     return ExternalDeclarationType.FUNCTION_DEFINITION;
@@ -56,6 +109,10 @@ public class FunctionDefinition extends ExternalDeclaration {
 
   @Override
   public FunctionDefinition clone() {
+    if (bodyBuilder != null) {
+      // the clone builds its own copy of the body when it's accessed
+      return new FunctionDefinition(clone(functionPrototype), bodyBuilder);
+    }
     return new FunctionDefinition(clone(functionPrototype), clone(body));
   }
 
@@ -1,5 +1,7 @@
 package io.github.douira.glsl_transformer_physics.ast.print;
 
+import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import io.github.douira.glsl_transformer_physics.GLSLLexer;
@@ -22,7 +24,6 @@ import io.github.douira.glsl_transformer_physics.ast.node.type.initializer.Neste
 import io.github.douira.glsl_transformer_physics.ast.node.type.qualifier.*;
 import io.github.douira.glsl_transformer_physics.ast.node.type.specifier.*;
 import io.github.douira.glsl_transformer_physics.ast.node.type.struct.*;
-import io.github.douira.glsl_transformer_physics.ast.print.token.EOFToken;
 
 /**
  * The AST printer emits tokens to convert an AST node into a string with the
@@ -31,20 +32,87 @@ import io.github.douira.glsl_transformer_physics.ast.print.token.EOFToken;
  */
 public class ASTPrinter extends ASTPrinterBase {
   private final Deque<Expression> precedenceWrapped = new ArrayDeque<>();
+  private boolean removeRedundantGrouping = false;
 
   public ASTPrinter(TokenProcessor tokenProcessor) {
     super(tokenProcessor);
   }
 
+  private static ASTPrinter forType(PrintType type, TokenProcessor tokenProcessor) {
+    var printer = new ASTPrinter(tokenProcessor);
+    printer.setRemoveRedundantGrouping(type == PrintType.MINIFIED);
+    return printer;
+  }
+
+  /**
+   * Sets whether grouping expressions that don't change the meaning of the
+   * expression they're in should be printed without parentheses. This is used
+   * by the minified print type.
+   * 
+   * @param removeRedundantGrouping Whether to leave out redundant parentheses
+   */
+  public void setRemoveRedundantGrouping(boolean removeRedundantGrouping) {
+    this.removeRedundantGrouping = removeRedundantGrouping;
+  }
+
+  private void printNode(ASTNode node) {
+    startVisit(node);
+    finalizePrinting();
+  }
+
   public static String printAST(TokenProcessor tokenProcessor, ASTNode node) {
     var printer = new ASTPrinter(tokenProcessor);
-    printer.startVisit(node);
-    printer.finalizePrinting();
+    printer.printNode(node);
     return printer.generateString();
   }
 
+  /**
+   * Prints the node with the given token processor without generating a
+   * string. This is used with token processors that write to an output.
+   * 
+   * @param tokenProcessor The token processor to print with
+   * @param node           The node to print
+   */
+  public static void printASTInto(TokenProcessor tokenProcessor, ASTNode node) {
+    new ASTPrinter(tokenProcessor).printNode(node);
+  }
+
   public static String print(PrintType type, ASTNode node) {
-    return printAST(type.getTokenProcessor(), node);
+    var printer = forType(type, type.getTokenProcessor());
+    printer.printNode(node);
+    return printer.generateString();
+  }
+
+  /**
+   * Prints the node and writes the code to the given output while it's being
+   * printed. This avoids creating a string of the whole code if it's written
+   * to a {@link java.io.Writer} or another kind of output anyway.
+   * 
+   * @param type   The print type to use
+   * @param node   The node to print
+   * @param output The output to write to
+   * @throws IOException If writing to the output fails
+   */
+  public static void print(PrintType type, ASTNode node, Appendable output) throws IOException {
+    try {
+      forType(type, type.getTokenProcessor(output)).printNode(node);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Prints the node and writes the code encoded as UTF-8 to the given buffer.
+   * 
+   * @param type   The print type to use
+   * @param node   The node to print
+   * @param buffer The buffer to write to
+   * @throws java.nio.BufferOverflowException If the buffer is too small
+   */
+  public static void print(PrintType type, ASTNode node, ByteBuffer buffer) {
+    var appender = new ByteBufferAppender(buffer);
+    forType(type, type.getTokenProcessor(appender)).printNode(node);
+    appender.flush();
   }
 
   public static String printSimple(ASTNode node) {
@@ -59,6 +127,10 @@ public class ASTPrinter extends ASTPrinterBase {
     return print(PrintType.COMPACT, node);
   }
 
+  public static String printMinified(ASTNode node) {
+    return print(PrintType.MINIFIED, node);
+  }
+
   public static String printIndentedAnnotated(ASTNode node) {
     return print(PrintType.INDENTED_ANNOTATED, node);
   }
@@ -74,7 +146,7 @@ public class ASTPrinter extends ASTPrinterBase {
     visitSafe(node.getVersionStatement());
     emitLiteralSafe(node.outputOptions.getPrintHeader());
     visitChildren(node);
-    emitToken(new EOFToken());
+    emitEOF();
     return null;
   }
 
@@ -189,12 +261,26 @@ public class ASTPrinter extends ASTPrinterBase {
 
   @Override
   public void enterDecrementPrefixExpression(DecrementPrefixExpression node) {
-    emitType(GLSLLexer.MINUS_OP, GLSLLexer.MINUS_OP);
+    emitType(GLSLLexer.DEC_OP);
   }
 
   @Override
   public Void visitGroupingExpression(GroupingExpression node) {
     var operand = node.getOperand();
+    if (removeRedundantGrouping) {
+      // the outermost of nested grouping expressions decides for all of them
+      while (operand instanceof GroupingExpression grouping) {
+        operand = grouping.getOperand();
+      }
+      if (node.getParent() instanceof GroupingExpression || isRedundantGrouping(node, operand)) {
+        visit(operand);
+      } else {
+        emitType(GLSLLexer.LPAREN);
+        visit(operand);
+        emitType(GLSLLexer.RPAREN);
+      }
+      return null;
+    }
     if (operand.getExpressionType() == ExpressionType.GROUPING) {
       visit(operand);
     } else {
@@ -205,9 +291,72 @@ public class ASTPrinter extends ASTPrinterBase {
     return null;
   }
 
+  /**
+   * Returns the precedence of an expression type for deciding if parentheses
+   * are needed. Unlike in the expression type table, equality has a lower
+   * precedence than the other comparisons.
+   */
+  private static int getGroupingPrecedence(ExpressionType type) {
+    return type == ExpressionType.EQUAL || type == ExpressionType.NOT_EQUAL
+        ? type.precedence + 1
+        : type.precedence;
+  }
+
+  /**
+   * Checks if the parentheses of a grouping expression can be left out without
+   * changing how the printed code is parsed.
+   * 
+   * @param node    The grouping expression
+   * @param operand The first operand of the grouping expression that isn't a
+   *                grouping expression itself
+   * @return Whether the parentheses are redundant
+   */
+  private static boolean isRedundantGrouping(GroupingExpression node, Expression operand) {
+    var type = operand.getExpressionType();
+    if (!(node.getParent() instanceof Expression parent)) {
+      // initializers and parameters don't allow sequences without parentheses
+      return type != ExpressionType.SEQUENCE;
+    }
+    var parentType = parent.getExpressionType();
+    if (type.operandStructure == OperandStructure.NONE) {
+      // a literal followed by a dot would be read as a number
+      return !(type == ExpressionType.LITERAL
+          && (parentType == ExpressionType.MEMBER_ACCESS || parentType == ExpressionType.LENGTH_ACCESS));
+    }
+    if (parentType.operandStructure == OperandStructure.MANY) {
+      // function call parameters and sequence items
+      return type != ExpressionType.SEQUENCE;
+    }
+    if (parent instanceof ArrayAccessExpression access && access.getRight() == node) {
+      return true;
+    }
+    if (parent instanceof ConditionExpression condition) {
+      if (condition.getTrueExpression() == node) {
+        return true;
+      }
+      if (condition.getFalseExpression() == node) {
+        return type != ExpressionType.SEQUENCE;
+      }
+    }
+
+    var precedence = getGroupingPrecedence(type);
+    var parentPrecedence = getGroupingPrecedence(parentType);
+    if (precedence != parentPrecedence) {
+      return precedence < parentPrecedence;
+    }
+    if (parentType.operandStructure == OperandStructure.UNARY) {
+      return true;
+    }
+    if (parent instanceof BinaryExpression binary) {
+      var isLeft = binary.getLeft() == node;
+      return parentType.associativity == ExpressionType.Associativity.LTR ? isLeft : !isLeft;
+    }
+    return false;
+  }
+
   @Override
   public void enterIncrementPrefixExpression(IncrementPrefixExpression node) {
-    emitType(GLSLLexer.PLUS_OP, GLSLLexer.PLUS_OP);
+    emitType(GLSLLexer.INC_OP);
   }
 
   @Override
@@ -222,12 +371,12 @@ public class ASTPrinter extends ASTPrinterBase {
 
   @Override
   public void exitDecrementPostfixExpression(DecrementPostfixExpression node) {
-    emitType(GLSLLexer.MINUS_OP, GLSLLexer.MINUS_OP);
+    emitType(GLSLLexer.DEC_OP);
   }
 
   @Override
   public void exitIncrementPostfixExpression(IncrementPostfixExpression node) {
-    emitType(GLSLLexer.PLUS_OP, GLSLLexer.PLUS_OP);
+    emitType(GLSLLexer.INC_OP);
   }
 
   @Override
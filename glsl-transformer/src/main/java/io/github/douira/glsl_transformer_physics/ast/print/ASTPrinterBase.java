@@ -8,8 +8,29 @@ import io.github.douira.glsl_transformer_physics.ast.print.token.*;
 import io.github.douira.glsl_transformer_physics.ast.traversal.ASTListenerVisitor;
 import io.github.douira.glsl_transformer_physics.cst.token_filter.TokenChannel;
 
+/**
+ * The printer base holds back the last emitted token so that it can still be
+ * replaced by the next one, for example to compact a newline into a space. The
+ * tokens the printer emits itself are not stored as token objects. Their
+ * content, channel, role and source node are kept in fields and passed to the
+ * token processor directly which avoids allocating an object for each printed
+ * token. Token objects are only used for tokens that are emitted with
+ * {@link #emitToken(PrintToken)}.
+ */
 public abstract class ASTPrinterBase extends ASTListenerVisitor<Void> {
+  private static final int PENDING_NONE = 0;
+  private static final int PENDING_CONTENT = 1;
+  private static final int PENDING_INDENT = 2;
+  private static final int PENDING_TOKEN = 3;
+
+  private int pendingKind = PENDING_NONE;
+  private String pendingContent;
+  private TokenChannel pendingChannel;
+  private TokenRole pendingRole;
+  private ASTNode pendingSource;
+  private int pendingIndentDelta;
   private PrintToken lastToken;
+
   private ASTNode currentNode;
   private TokenProcessor tokenProcessor;
 
@@ -27,29 +48,91 @@ public abstract class ASTPrinterBase extends ASTListenerVisitor<Void> {
 
   public void replaceToken(PrintToken replacement) {
     lastToken = replacement;
+    pendingKind = PENDING_TOKEN;
+  }
+
+  private void appendPending() {
+    switch (pendingKind) {
+      case PENDING_CONTENT:
+        tokenProcessor.appendContent(pendingSource, pendingChannel, pendingRole, pendingContent);
+        break;
+      case PENDING_INDENT:
+        tokenProcessor.appendIndent(pendingIndentDelta);
+        break;
+      case PENDING_TOKEN:
+        appendToken(lastToken);
+        break;
+      default:
+        break;
+    }
+    pendingKind = PENDING_NONE;
+    pendingContent = null;
+    pendingSource = null;
+    lastToken = null;
+  }
+
+  /**
+   * Creates a token object for the pending token so that it can be given to a
+   * replace token.
+   */
+  private PrintToken getPendingToken() {
+    switch (pendingKind) {
+      case PENDING_CONTENT:
+        var token = new LiteralToken(pendingChannel, pendingRole, pendingContent);
+        token.setSource(pendingSource);
+        return token;
+      case PENDING_INDENT:
+        var marker = IndentMarker.create(pendingIndentDelta);
+        marker.setSource(pendingSource);
+        return marker;
+      case PENDING_TOKEN:
+        return lastToken;
+      default:
+        return null;
+    }
   }
 
   protected void emitToken(PrintToken token) {
     token.setSource(currentNode);
     if (token instanceof ReplaceToken replaceToken) {
-      if (lastToken == null) {
+      var pendingToken = getPendingToken();
+      if (pendingToken == null) {
         return;
       }
-      replaceToken.replace(lastToken, this);
+      replaceToken.replace(pendingToken, this);
       return;
     }
 
-    if (lastToken != null) {
-      appendToken(lastToken);
-    }
+    appendPending();
     lastToken = token;
+    pendingKind = PENDING_TOKEN;
+  }
+
+  /**
+   * Emits a token given by its parts without creating a token object.
+   * 
+   * @param channel The channel of the token
+   * @param role    The role of the token
+   * @param content The content of the token
+   */
+  protected void emitContent(TokenChannel channel, TokenRole role, String content) {
+    appendPending();
+    pendingKind = PENDING_CONTENT;
+    pendingChannel = channel;
+    pendingRole = role;
+    pendingContent = content;
+    pendingSource = currentNode;
+  }
+
+  private void emitIndent(int indentDelta) {
+    appendPending();
+    pendingKind = PENDING_INDENT;
+    pendingIndentDelta = indentDelta;
+    pendingSource = currentNode;
   }
 
   protected void finalizePrinting() {
-    if (lastToken != null) {
-      appendToken(lastToken);
-      lastToken = null;
-    }
+    appendPending();
   }
 
   protected void emitTokens(PrintToken... tokens) {
@@ -59,7 +142,7 @@ public abstract class ASTPrinterBase extends ASTListenerVisitor<Void> {
   }
 
   protected void emitLiteral(TokenRole role, String literal) {
-    emitToken(new LiteralToken(role, literal));
+    emitContent(TokenChannel.DEFAULT, role, literal);
   }
 
   protected void emitLiteral(String literal) {
@@ -83,7 +166,7 @@ public abstract class ASTPrinterBase extends ASTListenerVisitor<Void> {
   }
 
   protected void emitType(TokenRole role, int type) {
-    emitToken(new ParserToken(role, type));
+    emitContent(TokenChannel.DEFAULT, role, ParserToken.getTokenString(type));
   }
 
   protected void emitType(int type) {
@@ -101,7 +184,7 @@ public abstract class ASTPrinterBase extends ASTListenerVisitor<Void> {
   }
 
   protected void emitWhitespace(TokenRole role, String whitespace) {
-    emitToken(new LiteralToken(TokenChannel.WHITESPACE, role, whitespace));
+    emitContent(TokenChannel.WHITESPACE, role, whitespace);
   }
 
   protected void emitExactWhitespace(String whitespace) {
@@ -141,12 +224,16 @@ public abstract class ASTPrinterBase extends ASTListenerVisitor<Void> {
     emitCommonNewline();
   }
 
+  protected void emitEOF() {
+    emitContent(TokenChannel.HIDDEN, TokenRole.DEFAULT, "");
+  }
+
   protected void indent() {
-    emitToken(IndentMarker.indent());
+    emitIndent(1);
   }
 
   protected void unindent() {
-    emitToken(IndentMarker.unindent());
+    emitIndent(-1);
   }
 
   protected void compactCommonNewline() {
@@ -154,10 +241,19 @@ public abstract class ASTPrinterBase extends ASTListenerVisitor<Void> {
   }
 
   protected void compactCommonNewline(Class<? extends ASTNode> sourceClass) {
-    emitToken(ReplaceToken.fromMatchAndNodeCondition(
-        new LiteralToken(TokenRole.COMMON_FORMATTING, " "),
-        "\n",
-        node -> sourceClass.isAssignableFrom(node.getClass())));
+    if (pendingKind == PENDING_CONTENT
+        && pendingRole == TokenRole.COMMON_FORMATTING
+        && "\n".equals(pendingContent)
+        && pendingSource != null
+        && sourceClass.isAssignableFrom(pendingSource.getClass())) {
+      pendingChannel = TokenChannel.DEFAULT;
+      pendingContent = " ";
+    } else if (pendingKind == PENDING_TOKEN) {
+      emitToken(ReplaceToken.fromMatchAndNodeCondition(
+          new LiteralToken(TokenRole.COMMON_FORMATTING, " "),
+          "\n",
+          node -> sourceClass.isAssignableFrom(node.getClass())));
+    }
   }
 
   protected void visitWithSeparator(List<? extends ASTNode> nodes, Runnable emitter) {
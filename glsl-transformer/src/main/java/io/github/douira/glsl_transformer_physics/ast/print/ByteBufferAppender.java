@@ -0,0 +1,84 @@
+package io.github.douira.glsl_transformer_physics.ast.print;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The byte buffer appender encodes appended characters as UTF-8 and writes
+ * them to a byte buffer. Printing to it writes the code directly into a buffer
+ * that is handed to a driver or written to a file without creating a string
+ * first. Since the printed code is usually ASCII, each character usually
+ * takes one byte. A {@link java.nio.BufferOverflowException} is thrown if the
+ * buffer is full.
+ * 
+ * A surrogate pair may be split between two appends. Unpaired surrogates are
+ * written as {@code ?}. {@link #flush()} should be called after the last
+ * append to write a trailing unpaired surrogate.
+ */
+public class ByteBufferAppender implements Appendable {
+  private final ByteBuffer buffer;
+  private char highSurrogate;
+
+  public ByteBufferAppender(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  @Override
+  public ByteBufferAppender append(CharSequence csq) {
+    return append(csq, 0, csq.length());
+  }
+
+  @Override
+  public ByteBufferAppender append(CharSequence csq, int start, int end) {
+    for (var i = start; i < end; i++) {
+      append(csq.charAt(i));
+    }
+    return this;
+  }
+
+  @Override
+  public ByteBufferAppender append(char c) {
+    if (highSurrogate != 0) {
+      var high = highSurrogate;
+      highSurrogate = 0;
+      if (Character.isLowSurrogate(c)) {
+        var codePoint = Character.toCodePoint(high, c);
+        buffer.put((byte) (0xF0 | codePoint >> 18));
+        buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+        buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+        buffer.put((byte) (0x80 | codePoint & 0x3F));
+        return this;
+      }
+      buffer.put((byte) '?');
+    }
+
+    if (c < 0x80) {
+      buffer.put((byte) c);
+    } else if (c < 0x800) {
+      buffer.put((byte) (0xC0 | c >> 6));
+      buffer.put((byte) (0x80 | c & 0x3F));
+    } else if (Character.isHighSurrogate(c)) {
+      highSurrogate = c;
+    } else if (Character.isLowSurrogate(c)) {
+      buffer.put((byte) '?');
+    } else {
+      buffer.put((byte) (0xE0 | c >> 12));
+      buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+      buffer.put((byte) (0x80 | c & 0x3F));
+    }
+    return this;
+  }
+
+  /**
+   * Writes a trailing unpaired high surrogate if there is one.
+   */
+  public void flush() {
+    if (highSurrogate != 0) {
+      highSurrogate = 0;
+      buffer.put((byte) '?');
+    }
+  }
+}
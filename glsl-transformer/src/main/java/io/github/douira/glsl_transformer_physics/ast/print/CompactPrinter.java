@@ -1,5 +1,6 @@
 package io.github.douira.glsl_transformer_physics.ast.print;
 
+import io.github.douira.glsl_transformer_physics.ast.node.basic.ASTNode;
 import io.github.douira.glsl_transformer_physics.ast.print.token.*;
 import io.github.douira.glsl_transformer_physics.cst.token_filter.TokenChannel;
 
@@ -20,4 +21,13 @@ public class CompactPrinter extends DelegateTokenProcessor {
     }
     super.appendToken(token);
   }
+
+  @Override
+  public void appendContent(ASTNode source, TokenChannel channel, TokenRole role, String content) {
+    if (role == TokenRole.COMMON_FORMATTING && "\n".equals(content)) {
+      super.appendContent(source, TokenChannel.WHITESPACE, role, " ");
+    } else {
+      super.appendContent(source, channel, role, content);
+    }
+  }
 }
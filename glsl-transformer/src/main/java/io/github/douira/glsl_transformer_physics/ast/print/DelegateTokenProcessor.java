@@ -1,6 +1,8 @@
 package io.github.douira.glsl_transformer_physics.ast.print;
 
+import io.github.douira.glsl_transformer_physics.ast.node.basic.ASTNode;
 import io.github.douira.glsl_transformer_physics.ast.print.token.PrintToken;
+import io.github.douira.glsl_transformer_physics.cst.token_filter.TokenChannel;
 
 public abstract class DelegateTokenProcessor implements TokenProcessor {
   protected final TokenProcessor delegate;
@@ -19,6 +21,16 @@ public abstract class DelegateTokenProcessor implements TokenProcessor {
     delegate.appendToken(token);
   }
 
+  @Override
+  public void appendContent(ASTNode source, TokenChannel channel, TokenRole role, String content) {
+    delegate.appendContent(source, channel, role, content);
+  }
+
+  @Override
+  public void appendIndent(int indentDelta) {
+    delegate.appendIndent(indentDelta);
+  }
+
   @Override
   public void appendDirectly(String content) {
     delegate.appendDirectly(content);
@@ -1,8 +1,10 @@
 package io.github.douira.glsl_transformer_physics.ast.print;
 
+import io.github.douira.glsl_transformer_physics.ast.node.basic.ASTNode;
 import io.github.douira.glsl_transformer_physics.ast.print.token.*;
+import io.github.douira.glsl_transformer_physics.cst.token_filter.TokenChannel;
 
-public class IndentingPrinter extends DelegateTokenProcessor{
+public class IndentingPrinter extends DelegateTokenProcessor {
   private final char indent;
   private final int indentMultiplier;
   private int indentLevel = 0;
@@ -27,22 +29,34 @@ public class IndentingPrinter extends DelegateTokenProcessor{
     if (token instanceof IndentMarker indentMarker) {
       indentLevel += indentMarker.indentDelta;
     } else if (!(token instanceof Marker)) {
-      var isNewline = token.endsWithNewline();
-
-      if (!indentationPrinted && !isNewline) {
-        indentationPrinted = true;
-        if (indentLevel > 0) {
-          for (int i = 0, repeat = indentLevel * indentMultiplier; i < repeat; i++) {
-            appendDirectly(indent);
-          }
-        }
-      }
+      printIndentation(token.endsWithNewline());
+      super.appendToken(token);
+    }
+  }
+
+  @Override
+  public void appendContent(ASTNode source, TokenChannel channel, TokenRole role, String content) {
+    printIndentation(content.endsWith("\n"));
+    super.appendContent(source, channel, role, content);
+  }
+
+  @Override
+  public void appendIndent(int indentDelta) {
+    indentLevel += indentDelta;
+  }
 
-      if (isNewline) {
-        indentationPrinted = false;
+  private void printIndentation(boolean isNewline) {
+    if (!indentationPrinted && !isNewline) {
+      indentationPrinted = true;
+      if (indentLevel > 0) {
+        for (int i = 0, repeat = indentLevel * indentMultiplier; i < repeat; i++) {
+          appendDirectly(indent);
+        }
       }
+    }
 
-      super.appendToken(token);
+    if (isNewline) {
+      indentationPrinted = false;
     }
   }
 }
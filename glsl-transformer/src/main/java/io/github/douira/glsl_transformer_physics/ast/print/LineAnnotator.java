@@ -6,6 +6,7 @@ import org.antlr.v4.runtime.misc.Interval;
 
 import io.github.douira.glsl_transformer_physics.ast.node.basic.ASTNode;
 import io.github.douira.glsl_transformer_physics.ast.print.token.PrintToken;
+import io.github.douira.glsl_transformer_physics.cst.token_filter.TokenChannel;
 
 /**
  * Inserts #line directives that make the compiler report errors as if they were
@@ -38,18 +39,34 @@ public class LineAnnotator extends DelegateTokenProcessor {
 
   @Override
   public void appendToken(PrintToken token) {
+    beforeContent(token.getSource());
+    super.appendToken(token);
+    if (token.endsWithNewline()) {
+      afterNewline();
+    }
+  }
+
+  @Override
+  public void appendContent(ASTNode source, TokenChannel channel, TokenRole role, String content) {
+    beforeContent(source);
+    super.appendContent(source, channel, role, content);
+    if (content.endsWith("\n")) {
+      afterNewline();
+    }
+  }
+
+  private void beforeContent(ASTNode source) {
     // mark the first line according to the first token
-    var nodeSourceLines = token.getSource().getSourceLines();
+    var nodeSourceLines = source.getSourceLines();
     var isSource = isSourceInterval(nodeSourceLines);
     if (outputLine == 1) {
       annotateLine((isSource ? nodeSourceLines.a : outputLine) - 1, isSource);
     }
-    super.appendToken(token);
-    if (token.endsWithNewline()) {
-      outputLine++;
-      sourceLine++;
+  }
 
-    }
+  private void afterNewline() {
+    outputLine++;
+    sourceLine++;
   }
 
   private void annotateLine(int line, boolean fromSource) {
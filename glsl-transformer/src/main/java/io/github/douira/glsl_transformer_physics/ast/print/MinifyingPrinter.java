@@ -0,0 +1,154 @@
+package io.github.douira.glsl_transformer_physics.ast.print;
+
+import io.github.douira.glsl_transformer_physics.ast.node.basic.ASTNode;
+import io.github.douira.glsl_transformer_physics.ast.print.token.*;
+import io.github.douira.glsl_transformer_physics.cst.token_filter.TokenChannel;
+
+/**
+ * The minifying printer prints the least amount of whitespace that is needed
+ * to keep the tokens apart. All whitespace tokens are dropped except for
+ * newlines that end directives. A single space is only inserted between two
+ * tokens that would otherwise be read as one token, like two identifiers or
+ * two minus operators. Directives are always started on a new line.
+ */
+public class MinifyingPrinter extends DelegateTokenProcessor {
+  private char lastChar = '\n';
+  private boolean lastNumber = false;
+
+  public MinifyingPrinter(TokenProcessor delegate) {
+    super(delegate);
+  }
+
+  public MinifyingPrinter() {
+    this(new SimplePrinter());
+  }
+
+  @Override
+  public void appendToken(PrintToken token) {
+    if (token instanceof Marker) {
+      return;
+    }
+    var content = token.getContent();
+    if (content != null && prepareContent(token.getRole(), content)) {
+      super.appendToken(token);
+      lastChar = content.charAt(content.length() - 1);
+      lastNumber = isNumber(content);
+    }
+  }
+
+  @Override
+  public void appendContent(ASTNode source, TokenChannel channel, TokenRole role, String content) {
+    if (content != null && prepareContent(role, content)) {
+      super.appendContent(source, channel, role, content);
+      lastChar = content.charAt(content.length() - 1);
+      lastNumber = isNumber(content);
+    }
+  }
+
+  @Override
+  public void appendIndent(int indentDelta) {
+    // indentation is not printed
+  }
+
+  @Override
+  public void appendDirectly(String content) {
+    super.appendDirectly(content);
+    if (!content.isEmpty()) {
+      lastChar = content.charAt(content.length() - 1);
+      lastNumber = false;
+    }
+  }
+
+  @Override
+  public void appendDirectly(char content) {
+    super.appendDirectly(content);
+    lastChar = content;
+    lastNumber = false;
+  }
+
+  /**
+   * Handles whitespace and inserts a separating space or newline before the
+   * given content if necessary.
+   * 
+   * @return {@code true} if the content itself should be appended
+   */
+  private boolean prepareContent(TokenRole role, String content) {
+    if (content.isEmpty()) {
+      return false;
+    }
+    if (isWhitespace(content)) {
+      // only newlines that end directives are required
+      if (role == TokenRole.EXACT && content.indexOf('\n') != -1 && lastChar != '\n') {
+        appendDirectly('\n');
+      }
+      return false;
+    }
+
+    var first = content.charAt(0);
+    if (first == '#') {
+      if (lastChar != '\n') {
+        appendDirectly('\n');
+      }
+    } else if (needsSeparation(lastChar, lastNumber, first)) {
+      appendDirectly(' ');
+    }
+    return true;
+  }
+
+  private static boolean isWhitespace(String content) {
+    for (var i = 0; i < content.length(); i++) {
+      if (!Character.isWhitespace(content.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks if the given token content is a number literal. Identifiers and
+   * keywords can't start with a digit.
+   */
+  private static boolean isNumber(String content) {
+    var first = content.charAt(0);
+    return Character.isDigit(first)
+        || first == '.' && content.length() > 1 && Character.isDigit(content.charAt(1));
+  }
+
+  private static boolean isWordChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_';
+  }
+
+  /**
+   * Checks if two tokens that end and start with the given characters would be
+   * read as a different sequence of tokens if they were printed without a
+   * space in between. A dot after a number literal would be read as part of
+   * the number, while a dot after an identifier that ends with a digit is a
+   * member access.
+   */
+  private static boolean needsSeparation(char last, boolean lastNumber, char next) {
+    if (isWordChar(last)) {
+      return isWordChar(next) || next == '.' && lastNumber;
+    }
+    switch (last) {
+      case '+':
+      case '-':
+      case '&':
+      case '|':
+      case '^':
+      case '<':
+      case '>':
+        return next == last || next == '=';
+      case '/':
+        return next == '/' || next == '*' || next == '=';
+      case '*':
+      case '%':
+      case '=':
+      case '!':
+        return next == '=';
+      case '.':
+        return Character.isDigit(next);
+      default:
+        return false;
+    }
+  }
+}
@@ -25,10 +25,18 @@ public class OutputOptions {
     printInfo = false;
   }
 
+  public boolean isPrintInfo() {
+    return printInfo;
+  }
+
   public void setHeaderSuffix(String headerSuffix) {
     this.headerSuffix = headerSuffix;
   }
 
+  public String getHeaderSuffix() {
+    return headerSuffix;
+  }
+
   public String getPrintHeader() {
     if (printInfo || headerSuffix != null) {
       return "// Generated by glsl-transformer" +
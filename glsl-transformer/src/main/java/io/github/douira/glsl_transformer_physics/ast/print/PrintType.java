@@ -1,29 +1,46 @@
 package io.github.douira.glsl_transformer_physics.ast.print;
 
-import java.util.function.Supplier;
+import java.util.function.Function;
 
 public enum PrintType {
-  SIMPLE(SimplePrinter::new),
+  SIMPLE(Function.identity()),
   INDENTED(IndentingPrinter::new),
   COMPACT(CompactPrinter::new),
 
+  /**
+   * Prints the least amount of whitespace and leaves out parentheses that
+   * aren't needed to preserve the meaning of expressions.
+   */
+  MINIFIED(MinifyingPrinter::new),
+
   /**
    * Not implemented yet
    */
-  INDENTED_ANNOTATED(() -> new IndentingPrinter(new LineAnnotator())),
+  INDENTED_ANNOTATED(output -> new IndentingPrinter(new LineAnnotator(output))),
 
   /**
    * Not implemented yet
    */
-  COMPAT_ANNOTATED(() -> new CompactPrinter(new LineAnnotator()));
+  COMPAT_ANNOTATED(output -> new CompactPrinter(new LineAnnotator(output)));
 
-  private final Supplier<TokenProcessor> printerSupplier;
+  private final Function<TokenProcessor, TokenProcessor> printerWrapper;
 
-  PrintType(Supplier<TokenProcessor> printerSupplier) {
-    this.printerSupplier = printerSupplier;
+  PrintType(Function<TokenProcessor, TokenProcessor> printerWrapper) {
+    this.printerWrapper = printerWrapper;
   }
 
   public TokenProcessor getTokenProcessor() {
-    return printerSupplier.get();
+    return printerWrapper.apply(new SimplePrinter());
+  }
+
+  /**
+   * Returns a token processor of this type that writes the printed code to the
+   * given output as it is printed.
+   * 
+   * @param output The output to write to
+   * @return The token processor
+   */
+  public TokenProcessor getTokenProcessor(Appendable output) {
+    return printerWrapper.apply(new SimplePrinter(output));
   }
 }
@@ -1,12 +1,41 @@
 package io.github.douira.glsl_transformer_physics.ast.print;
 
+import java.io.*;
+
+import io.github.douira.glsl_transformer_physics.ast.node.basic.ASTNode;
 import io.github.douira.glsl_transformer_physics.ast.print.token.PrintToken;
+import io.github.douira.glsl_transformer_physics.cst.token_filter.TokenChannel;
 
+/**
+ * The simple printer writes the content of the tokens it receives to its
+ * output without changing it. By default the output is collected in a string
+ * builder. If an output is given, the content is written to it directly as it
+ * is printed and no string is generated. {@link IOException}s thrown by the
+ * output are rethrown as {@link UncheckedIOException}s.
+ */
 public class SimplePrinter implements TokenProcessor {
-  private StringBuilder builder = new StringBuilder();
+  private final StringBuilder builder;
+  private final Appendable output;
+
+  public SimplePrinter() {
+    this(new StringBuilder());
+  }
+
+  /**
+   * Creates a new simple printer that writes to the given output.
+   * 
+   * @param output The output to write the printed code to
+   */
+  public SimplePrinter(Appendable output) {
+    this.output = output;
+    this.builder = output instanceof StringBuilder stringBuilder ? stringBuilder : null;
+  }
 
   @Override
   public String generateString() {
+    if (builder == null) {
+      throw new IllegalStateException("This printer writes to an output and doesn't generate a string.");
+    }
     return builder.toString();
   }
 
@@ -14,21 +43,63 @@ public class SimplePrinter implements TokenProcessor {
   public void appendToken(PrintToken token) {
     var content = token.getContent();
     if (content != null) {
-      builder.append(content);
+      append(content);
     }
   }
 
+  @Override
+  public void appendContent(ASTNode source, TokenChannel channel, TokenRole role, String content) {
+    if (content != null) {
+      append(content);
+    }
+  }
+
+  @Override
+  public void appendIndent(int indentDelta) {
+    // indentation is ignored
+  }
+
+  /**
+   * Returns the string builder the printed code is collected in.
+   * 
+   * @return The string builder or {@code null} if this printer writes to
+   *         another kind of output
+   */
   public StringBuilder getBuilder() {
     return builder;
   }
 
+  public Appendable getOutput() {
+    return output;
+  }
+
   @Override
   public void appendDirectly(String content) {
-    builder.append(content);
+    append(content);
   }
 
   @Override
   public void appendDirectly(char content) {
-    builder.append(content);
+    if (builder != null) {
+      builder.append(content);
+      return;
+    }
+    try {
+      output.append(content);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void append(String content) {
+    if (builder != null) {
+      builder.append(content);
+      return;
+    }
+    try {
+      output.append(content);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 }
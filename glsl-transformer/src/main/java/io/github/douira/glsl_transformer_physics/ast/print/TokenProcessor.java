@@ -1,12 +1,42 @@
 package io.github.douira.glsl_transformer_physics.ast.print;
 
-import io.github.douira.glsl_transformer_physics.ast.print.token.PrintToken;
+import io.github.douira.glsl_transformer_physics.ast.node.basic.ASTNode;
+import io.github.douira.glsl_transformer_physics.ast.print.token.*;
+import io.github.douira.glsl_transformer_physics.cst.token_filter.TokenChannel;
 
 public interface TokenProcessor {
   String generateString();
 
   void appendToken(PrintToken token);
 
+  /**
+   * Appends the content of a token without creating a token object for it. The
+   * printer uses this for all tokens it emits itself. Token processors that
+   * only look at the content, channel, role and source of the tokens should
+   * override this to avoid the allocation of a token object for each printed
+   * token. The default implementation creates a token and appends it.
+   * 
+   * @param source  The node the token was printed for
+   * @param channel The channel of the token
+   * @param role    The role of the token
+   * @param content The content of the token
+   */
+  default void appendContent(ASTNode source, TokenChannel channel, TokenRole role, String content) {
+    var token = new LiteralToken(channel, role, content);
+    token.setSource(source);
+    appendToken(token);
+  }
+
+  /**
+   * Changes the indentation level without creating an indent marker. The
+   * default implementation creates an indent marker and appends it.
+   * 
+   * @param indentDelta The amount to change the indentation level by
+   */
+  default void appendIndent(int indentDelta) {
+    appendToken(IndentMarker.create(indentDelta));
+  }
+
   void appendDirectly(String content);
 
   void appendDirectly(char content);
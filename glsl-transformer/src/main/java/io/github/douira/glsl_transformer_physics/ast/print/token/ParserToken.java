@@ -21,6 +21,8 @@ public class ParserToken extends PrintToken {
     }
   };
 
+  private static final String[] tokenStrings = createTokenStrings();
+
   public final int tokenType;
 
   public ParserToken(TokenChannel channel, TokenRole role, int tokenType) {
@@ -43,17 +45,35 @@ public class ParserToken extends PrintToken {
     this.tokenType = tokenType;
   }
 
-  @Override
-  public String getContent() {
-    var literalName = GLSLLexer.VOCABULARY.getLiteralName(tokenType);
-    if (literalName == null) {
-      var replacement = missingTokenStrings.get(tokenType);
-      if (replacement != null) {
-        return replacement;
-      }
+  private static String[] createTokenStrings() {
+    var strings = new String[GLSLLexer.VOCABULARY.getMaxTokenType() + 1];
+    for (var type = 0; type < strings.length; type++) {
+      var literalName = GLSLLexer.VOCABULARY.getLiteralName(type);
+      strings[type] = literalName == null
+          ? missingTokenStrings.get(type)
+          : literalName.substring(1, literalName.length() - 1);
+    }
+    return strings;
+  }
+
+  /**
+   * Returns the string a token of the given type is printed as. The strings are
+   * computed once for all token types which makes this a simple array lookup.
+   * 
+   * @param tokenType The type of the token
+   * @return The string the token is printed as
+   */
+  public static String getTokenString(int tokenType) {
+    var content = tokenType >= 0 && tokenType < tokenStrings.length ? tokenStrings[tokenType] : null;
+    if (content == null) {
       throw new IllegalStateException(
           "Can't create a parser token for a token type that doesn't have a defined literal name!");
     }
-    return literalName.substring(1, literalName.length() - 1);
+    return content;
+  }
+
+  @Override
+  public String getContent() {
+    return getTokenString(tokenType);
   }
 }
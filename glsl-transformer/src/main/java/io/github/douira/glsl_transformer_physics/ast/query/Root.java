@@ -4,13 +4,15 @@ import java.util.*;
 import java.util.function.*;
 import java.util.stream.Stream;
 
-import io.github.douira.glsl_transformer_physics.ast.node.Identifier;
+import io.github.douira.glsl_transformer_physics.ast.node.*;
 import io.github.douira.glsl_transformer_physics.ast.node.basic.ASTNode;
 import io.github.douira.glsl_transformer_physics.ast.node.expression.*;
+import io.github.douira.glsl_transformer_physics.ast.node.external_declaration.*;
 import io.github.douira.glsl_transformer_physics.ast.query.index.*;
 import io.github.douira.glsl_transformer_physics.ast.query.match.*;
-import io.github.douira.glsl_transformer_physics.ast.transform.ASTParser;
-import io.github.douira.glsl_transformer_physics.util.Passthrough;
+import io.github.douira.glsl_transformer_physics.ast.transform.*;
+import io.github.douira.glsl_transformer_physics.ast.traversal.ASTVoidVisitor;
+import io.github.douira.glsl_transformer_physics.util.*;
 
 /**
  * Each AST has a root referenced by all its members. This class manages the
@@ -34,20 +36,87 @@ public class Root {
    */
   public final IdentifierIndex<?> identifierIndex;
 
+  /**
+   * The node index if it keeps track of the order of the nodes. It's notified
+   * when the structure of the tree changes.
+   */
+  private final OrderedNodeIndex orderedNodeIndex;
+
   // internal utility state
-  private static Deque<Root> activeBuildRoots = new ArrayDeque<>();
   private List<? extends ASTNode> nodeList;
   private boolean activity;
 
+  /**
+   * The registered function definitions that have bodies which haven't been
+   * built yet.
+   */
+  private final Set<FunctionDefinition> pendingBodies = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  /**
+   * Whether the indexes contain the registered nodes. This is only false for a
+   * root with lazy indexes that hasn't been queried yet.
+   */
+  private boolean indexed;
+
+  /**
+   * The registered nodes that didn't have a parent when they were registered.
+   * The trees they are part of are walked when the indexes are built. This is
+   * only used while a root with lazy indexes hasn't been indexed yet.
+   */
+  private IdentitySet<ASTNode> unindexedTrees;
+
   /**
    * Constructs a new root with the given node and identifier indexes.
    * 
+   * With lazy indexes, registered nodes are not added to the indexes while the
+   * tree is being built. Instead the indexes are built with a single walk over
+   * the registered trees when they are first queried and are kept up to date
+   * from then on. This saves maintaining the indexes for trees that are never
+   * queried by type or by name, for example when a tree is parsed, changed
+   * through direct access to its nodes and printed. The indexes built from the
+   * walk contain exactly the nodes that are part of the registered trees.
+   * 
    * @param nodeIndex       The node index
    * @param identifierIndex The identifier index
+   * @param lazyIndexes     Whether the indexes are only built when they are
+   *                        first queried
    */
-  public Root(NodeIndex nodeIndex, IdentifierIndex<?> identifierIndex) {
+  public Root(NodeIndex nodeIndex, IdentifierIndex<?> identifierIndex, boolean lazyIndexes) {
     this.nodeIndex = nodeIndex;
     this.identifierIndex = identifierIndex;
+    orderedNodeIndex = nodeIndex instanceof OrderedNodeIndex ordered ? ordered : null;
+    if (nodeIndex != null) {
+      nodeIndex.setBeforeQuery(this::prepareTypeQuery);
+    }
+    if (identifierIndex != null) {
+      identifierIndex.setBeforeQuery(this::prepareIdentifierQuery);
+    }
+    indexed = !lazyIndexes;
+    if (lazyIndexes) {
+      unindexedTrees = new IdentitySet<>();
+    }
+  }
+
+  /**
+   * Constructs a new root with the given node and identifier indexes that are
+   * kept up to date while the tree is being built.
+   * 
+   * @param nodeIndex       The node index
+   * @param identifierIndex The identifier index
+   */
+  public Root(NodeIndex nodeIndex, IdentifierIndex<?> identifierIndex) {
+    this(nodeIndex, identifierIndex, false);
+  }
+
+  /**
+   * Constructs a new root with the default node and identifier indexes which have
+   * the least amount of functionality but are also the most efficient.
+   * 
+   * @param lazyIndexes Whether the indexes are only built when they are first
+   *                    queried
+   */
+  public Root(boolean lazyIndexes) {
+    this(new NodeIndex(), IdentifierIndex.withPrefix(), lazyIndexes);
   }
 
   /**
@@ -55,19 +124,34 @@ public class Root {
    * the least amount of functionality but are also the most efficient.
    */
   public Root() {
-    this(new NodeIndex(), IdentifierIndex.withPrefix());
+    this(false);
+  }
+
+  /**
+   * Creates the root for a new build session. Whether its indexes are lazy and
+   * which node index it uses is determined by the build context of the current
+   * thread.
+   */
+  private static Root createBuildRoot() {
+    var context = BuildContext.get();
+    return new Root(
+        context.isOrdinalNodeIndex() ? new OrdinalNodeIndex() : new NodeIndex(),
+        IdentifierIndex.withPrefix(),
+        context.isLazyIndexes());
   }
 
   /**
    * Returns the currently active build root. When nodes are constructed within a
    * build session, this method returns the root of the build session. Nodes can't
    * be constructed with children if they have no root since the children must be
-   * registered with the root.
+   * registered with the root. Build sessions are tracked per thread in the
+   * {@link BuildContext} which means trees can be built on multiple threads at
+   * the same time.
    * 
    * @return the currently active build root
    */
   public static Root getActiveBuildRoot() {
-    return activeBuildRoots.peekFirst();
+    return BuildContext.get().getActiveBuildRoot();
   }
 
   /**
@@ -78,15 +162,10 @@ public class Root {
    * @param rootConsumer The consumer to run
    * @return The return value of the consumer
    */
-  protected static final synchronized <R> R withActiveBuildRoot(
+  protected static final <R> R withActiveBuildRoot(
       Root instance,
       Function<Root, R> rootConsumer) {
-    activeBuildRoots.push(instance);
-    try {
-      return rootConsumer.apply(instance);
-    } finally {
-      activeBuildRoots.pop();
-    }
+    return BuildContext.get().withActiveBuildRoot(instance, rootConsumer);
   }
 
   /**
@@ -101,7 +180,7 @@ public class Root {
    * @param builder    The builder to run
    * @return The built and registered node
    */
-  public static synchronized <NodeType extends ASTNode> NodeType indexNodes(
+  public static <NodeType extends ASTNode> NodeType indexNodes(
       Root instance, Supplier<NodeType> builder) {
     return withActiveBuildRoot(instance, root -> {
       var result = builder.get();
@@ -119,7 +198,7 @@ public class Root {
    */
   public static <NodeType extends ASTNode> NodeType indexNodes(
       Supplier<NodeType> builder) {
-    return indexNodes(new Root(), builder);
+    return indexNodes(createBuildRoot(), builder);
   }
 
   /**
@@ -144,7 +223,7 @@ public class Root {
    * @param instance The root to use as the active build root
    * @param session  The runnable to run
    */
-  public static synchronized void indexBuildSession(Root instance, Runnable session) {
+  public static void indexBuildSession(Root instance, Runnable session) {
     withActiveBuildRoot(instance, root -> {
       session.run();
       return null;
@@ -157,7 +236,7 @@ public class Root {
    * @param session The runnable to run
    */
   public static void indexBuildSession(Runnable session) {
-    indexBuildSession(new Root(), session);
+    indexBuildSession(createBuildRoot(), session);
   }
 
   /**
@@ -181,7 +260,7 @@ public class Root {
    * @param instance           the root to register the nodes with
    * @param registererConsumer The consumer to run
    */
-  public static synchronized <NodeType extends ASTNode> void indexSeparateTrees(
+  public static <NodeType extends ASTNode> void indexSeparateTrees(
       Root instance, Consumer<Passthrough<NodeType>> registererConsumer) {
     withActiveBuildRoot(instance, root -> {
       registererConsumer.accept(Passthrough.of(root::registerNode));
@@ -198,7 +277,7 @@ public class Root {
    */
   public static <NodeType extends ASTNode> void indexSeparateTrees(
       Consumer<Passthrough<NodeType>> registerer) {
-    indexSeparateTrees(new Root(), registerer);
+    indexSeparateTrees(createBuildRoot(), registerer);
   }
 
   /**
@@ -220,6 +299,17 @@ public class Root {
    * @param node The node to register
    */
   public void registerNode(ASTNode node) {
+    if (indexed) {
+      addToIndexes(node);
+    } else if (!node.hasParent()) {
+      unindexedTrees.add(node);
+    }
+    if (node instanceof FunctionDefinition functionDefinition && functionDefinition.isBodyPending()) {
+      pendingBodies.add(functionDefinition);
+    }
+  }
+
+  private void addToIndexes(ASTNode node) {
     nodeIndex.add(node);
     if (node instanceof Identifier identifier) {
       identifierIndex.add(identifier);
@@ -232,18 +322,174 @@ public class Root {
    * @param node The node to unregister
    */
   public void unregisterNode(ASTNode node) {
-    nodeIndex.remove(node);
-    if (node instanceof Identifier identifier) {
-      identifierIndex.remove(identifier);
+    if (indexed) {
+      nodeIndex.remove(node);
+      if (node instanceof Identifier identifier) {
+        identifierIndex.remove(identifier);
+      }
+    } else {
+      unindexedTrees.remove(node);
+    }
+    if (node instanceof FunctionDefinition functionDefinition) {
+      pendingBodies.remove(functionDefinition);
+    }
+  }
+
+  /**
+   * Checks if the indexes of this root contain the registered nodes. This is
+   * only false for a root with lazy indexes that hasn't been queried yet.
+   * 
+   * @return {@code true} if the indexes have been built
+   */
+  public boolean isIndexed() {
+    return indexed;
+  }
+
+  /**
+   * Builds the indexes of this root if they are lazy and haven't been built
+   * yet. Each registered tree is walked once from its topmost node and all
+   * nodes found are added to the indexes. The bodies of function definitions
+   * that haven't been built yet are skipped since their nodes are registered
+   * when they are built. This happens automatically before the indexes are
+   * queried and only needs to be called before reading the index data
+   * structures directly.
+   */
+  public void buildIndexes() {
+    if (indexed) {
+      return;
+    }
+    indexed = true;
+    var trees = unindexedTrees;
+    unindexedTrees = null;
+
+    // nodes that were registered without a parent may have been added to a tree
+    var topNodes = new IdentitySet<ASTNode>(trees.size());
+    for (var node : trees) {
+      while (node.hasParent() && node.getParent().getRoot() == this) {
+        node = node.getParent();
+      }
+      topNodes.add(node);
+    }
+    var visitor = new IndexingVisitor();
+    for (var node : topNodes) {
+      visitor.visit(node);
+    }
+  }
+
+  private class IndexingVisitor extends ASTVoidVisitor {
+    @Override
+    public void visitVoid(ASTNode node) {
+      addToIndexes(node);
+    }
+
+    @Override
+    public Void visitFunctionDefinition(FunctionDefinition node) {
+      // accessing the body would build it
+      visit(node.getFunctionPrototype());
+      if (!node.isBodyPending()) {
+        visitSafe(null, node.getBody());
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Notifies this root that a node in its tree got or lost a parent or was
+   * moved within its parent which changes the order of the nodes. This is only
+   * meant to be called by {@link ASTNode}.
+   * 
+   * @param node The node that changed its position
+   */
+  public void notifyParentChange(ASTNode node) {
+    if (orderedNodeIndex != null) {
+      orderedNodeIndex.notifyParentChange(node);
+    }
+  }
+
+  /**
+   * Notifies this root that a node in its tree lost its parent. If the indexes
+   * haven't been built yet, the node is remembered as the topmost node of a
+   * separate tree since it can't be reached from the other registered trees
+   * anymore but is still registered. This is only meant to be called by
+   * {@link ASTNode}.
+   * 
+   * @param node The node that lost its parent
+   */
+  public void notifyDetached(ASTNode node) {
+    notifyParentChange(node);
+    if (!indexed) {
+      unindexedTrees.add(node);
+    }
+  }
+
+  /**
+   * Removes a function definition from the set of function definitions with
+   * bodies that haven't been built yet. This is only meant to be called by
+   * {@link FunctionDefinition} when its body is built or replaced.
+   * 
+   * @param functionDefinition The function definition
+   */
+  public void unregisterPendingBody(FunctionDefinition functionDefinition) {
+    pendingBodies.remove(functionDefinition);
+  }
+
+  /**
+   * Checks if there are function definitions in this tree with bodies that
+   * haven't been built yet.
+   * 
+   * @return {@code true} if there are bodies that haven't been built
+   */
+  public boolean hasPendingBodies() {
+    return !pendingBodies.isEmpty();
+  }
+
+  /**
+   * Builds the bodies of all function definitions in this tree that were
+   * constructed with lazily built bodies. The nodes of the bodies are
+   * registered with this root. This happens automatically before the indexes
+   * are queried.
+   */
+  public void buildPendingBodies() {
+    while (!pendingBodies.isEmpty()) {
+      var iterator = pendingBodies.iterator();
+      var functionDefinition = iterator.next();
+      iterator.remove();
+      functionDefinition.buildBody();
     }
   }
 
+  /**
+   * Nodes of these types are never part of a function body which means queries
+   * for them don't require the pending bodies to be built.
+   */
+  private static boolean isOutsideFunctionBody(Class<?> type) {
+    return ExternalDeclaration.class.isAssignableFrom(type)
+        || type == TranslationUnit.class
+        || type == VersionStatement.class;
+  }
+
+  private void prepareTypeQuery(Class<?> type) {
+    buildIndexes();
+    if (!pendingBodies.isEmpty() && !isOutsideFunctionBody(type)) {
+      buildPendingBodies();
+    }
+  }
+
+  private void prepareIdentifierQuery() {
+    buildIndexes();
+    buildPendingBodies();
+  }
+
   public void unregisterIdentifierRename(Identifier identifier) {
-    identifierIndex.remove(identifier);
+    if (indexed) {
+      identifierIndex.remove(identifier);
+    }
   }
 
   public void registerIdentifierRename(Identifier identifier) {
-    identifierIndex.add(identifier);
+    if (indexed) {
+      identifierIndex.add(identifier);
+    }
   }
 
   private void ensureEmptyNodeList() {
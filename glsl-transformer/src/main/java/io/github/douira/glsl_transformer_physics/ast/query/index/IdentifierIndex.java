@@ -8,25 +8,51 @@ import org.apache.commons.collections4.trie.PatriciaTrie;
 import io.github.douira.glsl_transformer_physics.ast.node.Identifier;
 import io.github.douira.glsl_transformer_physics.ast.node.basic.ASTNode;
 import io.github.douira.glsl_transformer_physics.ast.node.expression.ReferenceExpression;
+import io.github.douira.glsl_transformer_physics.ast.query.Root;
+import io.github.douira.glsl_transformer_physics.util.CompactIdentitySet;
 
 /**
  * Indexes identifiers based on their content and enabled fast string queries.
+ * 
+ * The sets of identifiers with the same name are {@link CompactIdentitySet}s
+ * since most names only occur a few times. A set with a single identifier
+ * stores it inline and larger sets only switch to a hash table once a small
+ * array is full. The names themselves are interned by {@link Identifier}.
  */
 public class IdentifierIndex<I extends PatriciaTrie<Set<Identifier>>>
-    implements Index<Identifier>, PrefixQueryable<Identifier> {
+    implements Index<Identifier>, PrefixQueryable<Identifier>, SuffixQueryable<Identifier>,
+    InfixQueryable<Identifier>, InvertedInfixQueryable<Identifier> {
   public final I index;
+  private Runnable beforeQuery;
 
   public IdentifierIndex(I index) {
     this.index = index;
   }
 
+  /**
+   * Sets the function that is called before each query. This is used by
+   * {@link Root} to build lazily constructed parts of the tree before they are
+   * queried. Reading the trie directly doesn't call it.
+   * 
+   * @param beforeQuery The function to call before each query
+   */
+  public void setBeforeQuery(Runnable beforeQuery) {
+    this.beforeQuery = beforeQuery;
+  }
+
+  protected void prepareQuery() {
+    if (beforeQuery != null) {
+      beforeQuery.run();
+    }
+  }
+
   @Override
   public void add(Identifier node) {
     var name = node.getName();
     var set = index.get(name);
     if (set == null) {
-      set = new HashSet<>();
-      index.put(name, set);
+      index.put(name, new CompactIdentitySet<>(node));
+      return;
     }
     set.add(node);
   }
@@ -45,11 +71,13 @@ public class IdentifierIndex<I extends PatriciaTrie<Set<Identifier>>>
   }
 
   public Set<Identifier> get(String key) {
+    prepareQuery();
     var result = index.get(key);
     return result == null ? Collections.emptySet() : result;
   }
 
   public Stream<Identifier> getStream(String key) {
+    prepareQuery();
     var result = index.get(key);
     return result == null ? Stream.empty() : result.stream();
   }
@@ -71,11 +99,13 @@ public class IdentifierIndex<I extends PatriciaTrie<Set<Identifier>>>
   }
 
   public Identifier getOne(String key) {
+    prepareQuery();
     var iterator = index.get(key).iterator();
     return iterator.hasNext() ? iterator.next() : null;
   }
 
   public boolean has(String key) {
+    prepareQuery();
     var result = index.get(key);
     return result != null && !result.isEmpty();
   }
@@ -95,6 +125,8 @@ public class IdentifierIndex<I extends PatriciaTrie<Set<Identifier>>>
       return false;
     }
     Identifier.validateContents(newName);
+    newName = Identifier.internName(newName);
+    prepareQuery();
     var set = index.get(oldName);
     if (set == null) {
       return false;
@@ -113,11 +145,13 @@ public class IdentifierIndex<I extends PatriciaTrie<Set<Identifier>>>
   }
 
   public SortedMap<String, Set<Identifier>> prefixMap(String key) {
+    prepareQuery();
     return index.prefixMap(key);
   }
 
   @Override
   public Stream<Set<Identifier>> prefixQuery(String key) {
+    prepareQuery();
     return index.prefixMap(key).values().stream();
   }
 
@@ -126,6 +160,57 @@ public class IdentifierIndex<I extends PatriciaTrie<Set<Identifier>>>
     return prefixQuery(key).flatMap(Set::stream);
   }
 
+  @SuppressWarnings("unchecked")
+  private <Q> Q getQueryable(Class<?> queryableType, String queryName) {
+    if (!queryableType.isInstance(index)) {
+      throw new UnsupportedOperationException(
+          "The index " + index.getClass().getSimpleName() + " doesn't support " + queryName + " queries.");
+    }
+    prepareQuery();
+    return (Q) index;
+  }
+
+  /**
+   * Returns a stream of the sets of identifiers whose names have the given
+   * suffix. Throws if the underlying trie doesn't support suffix queries.
+   * 
+   * @param suffix the suffix to search for
+   * @return the sets of identifiers that have the suffix
+   */
+  @Override
+  public Stream<Set<Identifier>> suffixQuery(String suffix) {
+    return this.<SuffixQueryable<Identifier>>getQueryable(SuffixQueryable.class, "suffix")
+        .suffixQuery(suffix);
+  }
+
+  /**
+   * Returns a stream of the sets of identifiers whose names contain the given
+   * infix. Throws if the underlying trie doesn't support infix queries.
+   * 
+   * @param infix the infix to search for
+   * @return the sets of identifiers that have the infix
+   */
+  @Override
+  public Stream<Set<Identifier>> infixQuery(String infix) {
+    return this.<InfixQueryable<Identifier>>getQueryable(InfixQueryable.class, "infix")
+        .infixQuery(infix);
+  }
+
+  /**
+   * Returns a stream of the sets of identifiers whose names have the given
+   * prefix and suffix. Throws if the underlying trie doesn't support inverted
+   * infix queries.
+   * 
+   * @param prefix the prefix to search for
+   * @param suffix the suffix to search for
+   * @return the sets of identifiers that have the prefix and suffix
+   */
+  @Override
+  public Stream<Set<Identifier>> invertedInfixQuery(String prefix, String suffix) {
+    return this.<InvertedInfixQueryable<Identifier>>getQueryable(InvertedInfixQueryable.class, "inverted infix")
+        .invertedInfixQuery(prefix, suffix);
+  }
+
   public static IdentifierIndex<PrefixTrie<Identifier>> withPrefix() {
     return new IdentifierIndex<>(new PrefixTrie<>());
   }
@@ -137,4 +222,8 @@ public class IdentifierIndex<I extends PatriciaTrie<Set<Identifier>>>
   public static IdentifierIndex<PermutermTrie<Identifier>> withPermuterm() {
     return new IdentifierIndex<>(new PermutermTrie<>());
   }
+
+  public static IdentifierIndex<TrigramTrie<Identifier>> withTrigrams() {
+    return new IdentifierIndex<>(new TrigramTrie<>());
+  }
 }
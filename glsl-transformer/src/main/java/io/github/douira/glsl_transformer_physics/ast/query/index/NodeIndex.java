@@ -1,7 +1,7 @@
 package io.github.douira.glsl_transformer_physics.ast.query.index;
 
 import java.util.*;
-import java.util.function.Supplier;
+import java.util.function.*;
 import java.util.stream.Stream;
 
 import io.github.douira.glsl_transformer_physics.ast.node.basic.ASTNode;
@@ -20,6 +20,7 @@ import io.github.douira.glsl_transformer_physics.ast.query.Root;
 public class NodeIndex implements Index<ASTNode> {
   public final Map<Class<ASTNode>, Set<ASTNode>> index = new HashMap<>();
   public final Supplier<Set<ASTNode>> bucketConstructor;
+  private Consumer<Class<?>> beforeQuery;
 
   public NodeIndex(Supplier<Set<ASTNode>> bucketConstructor) {
     this.bucketConstructor = bucketConstructor;
@@ -37,6 +38,23 @@ public class NodeIndex implements Index<ASTNode> {
     return new NodeIndex(LinkedHashSet::new);
   }
 
+  /**
+   * Sets the function that is called with the queried type before each query.
+   * This is used by {@link Root} to build lazily constructed parts of the tree
+   * before they are queried. Reading the index map directly doesn't call it.
+   * 
+   * @param beforeQuery The function to call before each query
+   */
+  public void setBeforeQuery(Consumer<Class<?>> beforeQuery) {
+    this.beforeQuery = beforeQuery;
+  }
+
+  protected void prepareQuery(Class<?> type) {
+    if (beforeQuery != null) {
+      beforeQuery.accept(type);
+    }
+  }
+
   /**
    * Method used internally to add a node to the index. This is only meant to be
    * called by {@link Root}.
@@ -76,6 +94,7 @@ public class NodeIndex implements Index<ASTNode> {
    */
   @SuppressWarnings("unchecked")
   public <T extends ASTNode> Set<T> get(Class<T> type) {
+    prepareQuery(type);
     var result = (Set<T>) index.get(type);
     return result == null ? Collections.emptySet() : result;
   }
@@ -89,6 +108,7 @@ public class NodeIndex implements Index<ASTNode> {
    */
   @SuppressWarnings("unchecked")
   public <T extends ASTNode> Stream<T> getStream(Class<T> type) {
+    prepareQuery(type);
     var result = (Set<T>) index.get(type);
     return result == null ? Stream.empty() : result.stream();
   }
@@ -102,6 +122,7 @@ public class NodeIndex implements Index<ASTNode> {
    */
   @SuppressWarnings("unchecked")
   public <T extends ASTNode> T getOne(Class<T> type) {
+    prepareQuery(type);
     var result = (Set<T>) index.get(type);
     if (result == null) {
       return null;
@@ -117,6 +138,7 @@ public class NodeIndex implements Index<ASTNode> {
    * @return true if the index contains any nodes of the given type
    */
   public boolean has(Class<? extends ASTNode> type) {
+    prepareQuery(type);
     var result = index.get(type);
     return result != null && !result.isEmpty();
   }
@@ -0,0 +1,583 @@
+package io.github.douira.glsl_transformer_physics.ast.query.index;
+
+import java.util.*;
+
+import io.github.douira.glsl_transformer_physics.ast.node.basic.*;
+import io.github.douira.glsl_transformer_physics.ast.node.external_declaration.FunctionDefinition;
+import io.github.douira.glsl_transformer_physics.ast.query.Root;
+import io.github.douira.glsl_transformer_physics.ast.traversal.ASTVoidVisitor;
+import io.github.douira.glsl_transformer_physics.util.IdentitySet;
+
+/**
+ * The ordered node index is an {@link OrdinalNodeIndex} that can also answer
+ * queries for nodes of a type in document order. This is the order in which a
+ * traversal of the tree visits the nodes, which means a node comes before its
+ * children and the children come in the order they are printed in.
+ * 
+ * The order is maintained with order labels. Each node gets a number and the
+ * numbers of the nodes increase in document order. The nodes are also kept in
+ * a linked list in document order. When a subtree is inserted, its nodes get
+ * numbers between the number of the node that comes before it and the number
+ * of the node that comes after it. If there are not enough free numbers in
+ * between, the numbers of a few of the following nodes are spread out to make
+ * room. The nodes of each queried type are kept in a tree set sorted by their
+ * number, which means the ordered queries take logarithmic time.
+ * 
+ * The numbers are only assigned with a walk of the whole tree when the first
+ * ordered query is made. From then on, {@link Root} reports each node that
+ * gets or loses a parent. The changed subtrees are relabeled before the next
+ * ordered query. The work for this is proportional to the size of the changed
+ * subtrees and the number of siblings of their topmost nodes, and not to the
+ * size of the whole tree. A loop of queries and insertions therefore doesn't
+ * walk the whole tree on each query.
+ * 
+ * Only nodes that are part of a tree that has a registered topmost node are
+ * included in ordered queries. Nodes that were detached from the tree without
+ * being unregistered are left out. If multiple separate trees are registered
+ * with the root, their order relative to each other is arbitrary.
+ */
+public class OrderedNodeIndex extends OrdinalNodeIndex {
+  /**
+   * The distance between the numbers of nodes that are added at the end.
+   */
+  private static final long STEP = 1L << 32;
+
+  /**
+   * A node in the list of nodes in document order.
+   */
+  private static final class Entry {
+    private final ASTNode node;
+    private long label;
+    private Entry previous;
+    private Entry next;
+
+    private Entry(ASTNode node, long label) {
+      this.node = node;
+      this.label = label;
+    }
+  }
+
+  /**
+   * Spreading out numbers doesn't change the order of the entries, which means
+   * the tree sets sorted with this comparator stay valid.
+   */
+  private static final Comparator<Entry> ORDER = (a, b) -> Long.compare(a.label, b.label);
+
+  /**
+   * The registered nodes that didn't have a parent when they were registered.
+   * The trees they are part of are walked to determine the order.
+   */
+  private final IdentitySet<ASTNode> unparentedNodes = new IdentitySet<>();
+  private final Map<Class<?>, TreeSet<Entry>> orderedBuckets = new HashMap<>();
+
+  /**
+   * The list of entries starts after this entry. It's not part of the map.
+   */
+  private final Entry head = new Entry(null, 0);
+  private Entry tail = head;
+
+  /**
+   * The entries of the nodes or {@code null} if no ordered query has been made
+   * yet.
+   */
+  private IdentityHashMap<ASTNode, Entry> entries;
+
+  /**
+   * The nodes that got or lost a parent or were added since the last ordered
+   * query.
+   */
+  private IdentitySet<ASTNode> changedNodes = new IdentitySet<>();
+
+  /**
+   * Creates a new ordered node index.
+   * 
+   * @param indexSuperclasses If nodes should also be indexed by their
+   *                          superclasses
+   */
+  public OrderedNodeIndex(boolean indexSuperclasses) {
+    super(indexSuperclasses);
+  }
+
+  public OrderedNodeIndex() {
+    this(false);
+  }
+
+  public static OrderedNodeIndex withExactTypes() {
+    return new OrderedNodeIndex(false);
+  }
+
+  public static OrderedNodeIndex withSuperclasses() {
+    return new OrderedNodeIndex(true);
+  }
+
+  @Override
+  public void add(ASTNode node) {
+    super.add(node);
+    if (!node.hasParent()) {
+      unparentedNodes.add(node);
+    }
+    if (entries != null) {
+      changedNodes.add(node);
+    }
+  }
+
+  @Override
+  public void remove(ASTNode node) {
+    super.remove(node);
+    unparentedNodes.remove(node);
+    if (entries != null) {
+      changedNodes.remove(node);
+      removeEntry(node);
+    }
+  }
+
+  /**
+   * Notifies this index that the given node got or lost a parent or was moved
+   * within its parent. This is only meant to be called by {@link Root}.
+   * 
+   * @param node The node that changed its position
+   */
+  public void notifyParentChange(ASTNode node) {
+    if (entries != null) {
+      changedNodes.add(node);
+    }
+  }
+
+  private boolean isIndexedAs(Class<?> type, ASTNode node) {
+    if (!indexesSuperclasses()) {
+      return node.getClass() == type;
+    }
+    // these generic base classes are not indexed
+    return type.isInstance(node)
+        && type != ASTNode.class
+        && type != InnerASTNode.class
+        && type != ListASTNode.class;
+  }
+
+  private void removeEntry(ASTNode node) {
+    var entry = entries.remove(node);
+    if (entry == null) {
+      return;
+    }
+    for (var bucket : orderedBuckets.entrySet()) {
+      if (isIndexedAs(bucket.getKey(), node)) {
+        bucket.getValue().remove(entry);
+      }
+    }
+    entry.previous.next = entry.next;
+    if (entry.next == null) {
+      tail = entry.previous;
+    } else {
+      entry.next.previous = entry.previous;
+    }
+  }
+
+  /**
+   * Visits the nodes of a tree in document order. The bodies of function
+   * definitions that haven't been built yet don't contain any queried nodes
+   * and accessing them would build them.
+   */
+  private abstract static class OrderVisitor extends ASTVoidVisitor {
+    @Override
+    public Void visitFunctionDefinition(FunctionDefinition node) {
+      visit(node.getFunctionPrototype());
+      if (!node.isBodyPending()) {
+        visitSafe(null, node.getBody());
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Removes the entries of a subtree. The children of a node without an entry
+   * don't have entries either since they were either added together with it or
+   * moved into it, which means they are changed nodes themselves.
+   */
+  private class RemovingVisitor extends OrderVisitor {
+    @Override
+    public Void visit(ASTNode node) {
+      if (entries.containsKey(node)) {
+        removeEntry(node);
+        node.accept(this);
+      }
+      return null;
+    }
+  }
+
+  private static class CollectingVisitor extends OrderVisitor {
+    private final List<ASTNode> nodes = new ArrayList<>();
+
+    @Override
+    public void visitVoid(ASTNode node) {
+      nodes.add(node);
+    }
+  }
+
+  /**
+   * Collects the direct children of a node without visiting their children.
+   */
+  private static class ChildVisitor extends OrderVisitor {
+    private final List<ASTNode> children = new ArrayList<>();
+
+    @Override
+    public Void visit(ASTNode node) {
+      children.add(node);
+      return null;
+    }
+  }
+
+  private static List<ASTNode> getChildren(ASTNode node) {
+    var visitor = new ChildVisitor();
+    node.accept(visitor);
+    return visitor.children;
+  }
+
+  private static List<ASTNode> collectSubtree(ASTNode node) {
+    var visitor = new CollectingVisitor();
+    visitor.visit(node);
+    return visitor.nodes;
+  }
+
+  /**
+   * Inserts entries for the given nodes in the given order directly after the
+   * given entry.
+   */
+  private void insertAfter(Entry previous, List<ASTNode> nodes) {
+    var count = nodes.size();
+    if (count == 0) {
+      return;
+    }
+    if (getUpperBound(previous) - previous.label <= count) {
+      makeRoom(previous, count);
+    }
+    var next = previous.next;
+    var step = (getUpperBound(previous) - previous.label) / (count + 1);
+    if (next == null) {
+      // leave room for nodes that are added at the end later
+      step = Math.min(step, STEP);
+    }
+    var current = previous;
+    for (var node : nodes) {
+      var entry = new Entry(node, current.label + step);
+      entry.previous = current;
+      current.next = entry;
+      current = entry;
+      entries.put(node, entry);
+      for (var bucket : orderedBuckets.entrySet()) {
+        if (isIndexedAs(bucket.getKey(), node)) {
+          bucket.getValue().add(entry);
+        }
+      }
+    }
+    current.next = next;
+    if (next == null) {
+      tail = current;
+    } else {
+      next.previous = current;
+    }
+  }
+
+  private static long getUpperBound(Entry entry) {
+    return entry.next == null ? Long.MAX_VALUE : entry.next.label;
+  }
+
+  /**
+   * Spreads out the numbers of the entries after the given entry so that the
+   * given number of entries can be inserted directly after it. The range of
+   * entries that is spread out grows until the free numbers in it are enough
+   * to keep the spread out entries apart by more than the size of the range.
+   * This keeps the amortized number of changed entries per inserted entry
+   * logarithmic.
+   */
+  private void makeRoom(Entry previous, int count) {
+    var bound = previous.next;
+    long needed = count + 1;
+    while (bound != null && bound.label - previous.label <= needed * needed) {
+      bound = bound.next;
+      needed++;
+    }
+    var upper = bound == null ? Long.MAX_VALUE : bound.label;
+    var spacing = (upper - previous.label) / needed;
+    if (spacing == 0) {
+      relabelAll(previous, count);
+      return;
+    }
+    var label = previous.label + count * spacing;
+    for (var entry = previous.next; entry != bound; entry = entry.next) {
+      label += spacing;
+      entry.label = label;
+    }
+  }
+
+  /**
+   * Spreads out the numbers of all entries evenly. This only happens if the
+   * numbers at the end of the list have run out.
+   */
+  private void relabelAll(Entry previous, int count) {
+    var spacing = Long.MAX_VALUE / (entries.size() + count + 2);
+    var label = previous == head ? count * spacing : 0;
+    for (var entry = head.next; entry != null; entry = entry.next) {
+      label += spacing;
+      entry.label = label;
+      if (entry == previous) {
+        label += count * spacing;
+      }
+    }
+  }
+
+  /**
+   * Returns the entry of the last node that comes before the given node in
+   * document order and has an entry. The parent of the given node must have an
+   * entry.
+   */
+  private Entry getPreviousEntry(ASTNode node) {
+    var parent = node.getParent();
+    var siblings = getChildren(parent);
+    var index = siblings.size() - 1;
+    while (index >= 0 && siblings.get(index) != node) {
+      index--;
+    }
+    for (var i = index - 1; i >= 0; i--) {
+      var sibling = siblings.get(i);
+      if (entries.containsKey(sibling)) {
+        return getLastEntry(sibling);
+      }
+    }
+    return entries.get(parent);
+  }
+
+  /**
+   * Returns the entry of the last node in the subtree of the given node that
+   * has an entry. The given node must have an entry.
+   */
+  private Entry getLastEntry(ASTNode node) {
+    while (true) {
+      ASTNode lastChild = null;
+      var children = getChildren(node);
+      for (var i = children.size() - 1; i >= 0; i--) {
+        var child = children.get(i);
+        if (entries.containsKey(child)) {
+          lastChild = child;
+          break;
+        }
+      }
+      if (lastChild == null) {
+        return entries.get(node);
+      }
+      node = lastChild;
+    }
+  }
+
+  /**
+   * Inserts the entries of the subtree of the given changed node if it's part
+   * of a tree that has entries. A changed node whose parent doesn't have an
+   * entry is either part of a subtree that is inserted as a whole or not part
+   * of a registered tree.
+   */
+  private void insertSubtree(ASTNode node) {
+    if (entries.containsKey(node)) {
+      return;
+    }
+    Entry previous;
+    if (node.hasParent()) {
+      if (!entries.containsKey(node.getParent())) {
+        return;
+      }
+      previous = getPreviousEntry(node);
+    } else if (unparentedNodes.contains(node)) {
+      previous = tail;
+    } else {
+      return;
+    }
+    insertAfter(previous, collectSubtree(node));
+  }
+
+  /**
+   * Brings the entries up to date with the structure of the tree. On the first
+   * call, all registered trees are walked.
+   */
+  private void updateOrder() {
+    if (entries == null) {
+      entries = new IdentityHashMap<>();
+      changedNodes.clear();
+      var topNodes = new IdentitySet<ASTNode>();
+      for (var node : unparentedNodes) {
+        while (node.hasParent()) {
+          node = node.getParent();
+        }
+        topNodes.add(node);
+      }
+      for (var node : topNodes) {
+        insertAfter(tail, collectSubtree(node));
+      }
+      return;
+    }
+    if (changedNodes.isEmpty()) {
+      return;
+    }
+
+    // all changed subtrees are removed before any are inserted again so that
+    // the remaining entries are in the right order
+    var changed = changedNodes;
+    changedNodes = new IdentitySet<>();
+    var removingVisitor = new RemovingVisitor();
+    for (var node : changed) {
+      removingVisitor.visit(node);
+    }
+    for (var node : changed) {
+      insertSubtree(node);
+    }
+  }
+
+  private TreeSet<Entry> getOrderedBucket(Class<? extends ASTNode> type) {
+    // querying the nodes may build parts of the tree which changes the order
+    var nodes = get(type);
+    updateOrder();
+    var bucket = orderedBuckets.get(type);
+    if (bucket == null) {
+      bucket = new TreeSet<>(ORDER);
+      for (var node : nodes) {
+        var entry = entries.get(node);
+        if (entry != null) {
+          bucket.add(entry);
+        }
+      }
+      orderedBuckets.put(type, bucket);
+    }
+    return bucket;
+  }
+
+  private Entry getEntry(ASTNode node) {
+    var entry = entries.get(node);
+    if (entry == null) {
+      throw new IllegalArgumentException("The given node is not part of a tree of this index!");
+    }
+    return entry;
+  }
+
+  private static <T extends ASTNode> T getNode(Class<T> type, Entry entry) {
+    return entry == null ? null : type.cast(entry.node);
+  }
+
+  private static <T extends ASTNode> List<T> toList(Class<T> type, Collection<Entry> entries) {
+    if (entries.isEmpty()) {
+      return Collections.emptyList();
+    }
+    var nodes = new ArrayList<T>(entries.size());
+    for (var entry : entries) {
+      nodes.add(type.cast(entry.node));
+    }
+    return Collections.unmodifiableList(nodes);
+  }
+
+  /**
+   * Returns all nodes with the given type in document order.
+   * 
+   * @param <T>  the type of the class
+   * @param type the class of nodes to return
+   * @return an unmodifiable list of the nodes in document order
+   */
+  public <T extends ASTNode> List<T> getOrdered(Class<T> type) {
+    return toList(type, getOrderedBucket(type));
+  }
+
+  /**
+   * Returns the node with the given type that comes first in document order.
+   * 
+   * @param <T>  the type of the class
+   * @param type the class of the node to return
+   * @return the first node with the given type or {@code null} if there is none
+   */
+  public <T extends ASTNode> T getFirst(Class<T> type) {
+    var bucket = getOrderedBucket(type);
+    return bucket.isEmpty() ? null : getNode(type, bucket.first());
+  }
+
+  /**
+   * Returns the node with the given type that comes last in document order.
+   * 
+   * @param <T>  the type of the class
+   * @param type the class of the node to return
+   * @return the last node with the given type or {@code null} if there is none
+   */
+  public <T extends ASTNode> T getLast(Class<T> type) {
+    var bucket = getOrderedBucket(type);
+    return bucket.isEmpty() ? null : getNode(type, bucket.last());
+  }
+
+  /**
+   * Returns the first node with the given type that comes after the given node
+   * in document order. Since the children of a node come after it, this may be
+   * a descendant of the given node.
+   * 
+   * @param <T>  the type of the class
+   * @param type the class of the node to return
+   * @param node the node to search after
+   * @return the first node with the given type after the given node or
+   *         {@code null} if there is none
+   */
+  public <T extends ASTNode> T getFirstAfter(Class<T> type, ASTNode node) {
+    var bucket = getOrderedBucket(type);
+    return getNode(type, bucket.higher(getEntry(node)));
+  }
+
+  /**
+   * Returns the last node with the given type that comes before the given node
+   * in document order. Since a node comes before its children, this may be an
+   * ancestor of the given node.
+   * 
+   * @param <T>  the type of the class
+   * @param type the class of the node to return
+   * @param node the node to search before
+   * @return the last node with the given type before the given node or
+   *         {@code null} if there is none
+   */
+  public <T extends ASTNode> T getLastBefore(Class<T> type, ASTNode node) {
+    var bucket = getOrderedBucket(type);
+    return getNode(type, bucket.lower(getEntry(node)));
+  }
+
+  /**
+   * Returns the nodes with the given type that come after the first given node
+   * and before the second given node in document order. The given nodes
+   * themselves are not included.
+   * 
+   * @param <T>  the type of the class
+   * @param type the class of nodes to return
+   * @param from the node after which the returned nodes start
+   * @param to   the node before which the returned nodes end
+   * @return an unmodifiable list of the nodes between the given nodes in
+   *         document order
+   */
+  public <T extends ASTNode> List<T> getBetween(Class<T> type, ASTNode from, ASTNode to) {
+    var bucket = getOrderedBucket(type);
+    var fromEntry = getEntry(from);
+    var toEntry = getEntry(to);
+    if (fromEntry.label >= toEntry.label) {
+      return Collections.emptyList();
+    }
+    return toList(type, bucket.subSet(fromEntry, false, toEntry, false));
+  }
+
+  /**
+   * Returns the nodes with the given type that are in the range from the first
+   * given node to the second given node in document order. The given nodes are
+   * included if they have the given type. Descendants of the second given node
+   * come after it and are not included.
+   * 
+   * @param <T>  the type of the class
+   * @param type the class of nodes to return
+   * @param from the first node of the range
+   * @param to   the last node of the range
+   * @return an unmodifiable list of the nodes in the range in document order
+   */
+  public <T extends ASTNode> List<T> getRange(Class<T> type, ASTNode from, ASTNode to) {
+    var bucket = getOrderedBucket(type);
+    var fromEntry = getEntry(from);
+    var toEntry = getEntry(to);
+    if (fromEntry.label > toEntry.label) {
+      return Collections.emptyList();
+    }
+    return toList(type, bucket.subSet(fromEntry, true, toEntry, true));
+  }
+}
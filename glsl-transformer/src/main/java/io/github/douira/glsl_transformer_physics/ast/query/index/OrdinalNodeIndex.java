@@ -0,0 +1,180 @@
+package io.github.douira.glsl_transformer_physics.ast.query.index;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import io.github.douira.glsl_transformer_physics.ast.node.basic.*;
+import io.github.douira.glsl_transformer_physics.util.IdentitySet;
+
+/**
+ * The ordinal node index is a faster variant of {@link NodeIndex} and
+ * {@link SuperclassNodeIndex}. Each node class is assigned a dense integer
+ * ordinal the first time it's seen and the buckets are stored in an array at
+ * the ordinal of their type. The buckets are {@link IdentitySet}s which compare
+ * nodes by identity without creating an entry object for each node.
+ * 
+ * When superclasses are indexed, the ordinals of the indexed superclasses of a
+ * class are computed once and stored in a bit set together with the ordinal of
+ * the class itself. Adding and removing a node then doesn't walk the class
+ * hierarchy with reflection. Like with {@link SuperclassNodeIndex}, the generic
+ * base classes {@link ASTNode}, {@link InnerASTNode} and {@link ListASTNode} are
+ * not indexed.
+ * 
+ * The index map and the bucket constructor of {@link NodeIndex} are not used
+ * by this index. The map stays empty which is why this index isn't the default
+ * and has to be chosen explicitly, either by passing it to a
+ * {@link io.github.douira.glsl_transformer_physics.ast.query.Root} or with
+ * {@link io.github.douira.glsl_transformer_physics.ast.transform.ASTParser#setOrdinalNodeIndex(boolean)}.
+ * 
+ * Unchecked casts are used but they are safe because each bucket only has the
+ * right types of nodes.
+ */
+public class OrdinalNodeIndex extends NodeIndex {
+  /**
+   * The ordinal of a node class and the ordinals of all the types a node of the
+   * class is indexed as.
+   */
+  private static record TypeInfo(int ordinal, BitSet indexedTypes) {
+  }
+
+  private static final AtomicInteger nextOrdinal = new AtomicInteger();
+
+  private static final ClassValue<TypeInfo> typeInfos = new ClassValue<TypeInfo>() {
+    @Override
+    protected TypeInfo computeValue(Class<?> type) {
+      var indexedTypes = new BitSet();
+      var superclass = type.getSuperclass();
+      if (superclass != null && ASTNode.class.isAssignableFrom(superclass)) {
+        indexedTypes.or(get(superclass).indexedTypes());
+      }
+      var ordinal = nextOrdinal.getAndIncrement();
+      if (type != ASTNode.class && type != InnerASTNode.class && type != ListASTNode.class) {
+        indexedTypes.set(ordinal);
+      }
+      return new TypeInfo(ordinal, indexedTypes);
+    }
+  };
+
+  private final boolean indexSuperclasses;
+  private IdentitySet<ASTNode>[] buckets = createBuckets(64);
+
+  /**
+   * Creates a new ordinal node index.
+   * 
+   * @param indexSuperclasses If nodes should also be indexed by their
+   *                          superclasses
+   */
+  public OrdinalNodeIndex(boolean indexSuperclasses) {
+    super(null);
+    this.indexSuperclasses = indexSuperclasses;
+  }
+
+  public OrdinalNodeIndex() {
+    this(false);
+  }
+
+  public static OrdinalNodeIndex withExactTypes() {
+    return new OrdinalNodeIndex(false);
+  }
+
+  public static OrdinalNodeIndex withSuperclasses() {
+    return new OrdinalNodeIndex(true);
+  }
+
+  public boolean indexesSuperclasses() {
+    return indexSuperclasses;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static IdentitySet<ASTNode>[] createBuckets(int length) {
+    return (IdentitySet<ASTNode>[]) new IdentitySet<?>[length];
+  }
+
+  private IdentitySet<ASTNode> getBucket(int ordinal) {
+    return ordinal < buckets.length ? buckets[ordinal] : null;
+  }
+
+  private IdentitySet<ASTNode> getOrCreateBucket(int ordinal) {
+    if (ordinal >= buckets.length) {
+      buckets = Arrays.copyOf(buckets, Math.max(buckets.length * 2, ordinal + 1));
+    }
+    var bucket = buckets[ordinal];
+    if (bucket == null) {
+      bucket = new IdentitySet<>();
+      buckets[ordinal] = bucket;
+    }
+    return bucket;
+  }
+
+  private IdentitySet<ASTNode> getBucket(Class<?> type) {
+    return getBucket(typeInfos.get(type).ordinal());
+  }
+
+  @Override
+  public void add(ASTNode node) {
+    var typeInfo = typeInfos.get(node.getClass());
+    if (!indexSuperclasses) {
+      getOrCreateBucket(typeInfo.ordinal()).add(node);
+      return;
+    }
+    var indexedTypes = typeInfo.indexedTypes();
+    for (var i = indexedTypes.nextSetBit(0); i >= 0; i = indexedTypes.nextSetBit(i + 1)) {
+      getOrCreateBucket(i).add(node);
+    }
+  }
+
+  @Override
+  public void remove(ASTNode node) {
+    var typeInfo = typeInfos.get(node.getClass());
+    if (!indexSuperclasses) {
+      var bucket = getBucket(typeInfo.ordinal());
+      if (bucket != null) {
+        bucket.remove(node);
+      }
+      return;
+    }
+    var indexedTypes = typeInfo.indexedTypes();
+    for (var i = indexedTypes.nextSetBit(0); i >= 0; i = indexedTypes.nextSetBit(i + 1)) {
+      var bucket = getBucket(i);
+      if (bucket != null) {
+        bucket.remove(node);
+      }
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends ASTNode> Set<T> get(Class<T> type) {
+    prepareQuery(type);
+    var result = (Set<T>) (Set<?>) getBucket(type);
+    return result == null ? Collections.emptySet() : result;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends ASTNode> Stream<T> getStream(Class<T> type) {
+    prepareQuery(type);
+    var result = (Set<T>) (Set<?>) getBucket(type);
+    return result == null ? Stream.empty() : result.stream();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends ASTNode> T getOne(Class<T> type) {
+    prepareQuery(type);
+    var result = getBucket(type);
+    if (result == null) {
+      return null;
+    }
+    var iterator = result.iterator();
+    return iterator.hasNext() ? (T) iterator.next() : null;
+  }
+
+  @Override
+  public boolean has(Class<? extends ASTNode> type) {
+    prepareQuery(type);
+    var result = getBucket(type);
+    return result != null && !result.isEmpty();
+  }
+}
@@ -0,0 +1,174 @@
+package io.github.douira.glsl_transformer_physics.ast.query.index;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.apache.commons.collections4.trie.PatriciaTrie;
+
+/**
+ * This trigram trie supports prefix, suffix, infix and inverted infix (suffix
+ * + prefix) queries like the permuterm trie but only inserts each key into the
+ * underlying trie once. Prefix queries are answered by the trie. For the other
+ * queries, a posting list of the keys that contain each trigram (three
+ * consecutive characters) is kept. The keys are padded with a boundary
+ * character at both ends so that the trigrams also capture the start and the
+ * end of a key. A query looks up the trigrams of the searched string, takes the
+ * smallest posting list and checks each key in it against the query. The
+ * number of entries per key is linear in the size of the key.
+ * 
+ * The posting lists are only built when the first query that needs them is
+ * made and are kept up to date through {@link #put(String, Set)},
+ * {@link #remove(Object)} and {@link #clear()} from then on. Queries for
+ * strings that are too short to contain a trigram check all keys.
+ */
+public class TrigramTrie<E> extends PatriciaTrie<Set<E>>
+    implements PrefixQueryable<E>, SuffixQueryable<E>, InfixQueryable<E>, InvertedInfixQueryable<E> {
+  private static final char BOUNDARY = '\0';
+
+  private Map<Long, Set<String>> postings;
+
+  public TrigramTrie() {
+  }
+
+  public TrigramTrie(Map<? extends String, ? extends Set<E>> m) {
+    super(m);
+  }
+
+  private static long trigram(String str, int index) {
+    return ((long) str.charAt(index) << 32)
+        | ((long) str.charAt(index + 1) << 16)
+        | str.charAt(index + 2);
+  }
+
+  private static String pad(String key) {
+    return BOUNDARY + key + BOUNDARY;
+  }
+
+  private void addTrigrams(String key) {
+    var padded = pad(key);
+    for (var i = 0; i + 3 <= padded.length(); i++) {
+      postings.computeIfAbsent(trigram(padded, i), gram -> new HashSet<>()).add(key);
+    }
+  }
+
+  private void removeTrigrams(String key) {
+    var padded = pad(key);
+    for (var i = 0; i + 3 <= padded.length(); i++) {
+      var gram = trigram(padded, i);
+      var keys = postings.get(gram);
+      if (keys != null && keys.remove(key) && keys.isEmpty()) {
+        postings.remove(gram);
+      }
+    }
+  }
+
+  private Map<Long, Set<String>> getPostings() {
+    if (postings == null) {
+      postings = new HashMap<>();
+      for (var key : keySet()) {
+        addTrigrams(key);
+      }
+    }
+    return postings;
+  }
+
+  @Override
+  public Set<E> put(String key, Set<E> value) {
+    var added = postings != null && !containsKey(key);
+    var previous = super.put(key, value);
+    if (added) {
+      addTrigrams(key);
+    }
+    return previous;
+  }
+
+  @Override
+  public Set<E> remove(Object k) {
+    var removed = postings != null && containsKey(k);
+    var previous = super.remove(k);
+    if (removed) {
+      removeTrigrams((String) k);
+    }
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    postings = null;
+  }
+
+  /**
+   * Returns the values of the keys that match the given predicate. Each of the
+   * given patterns must be contained in the padded form of every matching key.
+   * The patterns are only used to find the candidate keys.
+   */
+  private Stream<Set<E>> trigramQuery(Predicate<String> matches, String... patterns) {
+    Set<String> candidates = null;
+    for (var pattern : patterns) {
+      for (var i = 0; i + 3 <= pattern.length(); i++) {
+        var keys = getPostings().get(trigram(pattern, i));
+        if (keys == null) {
+          return Stream.empty();
+        }
+        if (candidates == null || keys.size() < candidates.size()) {
+          candidates = keys;
+        }
+      }
+    }
+    return (candidates == null ? keySet() : candidates).stream()
+        .filter(matches)
+        .map(this::get);
+  }
+
+  /**
+   * Returns a stream of all the elements that have a given prefix.
+   * 
+   * @param prefix the prefix to search for
+   * @return the elements that have the prefix
+   */
+  @Override
+  public Stream<Set<E>> prefixQuery(String prefix) {
+    return prefixMap(prefix).values().stream();
+  }
+
+  /**
+   * Returns a stream of all the elements that have a given suffix.
+   * 
+   * @param suffix the suffix to search for
+   * @return the elements that have the suffix
+   */
+  @Override
+  public Stream<Set<E>> suffixQuery(String suffix) {
+    return trigramQuery(key -> key.endsWith(suffix), suffix + BOUNDARY);
+  }
+
+  /**
+   * Returns a stream of all the elements that have a given infix (substring).
+   * 
+   * @param infix the infix to search for
+   * @return the elements that have the infix
+   */
+  @Override
+  public Stream<Set<E>> infixQuery(String infix) {
+    return trigramQuery(key -> key.contains(infix), infix);
+  }
+
+  /**
+   * Returns a stream of all the elements that have a given prefix and suffix.
+   * The prefix and the suffix may not overlap.
+   * 
+   * @param prefix the prefix to search require
+   * @param suffix the suffix to search require
+   * @return the elements that have the prefix and suffix
+   */
+  @Override
+  public Stream<Set<E>> invertedInfixQuery(String prefix, String suffix) {
+    var minLength = prefix.length() + suffix.length();
+    return trigramQuery(
+        key -> key.length() >= minLength && key.startsWith(prefix) && key.endsWith(suffix),
+        BOUNDARY + prefix,
+        suffix + BOUNDARY);
+  }
+}
@@ -46,7 +46,30 @@ import io.github.douira.glsl_transformer_physics.util.Type;
  * relationship between a parse tree and an AST is encoded in this visitor.
  */
 public class ASTBuilder extends GLSLParserBaseVisitor<ASTNode> {
-  private static final Deque<Interval> sourceLineStack = new ArrayDeque<>();
+  private final BuildContext context;
+  private final boolean lazyFunctionBodies;
+  private final int lineOffset;
+
+  /**
+   * Creates a new AST builder that builds nodes in the build context of the
+   * current thread.
+   */
+  public ASTBuilder() {
+    this(BuildContext.get());
+  }
+
+  /**
+   * Creates a new AST builder that builds nodes in the given build context. The
+   * context must be the one of the thread that uses the builder since the
+   * constructed nodes read their root and source lines from it.
+   * 
+   * @param context The build context to use
+   */
+  public ASTBuilder(BuildContext context) {
+    this.context = context;
+    this.lazyFunctionBodies = context.isLazyFunctionBodies();
+    this.lineOffset = context.getLineOffset();
+  }
 
   /**
    * Builds an AST from the given parse tree with a new root.
@@ -134,14 +157,16 @@ public class ASTBuilder extends GLSLParserBaseVisitor<ASTNode> {
     return ctx == null ? null : visitMethod.apply(ctx);
   }
 
-  private static void startConstruction(Token token) {
-    var line = token.getLine();
-    sourceLineStack.push(Interval.of(line, line));
+  private void startConstruction(Token token) {
+    var line = token.getLine() + lineOffset;
+    context.startConstruction(Interval.of(line, line));
   }
 
-  private static void startConstruction(ParseTree tree) {
+  private void startConstruction(ParseTree tree) {
     if (tree instanceof ParserRuleContext ctx) {
-      sourceLineStack.push(Interval.of(ctx.start.getLine(), ctx.stop.getLine()));
+      context.startConstruction(Interval.of(
+          ctx.start.getLine() + lineOffset,
+          ctx.stop.getLine() + lineOffset));
     } else if (tree instanceof TerminalNodeImpl ctx) {
       startConstruction(ctx.getSymbol());
     } else {
@@ -149,11 +174,11 @@ public class ASTBuilder extends GLSLParserBaseVisitor<ASTNode> {
     }
   }
 
-  private static void endConstruction() {
-    sourceLineStack.pop();
+  private void endConstruction() {
+    context.endConstruction();
   }
 
-  private static <R extends ASTNode> R constructSimple(
+  private <R extends ASTNode> R constructSimple(
       ParseTree ctx, Supplier<R> constructor) {
     startConstruction(ctx);
     var result = constructor.get();
@@ -162,11 +187,10 @@ public class ASTBuilder extends GLSLParserBaseVisitor<ASTNode> {
   }
 
   public static Interval getActiveSourceLines() {
-    var sourceLines = sourceLineStack.peekFirst();
-    return sourceLines == null ? ASTNode.SYNTHETIC_SOURCE : sourceLines;
+    return BuildContext.get().getActiveSourceLines();
   }
 
-  private static Identifier makeIdentifier(Token name) {
+  private Identifier makeIdentifier(Token name) {
     if (name == null) {
       return null;
     }
@@ -891,6 +915,15 @@ public class ASTBuilder extends GLSLParserBaseVisitor<ASTNode> {
   public FunctionDefinition visitFunctionDefinition(FunctionDefinitionContext ctx) {
     startConstruction(ctx);
     try {
+      if (lazyFunctionBodies) {
+        // the body is built from the parse tree by whichever thread accesses it
+        var bodyContext = ctx.compoundStatement();
+        var bodyLineOffset = lineOffset;
+        return new FunctionDefinition(
+            visitFunctionPrototype(ctx.functionPrototype()),
+            () -> BuildContext.get().withLineOffset(bodyLineOffset,
+                () -> new ASTBuilder().visitCompoundStatement(bodyContext)));
+      }
       return new FunctionDefinition(
           visitFunctionPrototype(ctx.functionPrototype()),
           visitCompoundStatement(ctx.compoundStatement()));
@@ -1,6 +1,7 @@
 package io.github.douira.glsl_transformer_physics.ast.transform;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.*;
 
 import org.antlr.v4.runtime.RecognitionException;
@@ -8,30 +9,49 @@ import org.antlr.v4.runtime.RecognitionException;
 import io.github.douira.glsl_transformer_physics.*;
 import io.github.douira.glsl_transformer_physics.GLSLParser.*;
 import io.github.douira.glsl_transformer_physics.ast.data.TypedTreeCache;
-import io.github.douira.glsl_transformer_physics.ast.node.TranslationUnit;
+import io.github.douira.glsl_transformer_physics.ast.node.*;
 import io.github.douira.glsl_transformer_physics.ast.node.basic.ASTNode;
 import io.github.douira.glsl_transformer_physics.ast.node.expression.Expression;
 import io.github.douira.glsl_transformer_physics.ast.node.external_declaration.ExternalDeclaration;
 import io.github.douira.glsl_transformer_physics.ast.node.statement.Statement;
-import io.github.douira.glsl_transformer_physics.ast.query.EmptyRoot;
+import io.github.douira.glsl_transformer_physics.ast.query.*;
 import io.github.douira.glsl_transformer_physics.basic.*;
+import io.github.douira.glsl_transformer_physics.basic.TopLevelSplitter.*;
 import io.github.douira.glsl_transformer_physics.basic.EnhancedParser.ParsingStrategy;
 import io.github.douira.glsl_transformer_physics.cst.token_filter.TokenFilter;
 import io.github.douira.glsl_transformer_physics.tree.ExtendedContext;
 
 public class ASTParser implements ParserInterface {
-  private static ASTParser INSTANCE;
+  private static final ThreadLocal<ASTParser> INSTANCE = ThreadLocal.withInitial(ASTParser::new);
 
+  /**
+   * Gets the internal instance of the AST parser for the current thread. Each
+   * thread gets its own parser and build cache. Use a {@link ParserPool} to
+   * share configured parsers between worker threads.
+   * 
+   * @return The AST parser of the current thread
+   */
   public static ASTParser getInternalInstance() {
-    if (INSTANCE == null) {
-      INSTANCE = new ASTParser();
-    }
-    return INSTANCE;
+    return INSTANCE.get();
   }
 
   private final CachingParser parser = new CachingParser();
   private TypedTreeCache<ASTNode> buildCache = new TypedTreeCache<>();
   private CacheStrategy cacheStrategy = CacheStrategy.ALL_EXCLUDING_TRANSLATION_UNIT;
+  private boolean lazyFunctionBodies = false;
+  private boolean lazyIndexes = false;
+  private boolean ordinalNodeIndex = false;
+  private ParserPool<ASTParser> parallelParserPool;
+  private Executor parallelExecutor;
+  private int parallelParsingThreshold;
+  private TopLevelSplitter splitter;
+
+  /**
+   * The number of characters of code each parallel parsing task parses at
+   * least. Grouping small declarations into batches keeps the overhead of
+   * scheduling the tasks low.
+   */
+  private static final int parallelBatchLength = 4096;
 
   public enum CacheStrategy {
     ALL,
@@ -47,10 +67,149 @@ public class ASTParser implements ParserInterface {
     parser.setParseCacheSizeAndClear(size);
   }
 
+  /**
+   * Sets the cache that built ASTs are stored in. The cached trees are only ever
+   * cloned and never modified which means a cache created with
+   * {@link TypedTreeCache#concurrent(int)} can be shared between the parsers of
+   * multiple threads.
+   * 
+   * @param buildCache The new build cache
+   */
+  public void setBuildCache(TypedTreeCache<ASTNode> buildCache) {
+    this.buildCache = buildCache;
+  }
+
+  public TypedTreeCache<ASTNode> getBuildCache() {
+    return buildCache;
+  }
+
+  /**
+   * Sets the cache that parse trees are stored in.
+   * 
+   * @see CachingParser#setParseCache(TypedTreeCache)
+   * @param parseCache The new parse cache
+   */
+  public void setParseCache(TypedTreeCache<ExtendedContext> parseCache) {
+    parser.setParseCache(parseCache);
+  }
+
   public void setCacheStrategy(CacheStrategy cacheStrategy) {
     this.cacheStrategy = cacheStrategy;
   }
 
+  /**
+   * Sets whether the bodies of function definitions should only be built when
+   * they are accessed. The parse tree of each body is kept until then. The root
+   * of the tree builds all pending bodies before its indexes are queried for
+   * nodes that could be inside a function body. Traversing or printing a
+   * function definition also builds its body. This saves building the bodies of
+   * functions that are never looked at, for example when only a few external
+   * declarations are inspected or when a transformation gives up early.
+   * 
+   * Only trees that are built without the build cache, like translation units
+   * with the default cache strategy, have lazily built bodies. The trees in the
+   * build cache are always built completely since they are cloned for each
+   * use. Changing this setting therefore doesn't require clearing the build
+   * cache.
+   * 
+   * @param lazyFunctionBodies Whether function bodies are built lazily
+   */
+  public void setLazyFunctionBodies(boolean lazyFunctionBodies) {
+    this.lazyFunctionBodies = lazyFunctionBodies;
+  }
+
+  public boolean isLazyFunctionBodies() {
+    return lazyFunctionBodies;
+  }
+
+  /**
+   * Sets whether the roots of newly parsed trees should only build their
+   * indexes when they are first queried. Nodes are then not added to the
+   * indexes while the tree is being built, which saves the cost of maintaining
+   * them if the tree is only changed through direct access to its nodes and
+   * printed. Once a tree's indexes are queried, they are built with a single
+   * walk over the tree and kept up to date from then on.
+   * 
+   * The trees in the build cache are not indexed and the trees returned from
+   * it are cloned into new roots which use the setting that is active when the
+   * clone is made. Changing this setting therefore doesn't require clearing the
+   * build cache.
+   * 
+   * @param lazyIndexes Whether the indexes of new trees are built lazily
+   */
+  public void setLazyIndexes(boolean lazyIndexes) {
+    this.lazyIndexes = lazyIndexes;
+  }
+
+  public boolean isLazyIndexes() {
+    return lazyIndexes;
+  }
+
+  /**
+   * Sets whether the roots of newly parsed trees should use an
+   * {@link io.github.douira.glsl_transformer_physics.ast.query.index.OrdinalNodeIndex}
+   * instead of the default node index. The ordinal node index is faster but
+   * doesn't fill the index map of the default node index, which means code that
+   * reads {@code nodeIndex.index} directly won't see any nodes.
+   * 
+   * Like with {@link #setLazyIndexes(boolean)}, trees returned from the build
+   * cache are cloned into roots that use the setting that is active when the
+   * clone is made.
+   * 
+   * @param ordinalNodeIndex Whether new trees use the ordinal node index
+   */
+  public void setOrdinalNodeIndex(boolean ordinalNodeIndex) {
+    this.ordinalNodeIndex = ordinalNodeIndex;
+  }
+
+  public boolean isOrdinalNodeIndex() {
+    return ordinalNodeIndex;
+  }
+
+  /**
+   * Enables parsing large translation units in parallel. The code is split into
+   * its top level constructs with a {@link TopLevelSplitter} and batches of
+   * external declarations are parsed on the given executor by parsers borrowed
+   * from the given pool. The parsed declarations are then added to a new
+   * translation unit which moves them into its root. The parsers in the pool
+   * should have the same parsing settings as this parser, like the parsing
+   * strategy and the token filter, since they create the parse trees of the
+   * declarations. The nodes are built with the build options of this parser.
+   * 
+   * Translation units parsed in parallel and their declarations are not stored
+   * in the build or parse caches so that the nodes get the source lines of
+   * their position in the code. If the code can't be split cleanly or a
+   * declaration fails to parse, the code is parsed again on the calling thread
+   * as usual so that errors are reported the same way as without parallel
+   * parsing.
+   * 
+   * @param parserPool     The pool of parsers to parse the declarations with
+   * @param executor       The executor to run the parsing tasks on
+   * @param minInputLength The minimum number of characters code needs to have
+   *                       to be parsed in parallel
+   */
+  public void setParallelParsing(ParserPool<ASTParser> parserPool, Executor executor, int minInputLength) {
+    this.parallelParserPool = Objects.requireNonNull(parserPool);
+    this.parallelExecutor = Objects.requireNonNull(executor);
+    this.parallelParsingThreshold = minInputLength;
+  }
+
+  public void disableParallelParsing() {
+    parallelParserPool = null;
+    parallelExecutor = null;
+  }
+
+  public boolean isParallelParsing() {
+    return parallelExecutor != null;
+  }
+
+  <R> R withBuildOptions(Supplier<R> build) {
+    var context = BuildContext.get();
+    return context.withLazyIndexes(lazyIndexes,
+        () -> context.withOrdinalNodeIndex(ordinalNodeIndex,
+            () -> context.withLazyFunctionBodies(lazyFunctionBodies, build)));
+  }
+
   @Override
   public GLSLLexer getLexer() {
     return parser.getLexer();
@@ -103,11 +262,12 @@ public class ASTParser implements ParserInterface {
     }
 
     if (cacheStrategy == CacheStrategy.NONE) {
-      return ASTBuilder.buildSubtree(parentTreeMember, parser.parse(input, ruleType, parseMethod), visitMethod);
+      var parseTree = parser.parse(input, ruleType, parseMethod);
+      return withBuildOptions(() -> ASTBuilder.buildSubtree(parentTreeMember, parseTree, visitMethod));
     } else {
       // cache and possibly build, always clone to return new trees
       return (ReturnType) buildCache.cachedGet(input, ruleType,
-          () -> ASTBuilder.build(new EmptyRoot(), parser.parse(input, ruleType, parseMethod), visitMethod))
+          () -> buildTemplate(parser.parse(input, ruleType, parseMethod), visitMethod))
           .cloneInto(parentTreeMember);
     }
   }
@@ -121,21 +281,103 @@ public class ASTParser implements ParserInterface {
     if (cacheStrategy == CacheStrategy.NONE
         || cacheStrategy == CacheStrategy.ALL_EXCLUDING_TRANSLATION_UNIT
             && ruleType == TranslationUnitContext.class) {
-      return ASTBuilder.build(parser.parse(input, ruleType, parseMethod), visitMethod);
+      var parseTree = parser.parse(input, ruleType, parseMethod);
+      return withBuildOptions(() -> ASTBuilder.build(parseTree, visitMethod));
     } else {
-      return (ReturnType) buildCache.cachedGet(input, ruleType,
-          () -> ASTBuilder.build(new EmptyRoot(), parser.parse(input, ruleType, parseMethod), visitMethod))
-          .cloneSeparate();
+      // the clone gets a new root which has to be created with the build options
+      return withBuildOptions(() -> (ReturnType) buildCache.cachedGet(input, ruleType,
+          () -> buildTemplate(parser.parse(input, ruleType, parseMethod), visitMethod))
+          .cloneSeparate());
     }
   }
 
+  /**
+   * Builds a tree that is stored in the build cache. The trees in the cache are
+   * only used as templates for clones, which is why they don't have a root
+   * with indexes and their function bodies are always built right away. A
+   * pending body would keep its parse tree alive for as long as the template is
+   * cached and would be shared with every clone.
+   */
+  private static <RuleType extends ExtendedContext, ReturnType extends ASTNode> ReturnType buildTemplate(
+      RuleType parseTree,
+      BiFunction<ASTBuilder, RuleType, ReturnType> visitMethod) {
+    return BuildContext.get().withLazyFunctionBodies(false,
+        () -> ASTBuilder.build(new EmptyRoot(), parseTree, visitMethod));
+  }
+
+  /**
+   * Parses a piece of code that was taken from a larger input into a parse
+   * tree without using the parse cache. Pieces of a larger input are rarely
+   * parsed again on their own and would only push other entries out of the
+   * cache.
+   */
+  <RuleType extends ExtendedContext> RuleType parseChunkTree(
+      String input,
+      Function<GLSLParser, RuleType> parseMethod) {
+    return parser.parse(input, (ExtendedContext) null, parseMethod);
+  }
+
+  /**
+   * Builds the parse tree of a piece of code that was taken from a larger input
+   * with this parser's build options. The built nodes get the source lines of
+   * their position in the larger input. The build cache isn't used since trees
+   * taken from it are clones that don't have source lines. If no tree member is
+   * given, the built node gets a new root.
+   */
+  <RuleType extends ExtendedContext, ReturnType extends ASTNode> ReturnType buildChunk(
+      ASTNode parentTreeMember,
+      RuleType parseTree,
+      int lineOffset,
+      BiFunction<ASTBuilder, RuleType, ReturnType> visitMethod) {
+    return withBuildOptions(() -> BuildContext.get().withLineOffset(lineOffset,
+        () -> parentTreeMember == null
+            ? ASTBuilder.build(parseTree, visitMethod)
+            : ASTBuilder.buildSubtree(parentTreeMember, parseTree, visitMethod)));
+  }
+
+  /**
+   * Parses a chunk of a larger input as a version statement with the source
+   * lines of its position in the larger input.
+   */
+  VersionStatement parseVersionStatementChunk(Chunk chunk) {
+    return buildChunk(null,
+        parseChunkTree(chunk.text(), GLSLParser::versionStatement),
+        chunk.lineOffset(),
+        ASTBuilder::visitVersionStatement);
+  }
+
+  /**
+   * Parses a chunk of a larger input as an external declaration with the source
+   * lines of its position in the larger input. If no tree member is given, the
+   * declaration gets a new root.
+   */
+  ExternalDeclaration parseExternalDeclarationChunk(ASTNode treeMember, Chunk chunk) {
+    return buildChunk(treeMember,
+        parseChunkTree(chunk.text(), GLSLParser::externalDeclaration),
+        chunk.lineOffset(),
+        ASTBuilder::visitExternalDeclaration);
+  }
+
   public TranslationUnit parseTranslationUnit(String input) throws RecognitionException {
+    if (parallelExecutor != null && input.length() >= parallelParsingThreshold) {
+      var result = parseTranslationUnitParallel(input);
+      if (result != null) {
+        return result;
+      }
+    }
     return parseNodeSeparate(input,
         TranslationUnitContext.class,
         GLSLParser::translationUnit,
         ASTBuilder::visitTranslationUnit);
   }
 
+  public VersionStatement parseSeparateVersionStatement(String input) throws RecognitionException {
+    return parseNodeSeparate(input,
+        VersionStatementContext.class,
+        GLSLParser::versionStatement,
+        ASTBuilder::visitVersionStatement);
+  }
+
   public ExternalDeclaration parseExternalDeclaration(ASTNode treeMember, String input)
       throws RecognitionException {
     return parseNode(input, treeMember,
@@ -179,6 +421,83 @@ public class ASTParser implements ParserInterface {
         ASTBuilder::visitStatement);
   }
 
+  /**
+   * Parses the translation unit by parsing batches of its external
+   * declarations in parallel. The pool's parsers only create the parse trees,
+   * the nodes are built with the build options of this parser. Like the
+   * sequentially parsed translation unit, the declarations aren't cached.
+   * 
+   * @param input The code to parse
+   * @return The translation unit or {@code null} if it has to be parsed
+   *         sequentially
+   */
+  private TranslationUnit parseTranslationUnitParallel(String input) {
+    if (splitter == null) {
+      splitter = new TopLevelSplitter();
+    }
+    var chunks = splitter.split(input);
+    for (var i = 0; i < chunks.size(); i++) {
+      var chunk = chunks.get(i);
+      if (!chunk.complete() || chunk.type() == ChunkType.VERSION && i > 0) {
+        return null;
+      }
+    }
+
+    var firstDeclaration = 0;
+    VersionStatement parsedVersionStatement = null;
+    if (!chunks.isEmpty() && chunks.get(0).type() == ChunkType.VERSION) {
+      firstDeclaration = 1;
+      try {
+        parsedVersionStatement = parseVersionStatementChunk(chunks.get(0));
+      } catch (RuntimeException e) {
+        return null;
+      }
+    }
+    var versionStatement = parsedVersionStatement;
+
+    var batches = new ArrayList<CompletableFuture<List<ExternalDeclaration>>>();
+    var batchStart = firstDeclaration;
+    var batchLength = 0;
+    for (var i = firstDeclaration; i < chunks.size(); i++) {
+      batchLength += chunks.get(i).text().length();
+      if (batchLength >= parallelBatchLength || i == chunks.size() - 1) {
+        var batch = chunks.subList(batchStart, i + 1);
+        batches.add(CompletableFuture.supplyAsync(
+            () -> parallelParserPool.withParser(batchParser -> {
+              var nodes = new ArrayList<ExternalDeclaration>(batch.size());
+              for (var chunk : batch) {
+                nodes.add(buildChunk(null,
+                    batchParser.parseChunkTree(chunk.text(), GLSLParser::externalDeclaration),
+                    chunk.lineOffset(),
+                    ASTBuilder::visitExternalDeclaration));
+              }
+              return nodes;
+            }),
+            parallelExecutor));
+        batchStart = i + 1;
+        batchLength = 0;
+      }
+    }
+
+    var declarations = new ArrayList<ExternalDeclaration>(chunks.size() - firstDeclaration);
+    for (var batch : batches) {
+      try {
+        declarations.addAll(batch.join());
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          // parse again sequentially to report the error
+          return null;
+        }
+        throw e;
+      }
+    }
+
+    // adding the separately parsed declarations moves them into the new root
+    return withBuildOptions(() -> Root.indexNodes(() -> versionStatement == null
+        ? new TranslationUnit(declarations.stream())
+        : new TranslationUnit(versionStatement, declarations.stream())));
+  }
+
   public List<ExternalDeclaration> parseExternalDeclarations(ASTNode treeMember, String... inputs) {
     var nodes = new ArrayList<ExternalDeclaration>(inputs.length);
     for (var input : inputs) {
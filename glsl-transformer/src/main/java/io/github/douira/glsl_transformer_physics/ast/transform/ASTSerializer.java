@@ -0,0 +1,1132 @@
+package io.github.douira.glsl_transformer_physics.ast.transform;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+import org.antlr.v4.runtime.misc.Interval;
+
+import io.github.douira.glsl_transformer_physics.ast.node.*;
+import io.github.douira.glsl_transformer_physics.ast.node.basic.ASTNode;
+import io.github.douira.glsl_transformer_physics.ast.node.declaration.*;
+import io.github.douira.glsl_transformer_physics.ast.node.expression.*;
+import io.github.douira.glsl_transformer_physics.ast.node.expression.LiteralExpression.IntegerFormat;
+import io.github.douira.glsl_transformer_physics.ast.node.expression.binary.*;
+import io.github.douira.glsl_transformer_physics.ast.node.expression.unary.*;
+import io.github.douira.glsl_transformer_physics.ast.node.expression.unary.FunctionCallExpression.FunctionReferenceType;
+import io.github.douira.glsl_transformer_physics.ast.node.external_declaration.*;
+import io.github.douira.glsl_transformer_physics.ast.node.external_declaration.ExtensionStatement.ExtensionBehavior;
+import io.github.douira.glsl_transformer_physics.ast.node.external_declaration.LayoutDefaults.LayoutMode;
+import io.github.douira.glsl_transformer_physics.ast.node.external_declaration.PragmaStatement.*;
+import io.github.douira.glsl_transformer_physics.ast.node.statement.*;
+import io.github.douira.glsl_transformer_physics.ast.node.statement.loop.*;
+import io.github.douira.glsl_transformer_physics.ast.node.statement.selection.*;
+import io.github.douira.glsl_transformer_physics.ast.node.statement.terminal.*;
+import io.github.douira.glsl_transformer_physics.ast.node.type.FullySpecifiedType;
+import io.github.douira.glsl_transformer_physics.ast.node.type.initializer.*;
+import io.github.douira.glsl_transformer_physics.ast.node.type.qualifier.*;
+import io.github.douira.glsl_transformer_physics.ast.node.type.qualifier.InterpolationQualifier.InterpolationType;
+import io.github.douira.glsl_transformer_physics.ast.node.type.qualifier.PrecisionQualifier.PrecisionLevel;
+import io.github.douira.glsl_transformer_physics.ast.node.type.qualifier.StorageQualifier.StorageType;
+import io.github.douira.glsl_transformer_physics.ast.node.type.specifier.*;
+import io.github.douira.glsl_transformer_physics.ast.node.type.specifier.BuiltinFixedTypeSpecifier.BuiltinType;
+import io.github.douira.glsl_transformer_physics.ast.node.type.struct.*;
+import io.github.douira.glsl_transformer_physics.ast.print.OutputOptions;
+import io.github.douira.glsl_transformer_physics.ast.query.Root;
+import io.github.douira.glsl_transformer_physics.util.Type;
+
+/**
+ * The AST serializer turns an AST into a compact binary representation and
+ * back. Reading a serialized tree is much faster than parsing the
+ * corresponding code since neither the lexer, the parser nor the AST builder
+ * are involved. The nodes are constructed directly and registered with the
+ * root they are read into, which means its indexes are populated in the
+ * process.
+ * 
+ * Each node is written as a tag that identifies its type, followed by its
+ * source lines and its children in constructor order. Numbers are written as
+ * variable-length integers and all strings are stored once in a table at the
+ * start of the data and then referenced by index. Literal values are stored
+ * in their native representation and not as text.
+ * 
+ * Serialized data is only readable by the same version of this library since
+ * node tags and enum constants are stored by their ordinal. Data written by an
+ * incompatible version is rejected when the format version doesn't match.
+ * Reading data that is malformed or corrupt always fails with an
+ * {@link IllegalArgumentException}.
+ * Other information that isn't part of the syntax tree itself, like templates
+ * that nodes are marked with, is not stored.
+ */
+public class ASTSerializer {
+  private static final int MAGIC = 0x47544153;
+  private static final int FORMAT_VERSION = 1;
+
+  /**
+   * The node types that can be serialized. The ordinal of each tag plus one is
+   * written to identify the type of a node. Zero represents {@code null}. New
+   * tags must be added at the end and require the format version to be
+   * incremented.
+   */
+  private enum NodeTag {
+    IDENTIFIER(Identifier.class),
+    ITERATION_CONDITION_INITIALIZER(IterationConditionInitializer.class),
+    TRANSLATION_UNIT(TranslationUnit.class),
+    VERSION_STATEMENT(VersionStatement.class),
+
+    DECLARATION_MEMBER(DeclarationMember.class),
+    FUNCTION_DECLARATION(FunctionDeclaration.class),
+    FUNCTION_PARAMETER(FunctionParameter.class),
+    INTERFACE_BLOCK_DECLARATION(InterfaceBlockDeclaration.class),
+    PRECISION_DECLARATION(PrecisionDeclaration.class),
+    TYPE_AND_INIT_DECLARATION(TypeAndInitDeclaration.class),
+    VARIABLE_DECLARATION(VariableDeclaration.class),
+
+    CONDITION_EXPRESSION(ConditionExpression.class),
+    LITERAL_EXPRESSION(LiteralExpression.class),
+    REFERENCE_EXPRESSION(ReferenceExpression.class),
+    SEQUENCE_EXPRESSION(SequenceExpression.class),
+
+    ADDITION_ASSIGNMENT_EXPRESSION(AdditionAssignmentExpression.class),
+    ADDITION_EXPRESSION(AdditionExpression.class),
+    ARRAY_ACCESS_EXPRESSION(ArrayAccessExpression.class),
+    ASSIGNMENT_EXPRESSION(AssignmentExpression.class),
+    BITWISE_AND_ASSIGNMENT_EXPRESSION(BitwiseAndAssignmentExpression.class),
+    BITWISE_AND_EXPRESSION(BitwiseAndExpression.class),
+    BITWISE_OR_ASSIGNMENT_EXPRESSION(BitwiseOrAssignmentExpression.class),
+    BITWISE_OR_EXPRESSION(BitwiseOrExpression.class),
+    BITWISE_XOR_ASSIGNMENT_EXPRESSION(BitwiseXorAssignmentExpression.class),
+    BITWISE_XOR_EXPRESSION(BitwiseXorExpression.class),
+    BOOLEAN_AND_EXPRESSION(BooleanAndExpression.class),
+    BOOLEAN_OR_EXPRESSION(BooleanOrExpression.class),
+    BOOLEAN_XOR_EXPRESSION(BooleanXorExpression.class),
+    DIVISION_ASSIGNMENT_EXPRESSION(DivisionAssignmentExpression.class),
+    DIVISION_EXPRESSION(DivisionExpression.class),
+    EQUALITY_EXPRESSION(EqualityExpression.class),
+    GREATER_THAN_EQUAL_EXPRESSION(GreaterThanEqualExpression.class),
+    GREATER_THAN_EXPRESSION(GreaterThanExpression.class),
+    INEQUALITY_EXPRESSION(InequalityExpression.class),
+    LEFT_SHIFT_ASSIGNMENT_EXPRESSION(LeftShiftAssignmentExpression.class),
+    LEFT_SHIFT_EXPRESSION(LeftShiftExpression.class),
+    LESS_THAN_EQUAL_EXPRESSION(LessThanEqualExpression.class),
+    LESS_THAN_EXPRESSION(LessThanExpression.class),
+    MODULO_ASSIGNMENT_EXPRESSION(ModuloAssignmentExpression.class),
+    MODULO_EXPRESSION(ModuloExpression.class),
+    MULTIPLICATION_ASSIGNMENT_EXPRESSION(MultiplicationAssignmentExpression.class),
+    MULTIPLICATION_EXPRESSION(MultiplicationExpression.class),
+    RIGHT_SHIFT_ASSIGNMENT_EXPRESSION(RightShiftAssignmentExpression.class),
+    RIGHT_SHIFT_EXPRESSION(RightShiftExpression.class),
+    SUBTRACTION_ASSIGNMENT_EXPRESSION(SubtractionAssignmentExpression.class),
+    SUBTRACTION_EXPRESSION(SubtractionExpression.class),
+
+    BITWISE_NOT_EXPRESSION(BitwiseNotExpression.class),
+    BOOLEAN_NOT_EXPRESSION(BooleanNotExpression.class),
+    DECREMENT_POSTFIX_EXPRESSION(DecrementPostfixExpression.class),
+    DECREMENT_PREFIX_EXPRESSION(DecrementPrefixExpression.class),
+    FUNCTION_CALL_EXPRESSION(FunctionCallExpression.class),
+    GROUPING_EXPRESSION(GroupingExpression.class),
+    IDENTITY_EXPRESSION(IdentityExpression.class),
+    INCREMENT_POSTFIX_EXPRESSION(IncrementPostfixExpression.class),
+    INCREMENT_PREFIX_EXPRESSION(IncrementPrefixExpression.class),
+    LENGTH_ACCESS_EXPRESSION(LengthAccessExpression.class),
+    MEMBER_ACCESS_EXPRESSION(MemberAccessExpression.class),
+    NEGATION_EXPRESSION(NegationExpression.class),
+
+    DECLARATION_EXTERNAL_DECLARATION(DeclarationExternalDeclaration.class),
+    EMPTY_DECLARATION(EmptyDeclaration.class),
+    EXTENSION_STATEMENT(ExtensionStatement.class),
+    FUNCTION_DEFINITION(FunctionDefinition.class),
+    LAYOUT_DEFAULTS(LayoutDefaults.class),
+    PRAGMA_STATEMENT(PragmaStatement.class),
+
+    COMPOUND_STATEMENT(CompoundStatement.class),
+    EMPTY_STATEMENT(EmptyStatement.class),
+    DO_WHILE_LOOP_STATEMENT(DoWhileLoopStatement.class),
+    FOR_LOOP_STATEMENT(ForLoopStatement.class),
+    WHILE_LOOP_STATEMENT(WhileLoopStatement.class),
+    SELECTION_STATEMENT(SelectionStatement.class),
+    SWITCH_STATEMENT(SwitchStatement.class),
+    BREAK_STATEMENT(BreakStatement.class),
+    CASE_STATEMENT(CaseStatement.class),
+    CONTINUE_STATEMENT(ContinueStatement.class),
+    DECLARATION_STATEMENT(DeclarationStatement.class),
+    DEFAULT_STATEMENT(DefaultStatement.class),
+    DEMOTE_STATEMENT(DemoteStatement.class),
+    DISCARD_STATEMENT(DiscardStatement.class),
+    EXPRESSION_STATEMENT(ExpressionStatement.class),
+    RETURN_STATEMENT(ReturnStatement.class),
+
+    FULLY_SPECIFIED_TYPE(FullySpecifiedType.class),
+    EXPRESSION_INITIALIZER(ExpressionInitializer.class),
+    NESTED_INITIALIZER(NestedInitializer.class),
+    INTERPOLATION_QUALIFIER(InterpolationQualifier.class),
+    INVARIANT_QUALIFIER(InvariantQualifier.class),
+    LAYOUT_QUALIFIER(LayoutQualifier.class),
+    NAMED_LAYOUT_QUALIFIER_PART(NamedLayoutQualifierPart.class),
+    PRECISE_QUALIFIER(PreciseQualifier.class),
+    PRECISION_QUALIFIER(PrecisionQualifier.class),
+    SHARED_LAYOUT_QUALIFIER_PART(SharedLayoutQualifierPart.class),
+    STORAGE_QUALIFIER(StorageQualifier.class),
+    TYPE_QUALIFIER(TypeQualifier.class),
+    ARRAY_SPECIFIER(ArraySpecifier.class),
+    BUILTIN_FIXED_TYPE_SPECIFIER(BuiltinFixedTypeSpecifier.class),
+    BUILTIN_NUMERIC_TYPE_SPECIFIER(BuiltinNumericTypeSpecifier.class),
+    FUNCTION_PROTOTYPE(FunctionPrototype.class),
+    TYPE_REFERENCE(TypeReference.class),
+    STRUCT_BODY(StructBody.class),
+    STRUCT_DECLARATOR(StructDeclarator.class),
+    STRUCT_MEMBER(StructMember.class),
+    STRUCT_SPECIFIER(StructSpecifier.class);
+
+    private static final NodeTag[] values = values();
+    private static final Map<Class<?>, NodeTag> byClass = new HashMap<>();
+
+    static {
+      for (var tag : values) {
+        byClass.put(tag.nodeClass, tag);
+      }
+    }
+
+    private final Class<? extends ASTNode> nodeClass;
+
+    private NodeTag(Class<? extends ASTNode> nodeClass) {
+      this.nodeClass = nodeClass;
+    }
+  }
+
+  private static final Type[] types = Type.values();
+  private static final IntegerFormat[] integerFormats = IntegerFormat.values();
+  private static final Version[] versions = Version.values();
+  private static final Profile[] profiles = Profile.values();
+  private static final ExtensionBehavior[] extensionBehaviors = ExtensionBehavior.values();
+  private static final LayoutMode[] layoutModes = LayoutMode.values();
+  private static final PragmaType[] pragmaTypes = PragmaType.values();
+  private static final PragmaState[] pragmaStates = PragmaState.values();
+  private static final FunctionReferenceType[] functionReferenceTypes = FunctionReferenceType.values();
+  private static final InterpolationType[] interpolationTypes = InterpolationType.values();
+  private static final PrecisionLevel[] precisionLevels = PrecisionLevel.values();
+  private static final StorageType[] storageTypes = StorageType.values();
+  private static final BuiltinType[] builtinTypes = BuiltinType.values();
+
+  /**
+   * Serializes the given node and its subtree.
+   * 
+   * @param node The node to serialize
+   * @return The serialized data
+   */
+  public static byte[] serialize(ASTNode node) {
+    var writer = new Writer();
+    writer.writeNode(node);
+    return writer.finish();
+  }
+
+  /**
+   * Reads a serialized tree into a new root.
+   * 
+   * @param data The serialized data
+   * @return The root node of the read tree
+   */
+  public static ASTNode deserialize(byte[] data) {
+    return Root.indexNodes(() -> read(data));
+  }
+
+  /**
+   * Reads a serialized tree into the given root.
+   * 
+   * @param rootInstance The root to register the nodes with
+   * @param data         The serialized data
+   * @return The root node of the read tree
+   */
+  public static ASTNode deserialize(Root rootInstance, byte[] data) {
+    return Root.indexNodes(rootInstance, () -> read(data));
+  }
+
+  /**
+   * Reads a serialized tree into the root of the given tree member. The read
+   * tree can then be inserted into the tree of the given node.
+   * 
+   * @param parentTreeMember The tree member to get the root from
+   * @param data             The serialized data
+   * @return The root node of the read tree
+   */
+  public static ASTNode deserializeSubtree(ASTNode parentTreeMember, byte[] data) {
+    return Root.indexNodes(parentTreeMember, () -> read(data));
+  }
+
+  /**
+   * Reads a serialized tree of the given type into a new root.
+   * 
+   * @param <T>      The type of the read node
+   * @param data     The serialized data
+   * @param nodeType The class of the read node
+   * @return The root node of the read tree
+   */
+  public static <T extends ASTNode> T deserialize(byte[] data, Class<T> nodeType) {
+    return Root.indexNodes(() -> nodeType.cast(read(data)));
+  }
+
+  /**
+   * Reads a serialized translation unit into a new root.
+   * 
+   * @param data The serialized data
+   * @return The read translation unit
+   */
+  public static TranslationUnit deserializeTranslationUnit(byte[] data) {
+    return deserialize(data, TranslationUnit.class);
+  }
+
+  private static ASTNode read(byte[] data) {
+    try {
+      var reader = new Reader(data, BuildContext.get());
+      var node = reader.readNode();
+      if (reader.position != data.length) {
+        throw new IllegalArgumentException("The serialized AST has trailing data.");
+      }
+      return node;
+    } catch (IllegalArgumentException e) {
+      throw e;
+    } catch (RuntimeException e) {
+      // corrupt data can make the node constructors fail in many ways
+      throw new IllegalArgumentException("The serialized AST is malformed.", e);
+    }
+  }
+
+  private static class Writer {
+    private byte[] buffer = new byte[256];
+    private int size = 0;
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    private void ensureCapacity(int additional) {
+      if (size + additional > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+      }
+    }
+
+    void writeVarInt(int value) {
+      ensureCapacity(5);
+      while ((value & ~0x7F) != 0) {
+        buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[size++] = (byte) value;
+    }
+
+    void writeVarLong(long value) {
+      ensureCapacity(10);
+      while ((value & ~0x7FL) != 0) {
+        buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[size++] = (byte) value;
+    }
+
+    void writeSignedVarLong(long value) {
+      writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void writeLongBits(long value) {
+      ensureCapacity(8);
+      for (int i = 0; i < 8; i++) {
+        buffer[size++] = (byte) (value >>> (i * 8));
+      }
+    }
+
+    void writeBoolean(boolean value) {
+      ensureCapacity(1);
+      buffer[size++] = (byte) (value ? 1 : 0);
+    }
+
+    void writeEnum(Enum<?> value) {
+      writeVarInt(value == null ? 0 : value.ordinal() + 1);
+    }
+
+    void writeString(String value) {
+      if (value == null) {
+        writeVarInt(0);
+        return;
+      }
+      var index = stringIndexes.get(value);
+      if (index == null) {
+        index = strings.size();
+        strings.add(value);
+        stringIndexes.put(value, index);
+      }
+      writeVarInt(index + 1);
+    }
+
+    void writeNodes(List<? extends ASTNode> nodes) {
+      if (nodes == null) {
+        writeVarInt(0);
+        return;
+      }
+      writeVarInt(nodes.size() + 1);
+      for (var node : nodes) {
+        writeNode(node);
+      }
+    }
+
+    void writeNode(ASTNode node) {
+      if (node == null) {
+        writeVarInt(0);
+        return;
+      }
+      var tag = NodeTag.byClass.get(node.getClass());
+      if (tag == null) {
+        throw new IllegalArgumentException(
+            "The node type " + node.getClass().getName() + " can't be serialized.");
+      }
+      writeVarInt(tag.ordinal() + 1);
+      var sourceLines = node.getSourceLines();
+      writeVarInt(sourceLines.a);
+      writeVarInt(sourceLines.b - sourceLines.a);
+      writeContents(tag, node);
+    }
+
+    private void writeContents(NodeTag tag, ASTNode node) {
+      switch (tag) {
+        case IDENTIFIER:
+          writeString(((Identifier) node).getName());
+          break;
+        case ITERATION_CONDITION_INITIALIZER: {
+          var n = (IterationConditionInitializer) node;
+          writeNode(n.getType());
+          writeNode(n.getName());
+          writeNode(n.getInitializer());
+          break;
+        }
+        case TRANSLATION_UNIT: {
+          var n = (TranslationUnit) node;
+          writeNode(n.getVersionStatement());
+          writeNodes(n.getChildren());
+          writeBoolean(n.outputOptions.isPrintInfo());
+          writeString(n.outputOptions.getHeaderSuffix());
+          break;
+        }
+        case VERSION_STATEMENT: {
+          var n = (VersionStatement) node;
+          writeEnum(n.version);
+          writeEnum(n.profile);
+          break;
+        }
+        case DECLARATION_MEMBER: {
+          var n = (DeclarationMember) node;
+          writeNode(n.getName());
+          writeNode(n.getArraySpecifier());
+          writeNode(n.getInitializer());
+          break;
+        }
+        case FUNCTION_DECLARATION:
+          writeNode(((FunctionDeclaration) node).getFunctionPrototype());
+          break;
+        case FUNCTION_PARAMETER: {
+          var n = (FunctionParameter) node;
+          writeNode(n.getType());
+          writeNode(n.getName());
+          writeNode(n.getArraySpecifier());
+          break;
+        }
+        case INTERFACE_BLOCK_DECLARATION: {
+          var n = (InterfaceBlockDeclaration) node;
+          writeNode(n.getTypeQualifier());
+          writeNode(n.getBlockName());
+          writeNode(n.getStructBody());
+          writeNode(n.getVariableName());
+          writeNode(n.getArraySpecifier());
+          break;
+        }
+        case PRECISION_DECLARATION: {
+          var n = (PrecisionDeclaration) node;
+          writeNode(n.getPrecisionQualifier());
+          writeNode(n.getTypeSpecifier());
+          break;
+        }
+        case TYPE_AND_INIT_DECLARATION: {
+          var n = (TypeAndInitDeclaration) node;
+          writeNode(n.getType());
+          writeNodes(n.getMembers());
+          break;
+        }
+        case VARIABLE_DECLARATION: {
+          var n = (VariableDeclaration) node;
+          writeNode(n.getTypeQualifier());
+          writeNodes(n.getNames());
+          break;
+        }
+        case CONDITION_EXPRESSION: {
+          var n = (ConditionExpression) node;
+          writeNode(n.getCondition());
+          writeNode(n.getTrueExpression());
+          writeNode(n.getFalseExpression());
+          break;
+        }
+        case LITERAL_EXPRESSION: {
+          var n = (LiteralExpression) node;
+          writeEnum(n.getType());
+          switch (n.getNumberType()) {
+            case BOOLEAN:
+              writeBoolean(n.getBoolean());
+              break;
+            case SIGNED_INTEGER:
+            case UNSIGNED_INTEGER:
+              writeSignedVarLong(n.getInteger());
+              writeEnum(n.getIntegerFormat());
+              break;
+            case FLOATING_POINT:
+              writeLongBits(Double.doubleToRawLongBits(n.getFloating()));
+              break;
+          }
+          break;
+        }
+        case REFERENCE_EXPRESSION:
+          writeNode(((ReferenceExpression) node).getIdentifier());
+          break;
+        case SEQUENCE_EXPRESSION:
+          writeNodes(((SequenceExpression) node).getExpressions());
+          break;
+        case ADDITION_ASSIGNMENT_EXPRESSION:
+        case ADDITION_EXPRESSION:
+        case ARRAY_ACCESS_EXPRESSION:
+        case ASSIGNMENT_EXPRESSION:
+        case BITWISE_AND_ASSIGNMENT_EXPRESSION:
+        case BITWISE_AND_EXPRESSION:
+        case BITWISE_OR_ASSIGNMENT_EXPRESSION:
+        case BITWISE_OR_EXPRESSION:
+        case BITWISE_XOR_ASSIGNMENT_EXPRESSION:
+        case BITWISE_XOR_EXPRESSION:
+        case BOOLEAN_AND_EXPRESSION:
+        case BOOLEAN_OR_EXPRESSION:
+        case BOOLEAN_XOR_EXPRESSION:
+        case DIVISION_ASSIGNMENT_EXPRESSION:
+        case DIVISION_EXPRESSION:
+        case EQUALITY_EXPRESSION:
+        case GREATER_THAN_EQUAL_EXPRESSION:
+        case GREATER_THAN_EXPRESSION:
+        case INEQUALITY_EXPRESSION:
+        case LEFT_SHIFT_ASSIGNMENT_EXPRESSION:
+        case LEFT_SHIFT_EXPRESSION:
+        case LESS_THAN_EQUAL_EXPRESSION:
+        case LESS_THAN_EXPRESSION:
+        case MODULO_ASSIGNMENT_EXPRESSION:
+        case MODULO_EXPRESSION:
+        case MULTIPLICATION_ASSIGNMENT_EXPRESSION:
+        case MULTIPLICATION_EXPRESSION:
+        case RIGHT_SHIFT_ASSIGNMENT_EXPRESSION:
+        case RIGHT_SHIFT_EXPRESSION:
+        case SUBTRACTION_ASSIGNMENT_EXPRESSION:
+        case SUBTRACTION_EXPRESSION: {
+          var n = (BinaryExpression) node;
+          writeNode(n.getLeft());
+          writeNode(n.getRight());
+          break;
+        }
+        case BITWISE_NOT_EXPRESSION:
+        case BOOLEAN_NOT_EXPRESSION:
+        case DECREMENT_POSTFIX_EXPRESSION:
+        case DECREMENT_PREFIX_EXPRESSION:
+        case GROUPING_EXPRESSION:
+        case IDENTITY_EXPRESSION:
+        case INCREMENT_POSTFIX_EXPRESSION:
+        case INCREMENT_PREFIX_EXPRESSION:
+        case LENGTH_ACCESS_EXPRESSION:
+        case NEGATION_EXPRESSION:
+          writeNode(((UnaryExpression) node).getOperand());
+          break;
+        case MEMBER_ACCESS_EXPRESSION: {
+          var n = (MemberAccessExpression) node;
+          writeNode(n.getOperand());
+          writeNode(n.getMember());
+          break;
+        }
+        case FUNCTION_CALL_EXPRESSION: {
+          var n = (FunctionCallExpression) node;
+          writeEnum(n.getReferenceType());
+          writeNode(n.getReference());
+          writeNodes(n.getParameters());
+          break;
+        }
+        case DECLARATION_EXTERNAL_DECLARATION:
+          writeNode(((DeclarationExternalDeclaration) node).getDeclaration());
+          break;
+        case EXTENSION_STATEMENT: {
+          var n = (ExtensionStatement) node;
+          writeString(n.name);
+          writeEnum(n.behavior);
+          break;
+        }
+        case FUNCTION_DEFINITION: {
+          var n = (FunctionDefinition) node;
+          writeNode(n.getFunctionPrototype());
+          writeNode(n.getBody());
+          break;
+        }
+        case LAYOUT_DEFAULTS: {
+          var n = (LayoutDefaults) node;
+          writeNode(n.getQualifier());
+          writeEnum(n.mode);
+          break;
+        }
+        case PRAGMA_STATEMENT: {
+          var n = (PragmaStatement) node;
+          writeBoolean(n.stdGL);
+          writeEnum(n.type);
+          writeString(n.customName);
+          writeEnum(n.state);
+          break;
+        }
+        case COMPOUND_STATEMENT:
+          writeNodes(((CompoundStatement) node).getStatements());
+          break;
+        case DO_WHILE_LOOP_STATEMENT: {
+          var n = (DoWhileLoopStatement) node;
+          writeNode(n.getStatement());
+          writeNode(n.getCondition());
+          break;
+        }
+        case FOR_LOOP_STATEMENT: {
+          var n = (ForLoopStatement) node;
+          writeNode(n.getInitExpression());
+          writeNode(n.getInitDeclaration());
+          writeNode(n.getCondition());
+          writeNode(n.getIterationConditionInitializer());
+          writeNode(n.getIncrementer());
+          writeNode(n.getStatement());
+          break;
+        }
+        case WHILE_LOOP_STATEMENT: {
+          var n = (WhileLoopStatement) node;
+          writeNode(n.getCondition());
+          writeNode(n.getIterationConditionInitializer());
+          writeNode(n.getStatement());
+          break;
+        }
+        case SELECTION_STATEMENT: {
+          var n = (SelectionStatement) node;
+          writeNodes(n.getConditions());
+          writeNodes(n.getStatements());
+          break;
+        }
+        case SWITCH_STATEMENT: {
+          var n = (SwitchStatement) node;
+          writeNode(n.getExpression());
+          writeNode(n.getStatement());
+          break;
+        }
+        case CASE_STATEMENT:
+          writeNode(((CaseStatement) node).getExpression());
+          break;
+        case DECLARATION_STATEMENT:
+          writeNode(((DeclarationStatement) node).getDeclaration());
+          break;
+        case EXPRESSION_STATEMENT:
+          writeNode(((ExpressionStatement) node).getExpression());
+          break;
+        case RETURN_STATEMENT:
+          writeNode(((ReturnStatement) node).getExpression());
+          break;
+        case FULLY_SPECIFIED_TYPE: {
+          var n = (FullySpecifiedType) node;
+          writeNode(n.getTypeQualifier());
+          writeNode(n.getTypeSpecifier());
+          break;
+        }
+        case EXPRESSION_INITIALIZER:
+          writeNode(((ExpressionInitializer) node).getExpression());
+          break;
+        case NESTED_INITIALIZER:
+          writeNodes(((NestedInitializer) node).getInitializers());
+          break;
+        case INTERPOLATION_QUALIFIER:
+          writeEnum(((InterpolationQualifier) node).interpolationType);
+          break;
+        case LAYOUT_QUALIFIER:
+          writeNodes(((LayoutQualifier) node).getParts());
+          break;
+        case NAMED_LAYOUT_QUALIFIER_PART: {
+          var n = (NamedLayoutQualifierPart) node;
+          writeNode(n.getName());
+          writeNode(n.getExpression());
+          break;
+        }
+        case PRECISION_QUALIFIER:
+          writeEnum(((PrecisionQualifier) node).precisionLevel);
+          break;
+        case STORAGE_QUALIFIER: {
+          var n = (StorageQualifier) node;
+          writeNodes(n.getTypeNames());
+          writeEnum(n.storageType);
+          break;
+        }
+        case TYPE_QUALIFIER:
+          writeNodes(((TypeQualifier) node).getParts());
+          break;
+        case ARRAY_SPECIFIER:
+          writeNodes(((ArraySpecifier) node).getDimensions());
+          break;
+        case BUILTIN_FIXED_TYPE_SPECIFIER: {
+          var n = (BuiltinFixedTypeSpecifier) node;
+          writeEnum(n.type);
+          writeNode(n.getArraySpecifier());
+          break;
+        }
+        case BUILTIN_NUMERIC_TYPE_SPECIFIER: {
+          var n = (BuiltinNumericTypeSpecifier) node;
+          writeEnum(n.type);
+          writeNode(n.getArraySpecifier());
+          break;
+        }
+        case FUNCTION_PROTOTYPE: {
+          var n = (FunctionPrototype) node;
+          writeNode(n.getReturnType());
+          writeNode(n.getName());
+          writeNodes(n.getParameters());
+          break;
+        }
+        case TYPE_REFERENCE: {
+          var n = (TypeReference) node;
+          writeNode(n.getReference());
+          writeNode(n.getArraySpecifier());
+          break;
+        }
+        case STRUCT_BODY:
+          writeNodes(((StructBody) node).getMembers());
+          break;
+        case STRUCT_DECLARATOR: {
+          var n = (StructDeclarator) node;
+          writeNode(n.getName());
+          writeNode(n.getArraySpecifier());
+          break;
+        }
+        case STRUCT_MEMBER: {
+          var n = (StructMember) node;
+          writeNode(n.getType());
+          writeNodes(n.getDeclarators());
+          break;
+        }
+        case STRUCT_SPECIFIER: {
+          var n = (StructSpecifier) node;
+          writeNode(n.getName());
+          writeNode(n.getStructBody());
+          writeNode(n.getArraySpecifier());
+          break;
+        }
+        default:
+          // the remaining node types have no contents
+          break;
+      }
+    }
+
+    /**
+     * Prepends the header and the string table to the written nodes.
+     */
+    byte[] finish() {
+      var body = Arrays.copyOf(buffer, size);
+      buffer = new byte[64];
+      size = 0;
+      writeVarInt(MAGIC);
+      writeVarInt(FORMAT_VERSION);
+      writeVarInt(strings.size());
+      for (var string : strings) {
+        writeVarInt(string.length());
+        ensureCapacity(string.length() * 3);
+        for (int i = 0; i < string.length(); i++) {
+          writeVarInt(string.charAt(i));
+        }
+      }
+      var result = Arrays.copyOf(buffer, size + body.length);
+      System.arraycopy(body, 0, result, size, body.length);
+      return result;
+    }
+  }
+
+  private static class Reader {
+    private final byte[] data;
+    private final BuildContext context;
+    private int position = 0;
+    private final String[] strings;
+
+    Reader(byte[] data, BuildContext context) {
+      this.data = data;
+      this.context = context;
+      if (readVarInt() != MAGIC) {
+        throw new IllegalArgumentException("The data is not a serialized AST.");
+      }
+      var formatVersion = readVarInt();
+      if (formatVersion != FORMAT_VERSION) {
+        throw new IllegalArgumentException(
+            "The serialized AST has the format version " + formatVersion
+                + " but only version " + FORMAT_VERSION + " is supported.");
+      }
+      strings = new String[readCount()];
+      for (int i = 0; i < strings.length; i++) {
+        var chars = new char[readCount()];
+        for (int j = 0; j < chars.length; j++) {
+          chars[j] = (char) readVarInt();
+        }
+        strings[i] = new String(chars).intern();
+      }
+    }
+
+    int readVarInt() {
+      int result = 0;
+      for (int shift = 0; shift < 35; shift += 7) {
+        var b = data[position++];
+        result |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return result;
+        }
+      }
+      throw new IllegalArgumentException("The serialized AST contains a malformed number.");
+    }
+
+    long readVarLong() {
+      long result = 0;
+      for (int shift = 0; shift < 70; shift += 7) {
+        var b = data[position++];
+        result |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return result;
+        }
+      }
+      throw new IllegalArgumentException("The serialized AST contains a malformed number.");
+    }
+
+    long readSignedVarLong() {
+      var value = readVarLong();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    long readLongBits() {
+      long result = 0;
+      for (int i = 0; i < 8; i++) {
+        result |= (data[position++] & 0xFFL) << (i * 8);
+      }
+      return result;
+    }
+
+    boolean readBoolean() {
+      return data[position++] != 0;
+    }
+
+    int readCount() {
+      var count = readVarInt();
+      if (count < 0 || count > data.length - position) {
+        throw new IllegalArgumentException("The serialized AST contains an invalid length.");
+      }
+      return count;
+    }
+
+    <E extends Enum<E>> E readEnum(E[] values) {
+      var index = readVarInt();
+      return index == 0 ? null : values[index - 1];
+    }
+
+    String readString() {
+      var index = readVarInt();
+      return index == 0 ? null : strings[index - 1];
+    }
+
+    @SuppressWarnings("unchecked")
+    <T extends ASTNode> T readNodeAs() {
+      return (T) readNode();
+    }
+
+    @SuppressWarnings("unchecked")
+    <T extends ASTNode> Stream<T> readNodes() {
+      var count = readVarInt();
+      if (count == 0) {
+        return null;
+      }
+      if (count < 0 || count - 1 > data.length - position) {
+        throw new IllegalArgumentException("The serialized AST contains an invalid length.");
+      }
+      var nodes = new ArrayList<T>(count - 1);
+      for (int i = 1; i < count; i++) {
+        nodes.add((T) readNode());
+      }
+      return nodes.stream();
+    }
+
+    ASTNode readNode() {
+      var index = readVarInt();
+      if (index == 0) {
+        return null;
+      }
+      var tag = NodeTag.values[index - 1];
+      var start = readVarInt();
+      var end = start + readVarInt();
+
+      // the children are read in the constructor arguments and are constructed
+      // with their own source lines before the node itself
+      context.startConstruction(new Interval(start, end));
+      try {
+        return readContents(tag);
+      } finally {
+        context.endConstruction();
+      }
+    }
+
+    private ASTNode readContents(NodeTag tag) {
+      switch (tag) {
+        case IDENTIFIER:
+          return new Identifier(readString());
+        case ITERATION_CONDITION_INITIALIZER:
+          return new IterationConditionInitializer(readNodeAs(), readNodeAs(), readNodeAs());
+        case TRANSLATION_UNIT: {
+          VersionStatement versionStatement = readNodeAs();
+          Stream<ExternalDeclaration> children = readNodes();
+          var outputOptions = new OutputOptions(readBoolean(), readString());
+          return new TranslationUnit(versionStatement, children, outputOptions);
+        }
+        case VERSION_STATEMENT:
+          return new VersionStatement(readEnum(versions), readEnum(profiles));
+        case DECLARATION_MEMBER:
+          return new DeclarationMember(readNodeAs(), (ArraySpecifier) readNode(), (Initializer) readNode());
+        case FUNCTION_DECLARATION:
+          return new FunctionDeclaration(readNodeAs());
+        case FUNCTION_PARAMETER:
+          return new FunctionParameter(readNodeAs(), readNodeAs(), (ArraySpecifier) readNode());
+        case INTERFACE_BLOCK_DECLARATION:
+          return new InterfaceBlockDeclaration(
+              readNodeAs(), readNodeAs(), readNodeAs(), readNodeAs(), (ArraySpecifier) readNode());
+        case PRECISION_DECLARATION:
+          return new PrecisionDeclaration(readNodeAs(), readNodeAs());
+        case TYPE_AND_INIT_DECLARATION:
+          return new TypeAndInitDeclaration(readNodeAs(), readNodes());
+        case VARIABLE_DECLARATION:
+          return new VariableDeclaration(readNodeAs(), readNodes());
+        case CONDITION_EXPRESSION:
+          return new ConditionExpression(readNodeAs(), readNodeAs(), readNodeAs());
+        case LITERAL_EXPRESSION:
+          return readLiteral();
+        case REFERENCE_EXPRESSION:
+          return new ReferenceExpression(readNodeAs());
+        case SEQUENCE_EXPRESSION:
+          return new SequenceExpression(readNodes());
+        case ADDITION_ASSIGNMENT_EXPRESSION:
+          return new AdditionAssignmentExpression(readNodeAs(), readNodeAs());
+        case ADDITION_EXPRESSION:
+          return new AdditionExpression(readNodeAs(), readNodeAs());
+        case ARRAY_ACCESS_EXPRESSION:
+          return new ArrayAccessExpression(readNodeAs(), readNodeAs());
+        case ASSIGNMENT_EXPRESSION:
+          return new AssignmentExpression(readNodeAs(), readNodeAs());
+        case BITWISE_AND_ASSIGNMENT_EXPRESSION:
+          return new BitwiseAndAssignmentExpression(readNodeAs(), readNodeAs());
+        case BITWISE_AND_EXPRESSION:
+          return new BitwiseAndExpression(readNodeAs(), readNodeAs());
+        case BITWISE_OR_ASSIGNMENT_EXPRESSION:
+          return new BitwiseOrAssignmentExpression(readNodeAs(), readNodeAs());
+        case BITWISE_OR_EXPRESSION:
+          return new BitwiseOrExpression(readNodeAs(), readNodeAs());
+        case BITWISE_XOR_ASSIGNMENT_EXPRESSION:
+          return new BitwiseXorAssignmentExpression(readNodeAs(), readNodeAs());
+        case BITWISE_XOR_EXPRESSION:
+          return new BitwiseXorExpression(readNodeAs(), readNodeAs());
+        case BOOLEAN_AND_EXPRESSION:
+          return new BooleanAndExpression(readNodeAs(), readNodeAs());
+        case BOOLEAN_OR_EXPRESSION:
+          return new BooleanOrExpression(readNodeAs(), readNodeAs());
+        case BOOLEAN_XOR_EXPRESSION:
+          return new BooleanXorExpression(readNodeAs(), readNodeAs());
+        case DIVISION_ASSIGNMENT_EXPRESSION:
+          return new DivisionAssignmentExpression(readNodeAs(), readNodeAs());
+        case DIVISION_EXPRESSION:
+          return new DivisionExpression(readNodeAs(), readNodeAs());
+        case EQUALITY_EXPRESSION:
+          return new EqualityExpression(readNodeAs(), readNodeAs());
+        case GREATER_THAN_EQUAL_EXPRESSION:
+          return new GreaterThanEqualExpression(readNodeAs(), readNodeAs());
+        case GREATER_THAN_EXPRESSION:
+          return new GreaterThanExpression(readNodeAs(), readNodeAs());
+        case INEQUALITY_EXPRESSION:
+          return new InequalityExpression(readNodeAs(), readNodeAs());
+        case LEFT_SHIFT_ASSIGNMENT_EXPRESSION:
+          return new LeftShiftAssignmentExpression(readNodeAs(), readNodeAs());
+        case LEFT_SHIFT_EXPRESSION:
+          return new LeftShiftExpression(readNodeAs(), readNodeAs());
+        case LESS_THAN_EQUAL_EXPRESSION:
+          return new LessThanEqualExpression(readNodeAs(), readNodeAs());
+        case LESS_THAN_EXPRESSION:
+          return new LessThanExpression(readNodeAs(), readNodeAs());
+        case MODULO_ASSIGNMENT_EXPRESSION:
+          return new ModuloAssignmentExpression(readNodeAs(), readNodeAs());
+        case MODULO_EXPRESSION:
+          return new ModuloExpression(readNodeAs(), readNodeAs());
+        case MULTIPLICATION_ASSIGNMENT_EXPRESSION:
+          return new MultiplicationAssignmentExpression(readNodeAs(), readNodeAs());
+        case MULTIPLICATION_EXPRESSION:
+          return new MultiplicationExpression(readNodeAs(), readNodeAs());
+        case RIGHT_SHIFT_ASSIGNMENT_EXPRESSION:
+          return new RightShiftAssignmentExpression(readNodeAs(), readNodeAs());
+        case RIGHT_SHIFT_EXPRESSION:
+          return new RightShiftExpression(readNodeAs(), readNodeAs());
+        case SUBTRACTION_ASSIGNMENT_EXPRESSION:
+          return new SubtractionAssignmentExpression(readNodeAs(), readNodeAs());
+        case SUBTRACTION_EXPRESSION:
+          return new SubtractionExpression(readNodeAs(), readNodeAs());
+        case BITWISE_NOT_EXPRESSION:
+          return new BitwiseNotExpression(readNodeAs());
+        case BOOLEAN_NOT_EXPRESSION:
+          return new BooleanNotExpression(readNodeAs());
+        case DECREMENT_POSTFIX_EXPRESSION:
+          return new DecrementPostfixExpression(readNodeAs());
+        case DECREMENT_PREFIX_EXPRESSION:
+          return new DecrementPrefixExpression(readNodeAs());
+        case FUNCTION_CALL_EXPRESSION: {
+          var referenceType = readEnum(functionReferenceTypes);
+          if (referenceType == FunctionReferenceType.TYPE_SPECIFIER) {
+            TypeSpecifier functionSpecifier = readNodeAs();
+            return new FunctionCallExpression(functionSpecifier, readNodes());
+          }
+          Identifier functionName = readNodeAs();
+          return new FunctionCallExpression(functionName, readNodes());
+        }
+        case GROUPING_EXPRESSION:
+          return new GroupingExpression(readNodeAs());
+        case IDENTITY_EXPRESSION:
+          return new IdentityExpression(readNodeAs());
+        case INCREMENT_POSTFIX_EXPRESSION:
+          return new IncrementPostfixExpression(readNodeAs());
+        case INCREMENT_PREFIX_EXPRESSION:
+          return new IncrementPrefixExpression(readNodeAs());
+        case LENGTH_ACCESS_EXPRESSION:
+          return new LengthAccessExpression(readNodeAs());
+        case MEMBER_ACCESS_EXPRESSION:
+          return new MemberAccessExpression(readNodeAs(), readNodeAs());
+        case NEGATION_EXPRESSION:
+          return new NegationExpression(readNodeAs());
+        case DECLARATION_EXTERNAL_DECLARATION:
+          return new DeclarationExternalDeclaration(readNodeAs());
+        case EMPTY_DECLARATION:
+          return new EmptyDeclaration();
+        case EXTENSION_STATEMENT:
+          return new ExtensionStatement(readString(), readEnum(extensionBehaviors));
+        case FUNCTION_DEFINITION:
+          return new FunctionDefinition(readNodeAs(), (CompoundStatement) readNodeAs());
+        case LAYOUT_DEFAULTS:
+          return new LayoutDefaults(readNodeAs(), readEnum(layoutModes));
+        case PRAGMA_STATEMENT: {
+          var stdGL = readBoolean();
+          var type = readEnum(pragmaTypes);
+          var customName = readString();
+          var node = new PragmaStatement(stdGL, type, readEnum(pragmaStates));
+          node.customName = customName;
+          return node;
+        }
+        case COMPOUND_STATEMENT:
+          return new CompoundStatement(readNodes());
+        case EMPTY_STATEMENT:
+          return new EmptyStatement();
+        case DO_WHILE_LOOP_STATEMENT:
+          return new DoWhileLoopStatement(readNodeAs(), readNodeAs());
+        case FOR_LOOP_STATEMENT:
+          return new ForLoopStatement(
+              readNodeAs(), readNodeAs(), readNodeAs(), readNodeAs(), readNodeAs(), readNodeAs());
+        case WHILE_LOOP_STATEMENT: {
+          Expression condition = readNodeAs();
+          IterationConditionInitializer iterationConditionInitializer = readNodeAs();
+          Statement statement = readNodeAs();
+          return iterationConditionInitializer == null
+              ? new WhileLoopStatement(condition, statement)
+              : new WhileLoopStatement(iterationConditionInitializer, statement);
+        }
+        case SELECTION_STATEMENT:
+          return new SelectionStatement(readNodes(), readNodes());
+        case SWITCH_STATEMENT:
+          return new SwitchStatement(readNodeAs(), readNodeAs());
+        case BREAK_STATEMENT:
+          return new BreakStatement();
+        case CASE_STATEMENT:
+          return new CaseStatement(readNodeAs());
+        case CONTINUE_STATEMENT:
+          return new ContinueStatement();
+        case DECLARATION_STATEMENT:
+          return new DeclarationStatement(readNodeAs());
+        case DEFAULT_STATEMENT:
+          return new DefaultStatement();
+        case DEMOTE_STATEMENT:
+          return new DemoteStatement();
+        case DISCARD_STATEMENT:
+          return new DiscardStatement();
+        case EXPRESSION_STATEMENT:
+          return new ExpressionStatement(readNodeAs());
+        case RETURN_STATEMENT:
+          return new ReturnStatement(readNodeAs());
+        case FULLY_SPECIFIED_TYPE:
+          return new FullySpecifiedType(readNodeAs(), readNodeAs());
+        case EXPRESSION_INITIALIZER:
+          return new ExpressionInitializer(readNodeAs());
+        case NESTED_INITIALIZER:
+          return new NestedInitializer(readNodes());
+        case INTERPOLATION_QUALIFIER:
+          return new InterpolationQualifier(readEnum(interpolationTypes));
+        case INVARIANT_QUALIFIER:
+          return new InvariantQualifier();
+        case LAYOUT_QUALIFIER:
+          return new LayoutQualifier(readNodes());
+        case NAMED_LAYOUT_QUALIFIER_PART:
+          return new NamedLayoutQualifierPart(readNodeAs(), readNodeAs());
+        case PRECISE_QUALIFIER:
+          return new PreciseQualifier();
+        case PRECISION_QUALIFIER:
+          return new PrecisionQualifier(readEnum(precisionLevels));
+        case SHARED_LAYOUT_QUALIFIER_PART:
+          return new SharedLayoutQualifierPart();
+        case STORAGE_QUALIFIER: {
+          Stream<Identifier> typeNames = readNodes();
+          var storageType = readEnum(storageTypes);
+          if (typeNames == null) {
+            return new StorageQualifier(storageType);
+          }
+          var node = new StorageQualifier(typeNames);
+          node.storageType = storageType;
+          return node;
+        }
+        case TYPE_QUALIFIER:
+          return new TypeQualifier(readNodes());
+        case ARRAY_SPECIFIER:
+          return new ArraySpecifier(readNodes());
+        case BUILTIN_FIXED_TYPE_SPECIFIER:
+          return new BuiltinFixedTypeSpecifier(readEnum(builtinTypes), readNodeAs());
+        case BUILTIN_NUMERIC_TYPE_SPECIFIER:
+          return new BuiltinNumericTypeSpecifier(readEnum(types), readNodeAs());
+        case FUNCTION_PROTOTYPE:
+          return new FunctionPrototype(readNodeAs(), readNodeAs(), readNodes());
+        case TYPE_REFERENCE:
+          return new TypeReference(readNodeAs(), (ArraySpecifier) readNode());
+        case STRUCT_BODY:
+          return new StructBody(readNodes());
+        case STRUCT_DECLARATOR:
+          return new StructDeclarator(readNodeAs(), (ArraySpecifier) readNode());
+        case STRUCT_MEMBER:
+          return new StructMember(readNodeAs(), readNodes());
+        case STRUCT_SPECIFIER:
+          return new StructSpecifier(readNodeAs(), readNodeAs(), (ArraySpecifier) readNode());
+        default:
+          throw new IllegalStateException("Unhandled node tag " + tag);
+      }
+    }
+
+    private LiteralExpression readLiteral() {
+      var type = readEnum(types);
+      if (type == null) {
+        throw new IllegalArgumentException("The serialized AST contains a literal without a type.");
+      }
+      switch (type.getNumberType()) {
+        case BOOLEAN:
+          return new LiteralExpression(readBoolean());
+        case SIGNED_INTEGER:
+        case UNSIGNED_INTEGER: {
+          var value = readSignedVarLong();
+          var integerFormat = readEnum(integerFormats);
+          return integerFormat == null
+              ? new LiteralExpression(type, value)
+              : new LiteralExpression(type, value, integerFormat);
+        }
+        case FLOATING_POINT:
+          return new LiteralExpression(type, Double.longBitsToDouble(readLongBits()));
+        default:
+          throw new IllegalStateException("Unhandled number type " + type.getNumberType());
+      }
+    }
+  }
+}
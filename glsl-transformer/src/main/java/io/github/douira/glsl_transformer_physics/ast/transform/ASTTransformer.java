@@ -1,7 +1,13 @@
 package io.github.douira.glsl_transformer_physics.ast.transform;
 
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
 import io.github.douira.glsl_transformer_physics.ast.print.PrintType;
+import io.github.douira.glsl_transformer_physics.basic.ParserPool;
 import io.github.douira.glsl_transformer_physics.job_parameter.*;
+import io.github.douira.glsl_transformer_physics.util.*;
 
 /**
  * The ast transformer transforms some representation of an input and returns
@@ -13,6 +19,8 @@ public abstract class ASTTransformer<T extends JobParameters, V> extends ASTPars
   private T jobParameters;
   private static final PrintType defaultPrintType = PrintType.COMPACT;
   private PrintType printType = defaultPrintType;
+  private ParserPool<? extends ASTTransformer<T, V>> workerPool;
+  private Cache<OutputCacheKey, V> outputCache;
 
   @Override
   public T getJobParameters() {
@@ -31,4 +39,138 @@ public abstract class ASTTransformer<T extends JobParameters, V> extends ASTPars
   public PrintType getPrintType() {
     return printType;
   }
+
+  /**
+   * Sets the cache that whole-program outputs are stored in. If the same input
+   * is transformed again with the same print type and the same fixed job
+   * parameters, the cached output is returned without parsing, transforming or
+   * printing anything. Setting the cache to {@code null} disables output
+   * caching which is the default.
+   * 
+   * The output cache may only be used if the transformation is deterministic
+   * and its result only depends on the input and the fixed part of the job
+   * parameters. Non-fixed job parameters are not part of the cache key. The
+   * cache can be shared with other transformers that have the same
+   * transformation, for example the worker transformers of
+   * {@link #transformAll(Collection, Executor)}, if it's thread-safe.
+   * 
+   * @param outputCache The cache to store outputs in or {@code null}
+   */
+  public void setOutputCache(Cache<OutputCacheKey, V> outputCache) {
+    this.outputCache = outputCache;
+  }
+
+  /**
+   * Enables output caching with a new thread-safe cache of the given size.
+   * 
+   * @see #setOutputCache(Cache)
+   * @param maxSize The maximum number of cached outputs
+   */
+  public void enableOutputCache(int maxSize) {
+    setOutputCache(new ConcurrentLRUCache<>(maxSize));
+  }
+
+  public Cache<OutputCacheKey, V> getOutputCache() {
+    return outputCache;
+  }
+
+  /**
+   * Creates the output cache key for the input with the given content hash
+   * using the current print type and job parameters.
+   * 
+   * @param inputHash The content hash of the input
+   * @return The key of the output in the output cache
+   */
+  protected OutputCacheKey getOutputCacheKey(ContentHash inputHash) {
+    return new OutputCacheKey(inputHash, printType, jobParameters);
+  }
+
+  /**
+   * Sets the factory that creates the worker transformers used by
+   * {@link #transformAll(Collection, Executor)}. Transformers are stateful
+   * and can't be used by multiple threads at once, which is why each worker
+   * thread needs its own transformer. The created transformers should have the
+   * same transformation as this one. Their parse and build caches can be shared
+   * by setting caches created with
+   * {@link io.github.douira.glsl_transformer_physics.ast.data.TypedTreeCache#concurrent(int)}.
+   * 
+   * @param workerFactory The factory that creates worker transformers
+   */
+  public void setWorkerFactory(Supplier<? extends ASTTransformer<T, V>> workerFactory) {
+    workerPool = new ParserPool<>(workerFactory);
+  }
+
+  /**
+   * Sets the pool the worker transformers are taken from.
+   * 
+   * @see #setWorkerFactory(Supplier)
+   * @param workerPool The pool of worker transformers
+   */
+  public void setWorkerPool(ParserPool<? extends ASTTransformer<T, V>> workerPool) {
+    this.workerPool = workerPool;
+  }
+
+  /**
+   * Transforms all given items concurrently on the given executor. Each item is
+   * parsed, transformed and printed by a worker transformer that is borrowed
+   * from the worker pool. The workers use the job parameters and the print
+   * type of this transformer.
+   * 
+   * The results are returned in the order of the given items. If transforming
+   * an item fails with an exception or error, it's captured in its result and
+   * the other items are still transformed. Errors of the virtual machine, like
+   * running out of memory, and thread deaths are not captured and abort the
+   * whole batch.
+   * 
+   * @param items    The items to transform
+   * @param executor The executor to run the transformations on
+   * @return The results of the transformations in input order
+   */
+  public List<TransformationResult<V>> transformAll(Collection<? extends V> items, Executor executor) {
+    return transformAll(items, getJobParameters(), executor);
+  }
+
+  /**
+   * Transforms all given items concurrently with the given job parameters. The
+   * job parameters of this transformer are not changed.
+   * 
+   * @see #transformAll(Collection, Executor)
+   * @param items      The items to transform
+   * @param parameters The job parameters to use
+   * @param executor   The executor to run the transformations on
+   * @return The results of the transformations in input order
+   */
+  public List<TransformationResult<V>> transformAll(
+      Collection<? extends V> items, T parameters, Executor executor) {
+    if (workerPool == null) {
+      throw new IllegalStateException(
+          "A worker factory or worker pool has to be set before transforming items concurrently.");
+    }
+    var workerPrintType = getPrintType();
+    var pool = workerPool;
+    var futures = new ArrayList<CompletableFuture<TransformationResult<V>>>(items.size());
+    for (var item : items) {
+      futures.add(CompletableFuture.supplyAsync(
+          () -> pool.withParser(worker -> transformWithWorker(worker, item, parameters, workerPrintType)),
+          executor));
+    }
+    var results = new ArrayList<TransformationResult<V>>(futures.size());
+    for (var future : futures) {
+      results.add(future.join());
+    }
+    return results;
+  }
+
+  private static <T extends JobParameters, V> TransformationResult<V> transformWithWorker(
+      ASTTransformer<T, V> worker, V item, T parameters, PrintType printType) {
+    worker.setPrintType(printType);
+    try {
+      return TransformationResult.success(worker.transform(item, parameters));
+    } catch (VirtualMachineError | ThreadDeath e) {
+      // the JVM or the thread can't be relied on to transform the other items
+      throw e;
+    } catch (Throwable e) {
+      return TransformationResult.failure(e);
+    }
+  }
 }
@@ -0,0 +1,216 @@
+package io.github.douira.glsl_transformer_physics.ast.transform;
+
+import java.util.*;
+import java.util.function.*;
+
+import org.antlr.v4.runtime.misc.Interval;
+
+import io.github.douira.glsl_transformer_physics.ast.node.basic.ASTNode;
+import io.github.douira.glsl_transformer_physics.ast.query.Root;
+
+/**
+ * The build context holds the state that newly constructed AST nodes read from
+ * their surroundings: the root they should be registered with and the source
+ * lines they were built from. Each thread has its own build context which
+ * means separate trees can be built in parallel without any locking. Nodes
+ * constructed on one thread never see the build roots or source lines of
+ * another thread. It also holds options that change how AST builders on this
+ * thread construct nodes.
+ */
+public class BuildContext {
+  private static final ThreadLocal<BuildContext> CURRENT = ThreadLocal.withInitial(BuildContext::new);
+
+  private final Deque<Root> activeBuildRoots = new ArrayDeque<>();
+  private final Deque<Interval> sourceLineStack = new ArrayDeque<>();
+  private boolean lazyFunctionBodies = false;
+  private boolean lazyIndexes = false;
+  private boolean ordinalNodeIndex = false;
+  private int lineOffset = 0;
+
+  /**
+   * Returns the build context of the current thread.
+   * 
+   * @return The build context of the current thread
+   */
+  public static BuildContext get() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Returns the currently active build root or {@code null} if there is no
+   * active build session.
+   * 
+   * @return The currently active build root
+   */
+  public Root getActiveBuildRoot() {
+    return activeBuildRoots.peekFirst();
+  }
+
+  /**
+   * Runs the given function with the given root as the active build root.
+   * 
+   * @param <R>          The return type of the function
+   * @param instance     The root to make active
+   * @param rootConsumer The function to run
+   * @return The return value of the function
+   */
+  public <R> R withActiveBuildRoot(Root instance, Function<Root, R> rootConsumer) {
+    activeBuildRoots.push(instance);
+    try {
+      return rootConsumer.apply(instance);
+    } finally {
+      activeBuildRoots.pop();
+    }
+  }
+
+  /**
+   * Marks the start of the construction of a node that spans the given source
+   * lines.
+   * 
+   * @param sourceLines The source lines of the node being constructed
+   */
+  public void startConstruction(Interval sourceLines) {
+    sourceLineStack.push(sourceLines);
+  }
+
+  /**
+   * Marks the end of the construction of the node that was last started.
+   */
+  public void endConstruction() {
+    sourceLineStack.pop();
+  }
+
+  /**
+   * Returns the source lines of the node that is currently being constructed or
+   * {@link ASTNode#SYNTHETIC_SOURCE} if no node is being constructed from
+   * source.
+   * 
+   * @return The active source lines
+   */
+  public Interval getActiveSourceLines() {
+    var sourceLines = sourceLineStack.peekFirst();
+    return sourceLines == null ? ASTNode.SYNTHETIC_SOURCE : sourceLines;
+  }
+
+  /**
+   * Returns whether AST builders created in this context should defer building
+   * the bodies of function definitions until they are accessed.
+   * 
+   * @return {@code true} if function bodies are built lazily
+   */
+  public boolean isLazyFunctionBodies() {
+    return lazyFunctionBodies;
+  }
+
+  /**
+   * Runs the given supplier with lazy building of function bodies enabled or
+   * disabled. The previous setting is restored afterwards.
+   * 
+   * @param <R>                The return type of the supplier
+   * @param lazyFunctionBodies Whether function bodies should be built lazily
+   * @param session            The supplier to run
+   * @return The return value of the supplier
+   */
+  public <R> R withLazyFunctionBodies(boolean lazyFunctionBodies, Supplier<R> session) {
+    var previous = this.lazyFunctionBodies;
+    this.lazyFunctionBodies = lazyFunctionBodies;
+    try {
+      return session.get();
+    } finally {
+      this.lazyFunctionBodies = previous;
+    }
+  }
+
+  /**
+   * Returns whether the roots created for new trees in this context should only
+   * build their indexes when they are first queried.
+   * 
+   * @return {@code true} if new roots have lazy indexes
+   */
+  public boolean isLazyIndexes() {
+    return lazyIndexes;
+  }
+
+  /**
+   * Runs the given supplier with lazy indexes for new roots enabled or
+   * disabled. The previous setting is restored afterwards.
+   * 
+   * @param <R>         The return type of the supplier
+   * @param lazyIndexes Whether new roots should have lazy indexes
+   * @param session     The supplier to run
+   * @return The return value of the supplier
+   */
+  public <R> R withLazyIndexes(boolean lazyIndexes, Supplier<R> session) {
+    var previous = this.lazyIndexes;
+    this.lazyIndexes = lazyIndexes;
+    try {
+      return session.get();
+    } finally {
+      this.lazyIndexes = previous;
+    }
+  }
+
+  /**
+   * Returns whether the roots created for new trees in this context should use
+   * an {@link io.github.douira.glsl_transformer_physics.ast.query.index.OrdinalNodeIndex}
+   * instead of the default node index.
+   * 
+   * @return {@code true} if new roots use the ordinal node index
+   */
+  public boolean isOrdinalNodeIndex() {
+    return ordinalNodeIndex;
+  }
+
+  /**
+   * Runs the given supplier with the ordinal node index for new roots enabled
+   * or disabled. The previous setting is restored afterwards.
+   * 
+   * @param <R>              The return type of the supplier
+   * @param ordinalNodeIndex Whether new roots should use the ordinal node index
+   * @param session          The supplier to run
+   * @return The return value of the supplier
+   */
+  public <R> R withOrdinalNodeIndex(boolean ordinalNodeIndex, Supplier<R> session) {
+    var previous = this.ordinalNodeIndex;
+    this.ordinalNodeIndex = ordinalNodeIndex;
+    try {
+      return session.get();
+    } finally {
+      this.ordinalNodeIndex = previous;
+    }
+  }
+
+  /**
+   * Returns the number of lines that AST builders created in this context add
+   * to the source lines of the nodes they build.
+   * 
+   * @return The line offset
+   */
+  public int getLineOffset() {
+    return lineOffset;
+  }
+
+  /**
+   * Runs the given supplier with the given line offset. This is used when code
+   * is parsed that was taken from a larger input so that the built nodes get
+   * the source lines of their position in the larger input. The offset is only
+   * applied by AST builders, trees that are cloned from the build cache don't
+   * have source lines and don't get the offset. Code that needs the source
+   * lines has to be built without the build cache. The previous line offset is
+   * restored afterwards.
+   * 
+   * @param <R>        The return type of the supplier
+   * @param lineOffset The number of lines to add to the source lines
+   * @param session    The supplier to run
+   * @return The return value of the supplier
+   */
+  public <R> R withLineOffset(int lineOffset, Supplier<R> session) {
+    var previous = this.lineOffset;
+    this.lineOffset = lineOffset;
+    try {
+      return session.get();
+    } finally {
+      this.lineOffset = previous;
+    }
+  }
+}
@@ -1,13 +1,16 @@
 package io.github.douira.glsl_transformer_physics.ast.transform;
 
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.*;
 
 import org.antlr.v4.runtime.RecognitionException;
 
 import io.github.douira.glsl_transformer_physics.ast.node.TranslationUnit;
 import io.github.douira.glsl_transformer_physics.ast.print.ASTPrinter;
+import io.github.douira.glsl_transformer_physics.basic.ParserPool;
 import io.github.douira.glsl_transformer_physics.job_parameter.JobParameters;
+import io.github.douira.glsl_transformer_physics.util.*;
 
 /**
  * The grouped AST transformer parses multiple strings stored in an arbitrarily
@@ -17,6 +20,8 @@ public class GroupedASTTransformer<T extends JobParameters, K, M extends Map<K,
   private Consumer<N> transformation;
   private Supplier<N> tuMapSupplier;
   private Supplier<M> resultMapSupplier;
+  private Executor stageExecutor;
+  private ParserPool<? extends ASTParser> stageParsers;
 
   public GroupedASTTransformer(
       Supplier<N> tuMapSupplier,
@@ -66,8 +71,58 @@ public class GroupedASTTransformer<T extends JobParameters, K, M extends Map<K,
     this.resultMapSupplier = resultMapSupplier;
   }
 
+  /**
+   * Sets the executor that the items are parsed and printed on. Each item is
+   * parsed and printed as a separate task while the joint transformation is
+   * still run on the calling thread. Since the parser of this transformer can't
+   * be used by multiple threads, the items are parsed with parsers borrowed
+   * from the given pool. They have to be configured the same way as this
+   * transformer, otherwise the output may differ from parsing the items on the
+   * calling thread. Setting the executor to {@code null} disables concurrent
+   * parsing and printing.
+   * 
+   * @param stageExecutor The executor to parse and print on
+   * @param stageParsers  The pool of parsers to parse the items with
+   */
+  public void setStageExecutor(Executor stageExecutor, ParserPool<? extends ASTParser> stageParsers) {
+    this.stageExecutor = stageExecutor;
+    this.stageParsers = stageParsers;
+  }
+
   @Override
   public M transform(Map<K, String> items) throws RecognitionException {
+    var outputCache = getOutputCache();
+    if (outputCache == null) {
+      return transformUncached(items);
+    }
+
+    // the cached map is never handed out since the caller may modify it
+    var cachedItems = outputCache.cachedGet(
+        getOutputCacheKey(hashItems(items)),
+        () -> Collections.unmodifiableMap(new LinkedHashMap<>(transformUncached(items))));
+    var printedItems = resultMapSupplier.get();
+    printedItems.putAll(cachedItems);
+    return printedItems;
+  }
+
+  /**
+   * Hashes the keys and values of the given items in iteration order. The
+   * string representation of the keys is used to identify them.
+   */
+  private static <K> ContentHash hashItems(Map<K, String> items) {
+    var hasher = new ContentHasher().update(items.size());
+    for (var entry : items.entrySet()) {
+      hasher.update(String.valueOf(entry.getKey()));
+      hasher.update(entry.getValue());
+    }
+    return hasher.finish();
+  }
+
+  private M transformUncached(Map<K, String> items) {
+    if (stageExecutor != null) {
+      return transformConcurrently(items);
+    }
+
     // parse all items
     var translationUnits = tuMapSupplier.get();
     for (var entry : items.entrySet()) {
@@ -86,4 +141,57 @@ public class GroupedASTTransformer<T extends JobParameters, K, M extends Map<K,
     }
     return printedItems;
   }
+
+  private M transformConcurrently(Map<K, String> items) {
+    // parse all items on the executor
+    var parsedItems = new LinkedHashMap<K, CompletableFuture<TranslationUnit>>();
+    var pool = stageParsers;
+    for (var entry : items.entrySet()) {
+      var value = entry.getValue();
+      parsedItems.put(entry.getKey(), value == null
+          ? CompletableFuture.completedFuture(null)
+          : CompletableFuture.supplyAsync(
+              () -> pool.withParser(parser -> parser.parseTranslationUnit(value)),
+              stageExecutor));
+    }
+    var translationUnits = tuMapSupplier.get();
+    for (var entry : parsedItems.entrySet()) {
+      translationUnits.put(entry.getKey(), joinStage(entry.getValue()));
+    }
+
+    // transform them all at once on this thread
+    transformation.accept(translationUnits);
+
+    // print all items on the executor
+    var printType = getPrintType();
+    var printingItems = new LinkedHashMap<K, CompletableFuture<String>>();
+    for (var entry : translationUnits.entrySet()) {
+      var value = entry.getValue();
+      printingItems.put(entry.getKey(), value == null
+          ? CompletableFuture.completedFuture(null)
+          : CompletableFuture.supplyAsync(() -> ASTPrinter.print(printType, value), stageExecutor));
+    }
+    var printedItems = resultMapSupplier.get();
+    for (var entry : printingItems.entrySet()) {
+      printedItems.put(entry.getKey(), joinStage(entry.getValue()));
+    }
+    return printedItems;
+  }
+
+  private static <R> R joinStage(CompletableFuture<R> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      // rethrow the original exception so that parse errors look the same as
+      // when parsing on the calling thread
+      var cause = e.getCause();
+      if (cause instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (cause instanceof Error error) {
+        throw error;
+      }
+      throw e;
+    }
+  }
 }
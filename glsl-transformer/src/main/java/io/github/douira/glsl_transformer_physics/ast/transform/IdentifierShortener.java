@@ -0,0 +1,210 @@
+package io.github.douira.glsl_transformer_physics.ast.transform;
+
+import java.util.*;
+
+import io.github.douira.glsl_transformer_physics.GLSLLexer;
+import io.github.douira.glsl_transformer_physics.ast.node.Identifier;
+import io.github.douira.glsl_transformer_physics.ast.node.declaration.*;
+import io.github.douira.glsl_transformer_physics.ast.node.expression.ReferenceExpression;
+import io.github.douira.glsl_transformer_physics.ast.node.expression.unary.FunctionCallExpression;
+import io.github.douira.glsl_transformer_physics.ast.node.external_declaration.FunctionDefinition;
+import io.github.douira.glsl_transformer_physics.ast.node.statement.CompoundStatement;
+import io.github.douira.glsl_transformer_physics.ast.node.type.specifier.FunctionPrototype;
+import io.github.douira.glsl_transformer_physics.ast.query.Root;
+
+/**
+ * The identifier shortener renames identifiers that are only visible inside of
+ * the shader to short generated names. It's meant to be used together with the
+ * minified print type to further reduce the size of the printed code. Since it
+ * changes the tree, it's a separate step that has to be run explicitly before
+ * printing.
+ * 
+ * Only local variables, function parameters and functions that are defined in
+ * the tree are renamed. A name is left alone if any of its occurrences is
+ * something else, like a global declaration, a struct member or a member
+ * access, since those may be part of the shader's interface. The
+ * {@code main} function and names starting with {@code gl_} are never renamed.
+ * The generated names are never keywords or names of built-in functions.
+ * Names that occur more often get the shorter names. Names in the content of
+ * preprocessor directives are not part of the tree and are not taken into
+ * account, which means a shader that uses macros may need to be excluded from
+ * shortening.
+ */
+public class IdentifierShortener {
+  private static final Set<String> keywords = createKeywords();
+
+  /**
+   * The names of the built-in functions. A generated name may not be one of
+   * these since renaming a function to it could overload or redefine the
+   * built-in function. Built-in variables and constants all start with
+   * {@code gl_} which generated names never do.
+   */
+  private static final Set<String> builtinFunctions = new HashSet<>(Arrays.asList(
+      "radians", "degrees", "sin", "cos", "tan", "asin", "acos", "atan", "sinh", "cosh",
+      "tanh", "asinh", "acosh", "atanh", "pow", "exp", "log", "exp2", "log2", "sqrt",
+      "inversesqrt", "abs", "sign", "floor", "trunc", "round", "roundEven", "ceil", "fract",
+      "mod", "modf", "min", "max", "clamp", "mix", "step", "smoothstep", "isnan", "isinf",
+      "floatBitsToInt", "floatBitsToUint", "intBitsToFloat", "uintBitsToFloat", "fma", "frexp",
+      "ldexp", "packUnorm2x16", "packSnorm2x16", "packUnorm4x8", "packSnorm4x8",
+      "unpackUnorm2x16", "unpackSnorm2x16", "unpackUnorm4x8", "unpackSnorm4x8", "packHalf2x16",
+      "unpackHalf2x16", "packDouble2x32", "unpackDouble2x32", "length", "distance", "dot",
+      "cross", "normalize", "ftransform", "faceforward", "reflect", "refract",
+      "matrixCompMult", "outerProduct", "transpose", "determinant", "inverse", "lessThan",
+      "lessThanEqual", "greaterThan", "greaterThanEqual", "equal", "notEqual", "any", "all",
+      "not", "uaddCarry", "usubBorrow", "umulExtended", "imulExtended", "bitfieldExtract",
+      "bitfieldInsert", "bitfieldReverse", "bitCount", "findLSB", "findMSB", "textureSize",
+      "textureQueryLod", "textureQueryLevels", "textureSamples", "texture", "textureProj",
+      "textureLod", "textureOffset", "texelFetch", "texelFetchOffset", "textureProjOffset",
+      "textureLodOffset", "textureProjLod", "textureProjLodOffset", "textureGrad",
+      "textureGradOffset", "textureProjGrad", "textureProjGradOffset", "textureGather",
+      "textureGatherOffset", "textureGatherOffsets", "texture1D", "texture1DProj",
+      "texture1DLod", "texture1DProjLod", "texture2D", "texture2DProj", "texture2DLod",
+      "texture2DProjLod", "texture3D", "texture3DProj", "texture3DLod", "texture3DProjLod",
+      "textureCube", "textureCubeLod", "shadow1D", "shadow2D", "shadow1DProj", "shadow2DProj",
+      "shadow1DLod", "shadow2DLod", "shadow1DProjLod", "shadow2DProjLod", "texture2DRect",
+      "texture2DRectProj", "shadow2DRect", "shadow2DRectProj", "texture2DLodEXT",
+      "texture2DProjLodEXT", "textureCubeLodEXT", "texture2DGradEXT", "texture2DProjGradEXT",
+      "textureCubeGradEXT", "atomicCounterIncrement", "atomicCounterDecrement",
+      "atomicCounter", "atomicCounterAdd", "atomicCounterSubtract", "atomicCounterMin",
+      "atomicCounterMax", "atomicCounterAnd", "atomicCounterOr", "atomicCounterXor",
+      "atomicCounterExchange", "atomicCounterCompSwap", "atomicAdd", "atomicMin", "atomicMax",
+      "atomicAnd", "atomicOr", "atomicXor", "atomicExchange", "atomicCompSwap", "imageSize",
+      "imageSamples", "imageLoad", "imageStore", "imageAtomicAdd", "imageAtomicMin",
+      "imageAtomicMax", "imageAtomicAnd", "imageAtomicOr", "imageAtomicXor",
+      "imageAtomicExchange", "imageAtomicCompSwap", "EmitStreamVertex", "EndStreamPrimitive",
+      "EmitVertex", "EndPrimitive", "dFdx", "dFdy", "dFdxFine", "dFdyFine", "dFdxCoarse",
+      "dFdyCoarse", "fwidth", "fwidthFine", "fwidthCoarse", "interpolateAtCentroid",
+      "interpolateAtSample", "interpolateAtOffset", "noise1", "noise2", "noise3", "noise4",
+      "barrier", "memoryBarrier", "memoryBarrierAtomicCounter", "memoryBarrierBuffer",
+      "memoryBarrierShared", "memoryBarrierImage", "groupMemoryBarrier", "subpassLoad",
+      "anyInvocation", "allInvocations", "allInvocationsEqual"));
+  private static final String firstChars = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+  private static final String restChars = firstChars + "0123456789";
+
+  private IdentifierShortener() {
+  }
+
+  private static Set<String> createKeywords() {
+    var keywords = new HashSet<String>();
+    for (var type = 0; type <= GLSLLexer.VOCABULARY.getMaxTokenType(); type++) {
+      var literalName = GLSLLexer.VOCABULARY.getLiteralName(type);
+      if (literalName == null) {
+        continue;
+      }
+      var content = literalName.substring(1, literalName.length() - 1);
+      if (!content.isEmpty() && Character.isLetter(content.charAt(0))) {
+        keywords.add(content);
+      }
+    }
+    return keywords;
+  }
+
+  private static class NameUsage {
+    int occurrences;
+    boolean excluded;
+    boolean declared;
+    boolean functionReference;
+    boolean functionDefined;
+  }
+
+  /**
+   * Renames all identifiers in the given root that can safely be renamed to
+   * short generated names.
+   * 
+   * @param root The root to rename identifiers in
+   * @return A map from the old names to the new names of the renamed
+   *         identifiers
+   */
+  public static Map<String, String> shorten(Root root) {
+    root.buildIndexes();
+    root.buildPendingBodies();
+    var usages = new HashMap<String, NameUsage>();
+    for (var entry : root.identifierIndex.index.entrySet()) {
+      var usage = new NameUsage();
+      for (var identifier : entry.getValue()) {
+        classify(identifier, usage);
+        usage.occurrences++;
+      }
+      usages.put(entry.getKey(), usage);
+    }
+
+    var candidates = new ArrayList<String>();
+    for (var entry : usages.entrySet()) {
+      var name = entry.getKey();
+      var usage = entry.getValue();
+      if (!usage.excluded && usage.declared
+          && (!usage.functionReference || usage.functionDefined)
+          && !name.equals("main") && !name.startsWith("gl_")) {
+        candidates.add(name);
+      }
+    }
+    candidates.sort(Comparator
+        .comparingInt((String name) -> usages.get(name).occurrences).reversed()
+        .thenComparing(Comparator.naturalOrder()));
+
+    var renames = new HashMap<String, String>();
+    var nameIndex = 0;
+    for (var oldName : candidates) {
+      String newName;
+      do {
+        newName = generateName(nameIndex++);
+      } while (keywords.contains(newName)
+          || builtinFunctions.contains(newName)
+          || usages.containsKey(newName));
+      if (newName.length() >= oldName.length()) {
+        // the remaining candidates would get names that are at least as long
+        nameIndex--;
+        continue;
+      }
+      renames.put(oldName, newName);
+    }
+
+    // new names never collide with existing names, so nothing is merged
+    for (var entry : renames.entrySet()) {
+      root.rename(entry.getKey(), entry.getValue());
+    }
+    return renames;
+  }
+
+  private static void classify(Identifier identifier, NameUsage usage) {
+    var parent = identifier.getParent();
+    if (parent instanceof FunctionPrototype) {
+      usage.declared = true;
+      usage.functionReference = true;
+      usage.functionDefined |= parent.getParent() instanceof FunctionDefinition;
+    } else if (parent instanceof FunctionCallExpression) {
+      usage.functionReference = true;
+    } else if (parent instanceof FunctionParameter) {
+      usage.declared = true;
+    } else if (parent instanceof DeclarationMember) {
+      if (parent.hasAncestor(CompoundStatement.class)) {
+        usage.declared = true;
+      } else {
+        usage.excluded = true;
+      }
+    } else if (!(parent instanceof ReferenceExpression)) {
+      usage.excluded = true;
+    }
+  }
+
+  private static String generateName(int index) {
+    if (index < firstChars.length()) {
+      return String.valueOf(firstChars.charAt(index));
+    }
+    index -= firstChars.length();
+    var builder = new StringBuilder();
+    var length = 2;
+    var count = firstChars.length() * restChars.length();
+    while (index >= count) {
+      index -= count;
+      count *= restChars.length();
+      length++;
+    }
+    for (var i = 1; i < length; i++) {
+      builder.append(restChars.charAt(index % restChars.length()));
+      index /= restChars.length();
+    }
+    builder.append(firstChars.charAt(index));
+    return builder.reverse().toString();
+  }
+}
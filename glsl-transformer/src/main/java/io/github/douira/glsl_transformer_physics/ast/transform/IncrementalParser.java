@@ -0,0 +1,182 @@
+package io.github.douira.glsl_transformer_physics.ast.transform;
+
+import java.util.*;
+
+import org.antlr.v4.runtime.RecognitionException;
+
+import io.github.douira.glsl_transformer_physics.ast.node.TranslationUnit;
+import io.github.douira.glsl_transformer_physics.ast.node.external_declaration.ExternalDeclaration;
+import io.github.douira.glsl_transformer_physics.basic.TopLevelSplitter;
+import io.github.douira.glsl_transformer_physics.basic.TopLevelSplitter.*;
+
+/**
+ * The incremental parser keeps the translation unit of the last parsed version
+ * of a piece of code and updates it when a new version is parsed. The code is
+ * split into its top level constructs with a {@link TopLevelSplitter} and
+ * compared with the previous version. Only the external declarations that
+ * changed are parsed again and spliced into the existing translation unit. The
+ * nodes of the removed declarations are unregistered from the root and the new
+ * ones are registered which keeps the indexes of the root up to date without
+ * rebuilding them.
+ * 
+ * This is useful for repeatedly parsing code that changes in small steps, like
+ * shaders that are edited while they are being reloaded. If the version
+ * statement changes, the structure of the code can't be matched up with the
+ * previous translation unit or the code contains an incomplete top level
+ * construct, the whole code is parsed again.
+ * 
+ * The returned translation unit is reused by the next call and must not be
+ * modified in between. If it is modified, {@link #reset()} needs to be called
+ * before parsing the next version. Declarations that didn't change keep the
+ * source lines of the version they were parsed in. Declarations that are
+ * parsed again are built without the parse and build caches and get the
+ * source lines of their position in the new version.
+ */
+public class IncrementalParser {
+  private final ASTParser parser;
+  private final TopLevelSplitter splitter = new TopLevelSplitter();
+  private TranslationUnit translationUnit;
+  private String versionText;
+  private List<String> declarationTexts;
+  private int lastParsedCount;
+
+  public IncrementalParser(ASTParser parser) {
+    this.parser = parser;
+  }
+
+  public IncrementalParser() {
+    this(new ASTParser());
+  }
+
+  public ASTParser getParser() {
+    return parser;
+  }
+
+  /**
+   * Returns the translation unit of the last parsed version.
+   * 
+   * @return The translation unit or {@code null} if nothing has been parsed yet
+   */
+  public TranslationUnit getTranslationUnit() {
+    return translationUnit;
+  }
+
+  /**
+   * Returns the number of external declarations that were parsed by the last
+   * call to {@link #parse(String)}. If the whole code was parsed, this is the
+   * number of external declarations in it.
+   * 
+   * @return The number of parsed external declarations
+   */
+  public int getLastParsedCount() {
+    return lastParsedCount;
+  }
+
+  /**
+   * Forgets the last parsed version. The next call to {@link #parse(String)}
+   * parses the whole code.
+   */
+  public void reset() {
+    translationUnit = null;
+    versionText = null;
+    declarationTexts = null;
+  }
+
+  /**
+   * Parses the given code and updates the translation unit of the previous
+   * version if possible. If a changed external declaration fails to parse, the
+   * previous translation unit is left as it was.
+   * 
+   * @param input The code to parse
+   * @return The translation unit of the given code
+   * @throws RecognitionException If the code can't be parsed
+   */
+  public TranslationUnit parse(String input) throws RecognitionException {
+    var chunks = splitter.split(input);
+    String newVersionText = null;
+    var newDeclarationChunks = new ArrayList<Chunk>(chunks.size());
+    var splittable = true;
+    for (var i = 0; i < chunks.size(); i++) {
+      var chunk = chunks.get(i);
+      if (!chunk.complete()) {
+        splittable = false;
+      }
+      if (chunk.type() == ChunkType.VERSION) {
+        if (i > 0) {
+          splittable = false;
+        }
+        newVersionText = chunk.text();
+      } else {
+        newDeclarationChunks.add(chunk);
+      }
+    }
+
+    if (!splittable
+        || translationUnit == null
+        || declarationTexts == null
+        || !Objects.equals(versionText, newVersionText)
+        || translationUnit.getChildren().size() != declarationTexts.size()) {
+      return parseFully(input, splittable ? newVersionText : null, splittable ? newDeclarationChunks : null);
+    }
+
+    var oldSize = declarationTexts.size();
+    var newSize = newDeclarationChunks.size();
+    var minSize = Math.min(oldSize, newSize);
+    var prefix = 0;
+    while (prefix < minSize
+        && declarationTexts.get(prefix).equals(newDeclarationChunks.get(prefix).text())) {
+      prefix++;
+    }
+    var suffix = 0;
+    while (suffix < minSize - prefix
+        && declarationTexts.get(oldSize - 1 - suffix).equals(newDeclarationChunks.get(newSize - 1 - suffix).text())) {
+      suffix++;
+    }
+
+    // parse the changed declarations before touching the translation unit
+    var added = new ArrayList<ExternalDeclaration>(newSize - prefix - suffix);
+    try {
+      for (var i = prefix; i < newSize - suffix; i++) {
+        added.add(parser.parseExternalDeclarationChunk(translationUnit, newDeclarationChunks.get(i)));
+      }
+    } catch (RuntimeException e) {
+      for (var node : added) {
+        node.unregisterSubtree();
+      }
+      throw e;
+    }
+
+    var children = translationUnit.getChildren();
+    for (var i = prefix; i < oldSize - suffix; i++) {
+      children.remove(prefix).unregisterSubtree();
+    }
+    children.addAll(prefix, added);
+
+    var newTexts = new ArrayList<String>(newSize);
+    newTexts.addAll(declarationTexts.subList(0, prefix));
+    for (var i = prefix; i < newSize - suffix; i++) {
+      newTexts.add(newDeclarationChunks.get(i).text());
+    }
+    newTexts.addAll(declarationTexts.subList(oldSize - suffix, oldSize));
+    declarationTexts = newTexts;
+    lastParsedCount = added.size();
+    return translationUnit;
+  }
+
+  private TranslationUnit parseFully(String input, String newVersionText, List<Chunk> newDeclarationChunks) {
+    reset();
+    var result = parser.parseTranslationUnit(input);
+    translationUnit = result;
+    lastParsedCount = result.getChildren().size();
+
+    // only reuse the result if the chunks match up with the parsed declarations
+    if (newDeclarationChunks != null && newDeclarationChunks.size() == lastParsedCount) {
+      versionText = newVersionText;
+      declarationTexts = new ArrayList<>(newDeclarationChunks.size());
+      for (var chunk : newDeclarationChunks) {
+        declarationTexts.add(chunk.text());
+      }
+    }
+    return result;
+  }
+}
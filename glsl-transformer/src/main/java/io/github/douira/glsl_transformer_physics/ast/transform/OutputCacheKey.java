@@ -0,0 +1,15 @@
+package io.github.douira.glsl_transformer_physics.ast.transform;
+
+import io.github.douira.glsl_transformer_physics.ast.print.PrintType;
+import io.github.douira.glsl_transformer_physics.job_parameter.JobParameters;
+import io.github.douira.glsl_transformer_physics.util.ContentHash;
+
+/**
+ * The key of an entry in the output cache of an {@link ASTTransformer}. The
+ * output of a transformation is determined by the content of the input, the
+ * print type and the fixed part of the job parameters. The job parameters are
+ * compared with their equals method which is required to only consider the
+ * fixed part.
+ */
+public record OutputCacheKey(ContentHash inputHash, PrintType printType, JobParameters jobParameters) {
+}
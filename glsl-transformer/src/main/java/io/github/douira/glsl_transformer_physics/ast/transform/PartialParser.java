@@ -0,0 +1,178 @@
+package io.github.douira.glsl_transformer_physics.ast.transform;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+import io.github.douira.glsl_transformer_physics.GLSLParser;
+import io.github.douira.glsl_transformer_physics.ast.node.*;
+import io.github.douira.glsl_transformer_physics.ast.node.external_declaration.ExternalDeclaration;
+import io.github.douira.glsl_transformer_physics.ast.query.Root;
+import io.github.douira.glsl_transformer_physics.basic.*;
+import io.github.douira.glsl_transformer_physics.basic.TopLevelSplitter.*;
+
+/**
+ * The partial parser parses a translation unit without giving up on the whole
+ * code when a part of it contains errors. The code is split into its top level
+ * constructs with a {@link TopLevelSplitter} and each external declaration is
+ * parsed on its own. Declarations that fail to parse are left out of the
+ * resulting translation unit and their errors are collected together with the
+ * chunk they occurred in. A broken helper function therefore doesn't prevent
+ * the rest of the shader from being transformed. Since each chunk is parsed
+ * separately, an error only makes the parser fall back to LL parsing for the
+ * chunk that contains it and not for the whole code.
+ * 
+ * The chunks can also be parsed in parallel with parsers from a
+ * {@link ParserPool}. The pool's parsers only create the parse trees and the
+ * nodes are built with the build options of this partial parser's parser. The
+ * parsed declarations are then moved into the root of the resulting
+ * translation unit on the calling thread.
+ * 
+ * The chunks are parsed and built without the parse and build caches so that
+ * the nodes get the source lines of their position in the whole code.
+ * 
+ * The parser used for parsing the chunks must throw parse errors, otherwise
+ * errors are not detected. The partial parser has a lexer and may only be used
+ * by one thread at a time.
+ */
+public class PartialParser {
+  /**
+   * An error that occurred while parsing a chunk. The chunk's text is parsed
+   * on its own which means that the line numbers in the exception are counted
+   * from the start of the chunk. The line offset of the chunk has to be added
+   * to get the line in the whole code.
+   * 
+   * @param chunk     The chunk that failed to parse
+   * @param exception The exception that was thrown while parsing the chunk
+   */
+  public static record ChunkError(Chunk chunk, RuntimeException exception) {
+  }
+
+  /**
+   * The result of parsing code partially.
+   * 
+   * @param translationUnit The translation unit containing all chunks that could
+   *                        be parsed
+   * @param errors          The errors of the chunks that couldn't be parsed in
+   *                        the order the chunks appear in the code
+   */
+  public static record Result(TranslationUnit translationUnit, List<ChunkError> errors) {
+    public boolean hasErrors() {
+      return !errors.isEmpty();
+    }
+  }
+
+  private final ASTParser parser;
+  private final TopLevelSplitter splitter = new TopLevelSplitter();
+
+  public PartialParser(ASTParser parser) {
+    this.parser = parser;
+  }
+
+  public PartialParser() {
+    this(new ASTParser());
+  }
+
+  public ASTParser getParser() {
+    return parser;
+  }
+
+  /**
+   * Parses the given code chunk by chunk on the calling thread.
+   * 
+   * @param input The code to parse
+   * @return The translation unit of the chunks that could be parsed and the
+   *         errors of the chunks that couldn't
+   */
+  public Result parse(String input) {
+    var chunks = splitter.split(input);
+    var errors = new ArrayList<ChunkError>();
+    var versionStatement = parseVersionStatement(chunks, errors);
+    var translationUnit = buildTranslationUnit(versionStatement, Stream.empty());
+    var children = translationUnit.getChildren();
+    for (var i = versionStatement == null ? 0 : 1; i < chunks.size(); i++) {
+      var chunk = chunks.get(i);
+      try {
+        children.add(parser.parseExternalDeclarationChunk(translationUnit, chunk));
+      } catch (RuntimeException e) {
+        errors.add(new ChunkError(chunk, e));
+      }
+    }
+    return new Result(translationUnit, errors);
+  }
+
+  /**
+   * Parses the given code by parsing its chunks in parallel on the given
+   * executor. Each task borrows a parser from the given pool. The version
+   * statement is parsed on the calling thread with this partial parser's
+   * parser.
+   * 
+   * @param input      The code to parse
+   * @param parserPool The pool of parsers to parse the chunks with
+   * @param executor   The executor to run the parsing tasks on
+   * @return The translation unit of the chunks that could be parsed and the
+   *         errors of the chunks that couldn't
+   */
+  public Result parse(String input, ParserPool<ASTParser> parserPool, Executor executor) {
+    var chunks = splitter.split(input);
+    var errors = new ArrayList<ChunkError>();
+    var versionStatement = parseVersionStatement(chunks, errors);
+    var firstDeclaration = versionStatement == null ? 0 : 1;
+
+    var futures = new ArrayList<CompletableFuture<ExternalDeclaration>>(chunks.size() - firstDeclaration);
+    for (var i = firstDeclaration; i < chunks.size(); i++) {
+      var chunk = chunks.get(i);
+      futures.add(CompletableFuture.supplyAsync(
+          () -> parser.buildChunk(null,
+              parserPool.withParser(
+                  chunkParser -> chunkParser.parseChunkTree(chunk.text(), GLSLParser::externalDeclaration)),
+              chunk.lineOffset(),
+              ASTBuilder::visitExternalDeclaration),
+          executor));
+    }
+
+    var declarations = new ArrayList<ExternalDeclaration>(futures.size());
+    for (var i = 0; i < futures.size(); i++) {
+      try {
+        declarations.add(futures.get(i).join());
+      } catch (CompletionException e) {
+        var cause = e.getCause();
+        if (!(cause instanceof RuntimeException runtimeException)) {
+          throw e;
+        }
+        errors.add(new ChunkError(chunks.get(firstDeclaration + i), runtimeException));
+      }
+    }
+
+    // adding the separately parsed declarations moves them into the new root
+    return new Result(buildTranslationUnit(versionStatement, declarations.stream()), errors);
+  }
+
+  /**
+   * Parses the version statement if the first chunk is one. If it fails to
+   * parse, the error is recorded and the chunk is removed so that it isn't
+   * parsed again as an external declaration. A version chunk that isn't the
+   * first chunk is parsed as an external declaration which fails and is
+   * reported like any other error.
+   */
+  private VersionStatement parseVersionStatement(List<Chunk> chunks, List<ChunkError> errors) {
+    if (chunks.isEmpty() || chunks.get(0).type() != ChunkType.VERSION) {
+      return null;
+    }
+    var chunk = chunks.get(0);
+    try {
+      return parser.parseVersionStatementChunk(chunk);
+    } catch (RuntimeException e) {
+      errors.add(new ChunkError(chunk, e));
+      chunks.remove(0);
+      return null;
+    }
+  }
+
+  private TranslationUnit buildTranslationUnit(
+      VersionStatement versionStatement, Stream<ExternalDeclaration> declarations) {
+    return parser.withBuildOptions(() -> Root.indexNodes(() -> versionStatement == null
+        ? new TranslationUnit(declarations)
+        : new TranslationUnit(versionStatement, declarations)));
+  }
+}
@@ -0,0 +1,161 @@
+package io.github.douira.glsl_transformer_physics.ast.transform;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.*;
+
+import io.github.douira.glsl_transformer_physics.*;
+import io.github.douira.glsl_transformer_physics.job_parameter.JobParameters;
+import io.github.douira.glsl_transformer_physics.util.*;
+
+/**
+ * An output cache for {@link ASTTransformer} that stores the outputs in a
+ * {@link DiskCache} so that they survive restarts. If a cached output is
+ * found, the input isn't parsed at all.
+ * 
+ * The key of a stored output is made from the content hash of the input, the
+ * print type, the fixed job parameters, the version of this library and a hash
+ * of the grammar. Outputs created by other versions of the library are
+ * therefore never returned and are eventually evicted. The job parameters are
+ * identified by their class name and the stable encoding written by
+ * {@link JobParameters#updateStableHash(ContentHasher)}. Outputs produced with
+ * job parameters that don't provide such an encoding are passed through
+ * without being stored, since their hash code may collide with other job
+ * parameters or change across restarts.
+ */
+public class PersistentOutputCache<V> implements Cache<OutputCacheKey, V>, Closeable {
+  /**
+   * Converts values to bytes and back so that they can be stored on disk.
+   */
+  public interface ValueCodec<V> {
+    byte[] encode(V value);
+
+    V decode(byte[] data);
+  }
+
+  public static final ValueCodec<String> STRING_CODEC = new ValueCodec<String>() {
+    @Override
+    public byte[] encode(String value) {
+      return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String decode(byte[] data) {
+      return new String(data, StandardCharsets.UTF_8);
+    }
+  };
+
+  private static class EnvironmentHashHolder {
+    private static final ContentHash ENVIRONMENT_HASH = new ContentHasher()
+        .update(getLibraryVersion())
+        .update(GLSLLexer._serializedATN)
+        .update(GLSLParser._serializedATN)
+        .finish();
+
+    private static String getLibraryVersion() {
+      var version = PersistentOutputCache.class.getPackage().getImplementationVersion();
+      return version == null ? "unknown" : version;
+    }
+  }
+
+  private final DiskCache diskCache;
+  private final ValueCodec<V> codec;
+
+  public PersistentOutputCache(DiskCache diskCache, ValueCodec<V> codec) {
+    this.diskCache = diskCache;
+    this.codec = codec;
+  }
+
+  /**
+   * Opens or creates a persistent cache of string outputs in the given
+   * directory.
+   * 
+   * @param directory The directory to store the outputs in
+   * @param maxBytes  The maximum total size of the stored outputs, at least 64
+   *                  KiB
+   * @return The persistent output cache
+   */
+  public static PersistentOutputCache<String> open(Path directory, long maxBytes) {
+    return new PersistentOutputCache<>(new DiskCache(directory, maxBytes), STRING_CODEC);
+  }
+
+  /**
+   * Returns the hash that identifies the library version and the grammar the
+   * stored outputs were created with.
+   * 
+   * @return The hash of the environment
+   */
+  public static ContentHash getEnvironmentHash() {
+    return EnvironmentHashHolder.ENVIRONMENT_HASH;
+  }
+
+  /**
+   * Returns the key the output is stored under on disk or {@code null} if the
+   * job parameters can't be encoded and the output shouldn't be stored.
+   */
+  private static ContentHash getDiskKey(OutputCacheKey key) {
+    var hasher = new ContentHasher()
+        .update(getEnvironmentHash())
+        .update(key.inputHash())
+        .update(String.valueOf(key.printType()));
+    var jobParameters = key.jobParameters();
+    if (jobParameters == null) {
+      hasher.update((String) null);
+    } else {
+      hasher.update(jobParameters.getClass().getName());
+      if (!jobParameters.updateStableHash(hasher)) {
+        return null;
+      }
+    }
+    return hasher.finish();
+  }
+
+  private V cachedGet(OutputCacheKey key, Supplier<V> supplier, Function<V, V> hydrator) {
+    var diskKey = getDiskKey(key);
+    if (diskKey == null) {
+      return supplier.get();
+    }
+    var data = diskCache.get(diskKey);
+    if (data != null) {
+      V value = null;
+      try {
+        value = codec.decode(data);
+      } catch (RuntimeException e) {
+        // undecodable data is treated like a miss and overwritten below
+      }
+      if (value != null) {
+        return hydrator == null ? value : hydrator.apply(value);
+      }
+    }
+    var value = supplier.get();
+    if (value != null) {
+      diskCache.put(diskKey, codec.encode(value));
+    }
+    return value;
+  }
+
+  @Override
+  public V cachedGet(OutputCacheKey key, Supplier<V> supplier) {
+    return cachedGet(key, supplier, null);
+  }
+
+  @Override
+  public V cachedGetHydrateHit(OutputCacheKey key, Supplier<V> supplier, Function<V, V> hydrator) {
+    return cachedGet(key, supplier, hydrator);
+  }
+
+  @Override
+  public void clear() {
+    diskCache.clear();
+  }
+
+  public DiskCache getDiskCache() {
+    return diskCache;
+  }
+
+  @Override
+  public void close() throws IOException {
+    diskCache.close();
+  }
+}
@@ -8,7 +8,7 @@ import io.github.douira.glsl_transformer_physics.ast.node.TranslationUnit;
 import io.github.douira.glsl_transformer_physics.ast.print.ASTPrinter;
 import io.github.douira.glsl_transformer_physics.ast.query.Root;
 import io.github.douira.glsl_transformer_physics.job_parameter.*;
-import io.github.douira.glsl_transformer_physics.util.TriConsumer;
+import io.github.douira.glsl_transformer_physics.util.*;
 
 /**
  * The AST transformer takes parses a string, turns it into an AST, transforms
@@ -65,6 +65,16 @@ public class SingleASTTransformer<T extends JobParameters> extends ASTTransforme
 
   @Override
   public String transform(String str) throws RecognitionException {
+    var outputCache = getOutputCache();
+    if (outputCache == null) {
+      return transformUncached(str);
+    }
+    return outputCache.cachedGet(
+        getOutputCacheKey(ContentHasher.hash(str)),
+        () -> transformUncached(str));
+  }
+
+  private String transformUncached(String str) {
     var translationUnit = parseTranslationUnit(str);
     transformation.accept(translationUnit);
     return ASTPrinter.print(getPrintType(), translationUnit);
@@ -0,0 +1,69 @@
+package io.github.douira.glsl_transformer_physics.ast.transform;
+
+/**
+ * The result of transforming a single item of a batch. Either the output or
+ * the error that was thrown while transforming the item is present. Failures
+ * are captured so that one broken item doesn't abort the whole batch. Errors of
+ * the virtual machine like an {@link OutOfMemoryError} or a
+ * {@link StackOverflowError} are not captured since the virtual machine may not
+ * be usable anymore after them.
+ */
+public class TransformationResult<V> {
+  private final V output;
+  private final Throwable error;
+
+  private TransformationResult(V output, Throwable error) {
+    this.output = output;
+    this.error = error;
+  }
+
+  public static <V> TransformationResult<V> success(V output) {
+    return new TransformationResult<>(output, null);
+  }
+
+  public static <V> TransformationResult<V> failure(Throwable error) {
+    return new TransformationResult<>(null, error);
+  }
+
+  public boolean isSuccess() {
+    return error == null;
+  }
+
+  /**
+   * Returns the output of the transformation or {@code null} if it failed.
+   * 
+   * @return The output
+   */
+  public V getOutput() {
+    return output;
+  }
+
+  /**
+   * Returns the error that was thrown during the transformation or
+   * {@code null} if it succeeded.
+   * 
+   * @return The error
+   */
+  public Throwable getError() {
+    return error;
+  }
+
+  /**
+   * Returns the output of the transformation or rethrows the error if it
+   * failed. Checked exceptions are wrapped in a {@link RuntimeException}.
+   * 
+   * @return The output
+   */
+  public V getOrThrow() {
+    if (error instanceof RuntimeException runtimeException) {
+      throw runtimeException;
+    }
+    if (error instanceof Error e) {
+      throw e;
+    }
+    if (error != null) {
+      throw new RuntimeException(error);
+    }
+    return output;
+  }
+}
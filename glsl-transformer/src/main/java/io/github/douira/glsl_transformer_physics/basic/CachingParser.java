@@ -41,6 +41,21 @@ public class CachingParser extends EnhancedParser {
     parseCache = new TypedTreeCache<>(size);
   }
 
+  /**
+   * Sets the cache that parse trees are stored in. A cache created with
+   * {@link TypedTreeCache#concurrent(int)} can be shared between the parsers of
+   * multiple threads.
+   * 
+   * @param parseCache The new parse cache
+   */
+  public void setParseCache(TypedTreeCache<ExtendedContext> parseCache) {
+    this.parseCache = parseCache;
+  }
+
+  public TypedTreeCache<ExtendedContext> getParseCache() {
+    return parseCache;
+  }
+
   @Override
   public TranslationUnitContext parse(String str) {
     return parse(str, TranslationUnitContext.class, GLSLParser::translationUnit);
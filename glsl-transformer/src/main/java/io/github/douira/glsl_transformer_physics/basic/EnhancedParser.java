@@ -1,15 +1,21 @@
 package io.github.douira.glsl_transformer_physics.basic;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.*;
 
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.dfa.DFA;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 
 import io.github.douira.glsl_transformer_physics.*;
 import io.github.douira.glsl_transformer_physics.GLSLParser.TranslationUnitContext;
 import io.github.douira.glsl_transformer_physics.cst.token_filter.TokenFilter;
 import io.github.douira.glsl_transformer_physics.tree.ExtendedContext;
+import io.github.douira.glsl_transformer_physics.util.*;
 
 /**
  * The enhanced parser does more than just parsing. It also does lexing,
@@ -28,7 +34,24 @@ public class EnhancedParser implements ParserInterface {
     }
   }
 
-  private static EnhancedParser INSTANCE;
+  private static final ThreadLocal<EnhancedParser> INSTANCE = ThreadLocal.withInitial(
+      () -> new CachingParser(true));
+
+  private static final String warmUpCorpusPath = "/io/github/douira/glsl_transformer_physics/warmup/";
+  private static final String[] warmUpCorpusFiles = { "vertex.glsl", "fragment.glsl", "compute.glsl" };
+
+  /**
+   * The number of states in the prediction DFAs of the parser and the lexer at
+   * the time the statistics were taken.
+   * 
+   * @param parserStates The number of states in all parser decision DFAs
+   * @param lexerStates  The number of states in all lexer mode DFAs
+   */
+  public static record DFAStatistics(int parserStates, int lexerStates) {
+    public int totalStates() {
+      return parserStates + lexerStates;
+    }
+  }
 
   // initialized with null since they need an argument
   private final GLSLLexer lexer = new GLSLLexer(null);
@@ -58,7 +81,18 @@ public class EnhancedParser implements ParserInterface {
      * The slow strategy that uses LL only. This is useful if it's known that there
      * will be errors and parsing with SLL can be omitted in the first place.
      */
-    LL_ONLY
+    LL_ONLY,
+
+    /**
+     * Like {@link #SLL_AND_LL_ON_ERROR} but the inputs for which SLL parsing
+     * failed are remembered by their length and string hash code. If such an
+     * input is parsed again, the SLL attempt that is known to fail is skipped and
+     * it's parsed in LL mode directly. This is useful if the same erroneous
+     * inputs are parsed repeatedly. Inputs are only hashed while there are
+     * remembered failed inputs. A hash collision only means that a valid input
+     * is parsed in the slower LL mode, the result is the same.
+     */
+    ADAPTIVE
   }
 
   private ParsingStrategy parsingStrategy = ParsingStrategy.SLL_AND_LL_ON_ERROR;
@@ -69,6 +103,17 @@ public class EnhancedParser implements ParserInterface {
    */
   public BiConsumer<ParseCancellationException, ParseCancellationException> internalErrorConsumer;
 
+  /**
+   * This consumer is called with the outcome and the index of the parsed rule
+   * each time an input is parsed with a strategy that can fall back to LL
+   * parsing. The rule index is -1 if it couldn't be determined.
+   */
+  public ObjIntConsumer<ParseStatistics.Outcome> parseOutcomeConsumer;
+
+  private ParseStatistics parseStatistics = new ParseStatistics();
+  private int failedInputCacheSize = 64;
+  private LRUCache<Long, Boolean> failedInputs;
+
   /**
    * The last parsed input stream. This property can be used together with the
    * parse methods since they don't give direct access to the internally created
@@ -90,6 +135,7 @@ public class EnhancedParser implements ParserInterface {
    */
   private FilterTokenSource tokenSource = new FilterTokenSource(lexer);
   private TokenFilter<?> parseTokenFilter;
+  private Cache<LexedTokens.Key, LexedTokens> tokenCache;
 
   /**
    * Creates a new parser and specifies if parse errors should be
@@ -122,14 +168,137 @@ public class EnhancedParser implements ParserInterface {
   }
 
   /**
-   * Gets the internal singleton instance of the parser. This should generally not
-   * be used by external library users.
+   * Gets the internal instance of the parser. Each thread gets its own instance
+   * since the parser, the lexer and the token stream are stateful. The ATN and
+   * the DFA of the generated parser and lexer are static and therefore shared
+   * between all instances. This should generally not be used by external library
+   * users.
    */
   public static EnhancedParser getInternalInstance() {
-    if (INSTANCE == null) {
-      INSTANCE = new CachingParser(true);
+    return INSTANCE.get();
+  }
+
+  /**
+   * Returns the bundled corpus of shaders that is used for warming up the
+   * prediction DFA. The shaders cover most of the grammar.
+   * 
+   * @return The code of the bundled shaders
+   */
+  public static List<String> getWarmUpCorpus() {
+    var corpus = new ArrayList<String>(warmUpCorpusFiles.length);
+    for (var file : warmUpCorpusFiles) {
+      try (var stream = EnhancedParser.class.getResourceAsStream(warmUpCorpusPath + file)) {
+        if (stream == null) {
+          throw new IllegalStateException("The warm-up corpus file " + file + " is missing.");
+        }
+        var output = new ByteArrayOutputStream();
+        var buffer = new byte[8192];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+          output.write(buffer, 0, read);
+        }
+        corpus.add(new String(output.toByteArray(), StandardCharsets.UTF_8));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return corpus;
+  }
+
+  /**
+   * Parses the bundled corpus of shaders to fill the prediction DFA of the
+   * parser and the lexer. The DFA is shared by all parser instances and is
+   * built on demand while parsing which makes the first parses after startup
+   * much slower than the following ones. Warming it up moves this cost to a
+   * point in time where it doesn't matter.
+   */
+  public static void warmUp() {
+    warmUp(getWarmUpCorpus());
+  }
+
+  /**
+   * Parses the given shaders to fill the prediction DFA of the parser and the
+   * lexer. Parse errors are ignored.
+   * 
+   * @see #warmUp()
+   * @param corpus The code of the shaders to parse
+   */
+  public static void warmUp(Collection<String> corpus) {
+    var warmUpParser = new EnhancedParser(false);
+    for (var code : corpus) {
+      try {
+        warmUpParser.parse(code);
+      } catch (RuntimeException e) {
+        // only the side effect on the DFA matters
+      }
     }
-    return INSTANCE;
+  }
+
+  /**
+   * Warms up the prediction DFA with the bundled corpus on a new daemon thread.
+   * Parsers can be used while this is running since the DFA is thread-safe.
+   * 
+   * @see #warmUp()
+   * @return A future that completes when warming up is done
+   */
+  public static CompletableFuture<Void> warmUpInBackground() {
+    var future = new CompletableFuture<Void>();
+    var thread = new Thread(() -> {
+      try {
+        warmUp();
+        future.complete(null);
+      } catch (Throwable e) {
+        future.completeExceptionally(e);
+      }
+    }, "glsl-transformer-warm-up");
+    thread.setDaemon(true);
+    thread.start();
+    return future;
+  }
+
+  /**
+   * Warms up the prediction DFA with the bundled corpus on the given executor.
+   * 
+   * @see #warmUp()
+   * @param executor The executor to run the warm-up on
+   * @return A future that completes when warming up is done
+   */
+  public static CompletableFuture<Void> warmUpInBackground(Executor executor) {
+    return CompletableFuture.runAsync(EnhancedParser::warmUp, executor);
+  }
+
+  private static int countStates(DFA[] decisionToDFA) {
+    var states = 0;
+    for (var dfa : decisionToDFA) {
+      synchronized (dfa.states) {
+        states += dfa.states.size();
+      }
+    }
+    return states;
+  }
+
+  /**
+   * Returns the current size of the prediction DFA of the parser and the lexer.
+   * This can be used to decide when to clear the DFA to bound its memory usage.
+   * 
+   * @return The statistics of the DFA
+   */
+  public static DFAStatistics getDFAStatistics() {
+    return new DFAStatistics(
+        countStates(GLSLParser._decisionToDFA),
+        countStates(GLSLLexer._decisionToDFA));
+  }
+
+  /**
+   * Clears the prediction DFA of the parser and the lexer to release the memory
+   * it uses. Parsing is slower until the DFA has been filled again, which can be
+   * done by warming it up again. This should not be called while other threads
+   * are parsing since they may continue to add states to the discarded DFA.
+   */
+  public static void clearDFA() {
+    var clearingParser = new EnhancedParser();
+    clearingParser.parser.getInterpreter().clearDFA();
+    clearingParser.lexer.getInterpreter().clearDFA();
   }
 
   /**
@@ -144,6 +313,13 @@ public class EnhancedParser implements ParserInterface {
     this.parsingStrategy = parsingStrategy;
   }
 
+  /**
+   * Sets the parsing strategy to {@link ParsingStrategy#ADAPTIVE}.
+   */
+  public void setAdaptive() {
+    setParsingStrategy(ParsingStrategy.ADAPTIVE);
+  }
+
   /**
    * Sets the parsing strategy to {@link ParsingStrategy#SLL_ONLY}. This is the
    * faster strategy.
@@ -160,6 +336,44 @@ public class EnhancedParser implements ParserInterface {
     setParsingStrategy(ParsingStrategy.LL_ONLY);
   }
 
+  public ParsingStrategy getParsingStrategy() {
+    return parsingStrategy;
+  }
+
+  /**
+   * Sets the statistics that the outcomes of parses with a strategy that can
+   * fall back to LL parsing are recorded in. Since the statistics are
+   * thread-safe, they can be shared between the parsers of multiple threads.
+   * 
+   * @param parseStatistics The statistics to record parse outcomes in
+   */
+  public void setParseStatistics(ParseStatistics parseStatistics) {
+    this.parseStatistics = Objects.requireNonNull(parseStatistics);
+  }
+
+  public ParseStatistics getParseStatistics() {
+    return parseStatistics;
+  }
+
+  /**
+   * Sets how many inputs that failed to parse in SLL mode are
+   * remembered by the {@link ParsingStrategy#ADAPTIVE} strategy. The least
+   * recently seen inputs are forgotten first.
+   * 
+   * @param failedInputCacheSize The number of failed inputs to remember
+   */
+  public void setFailedInputCacheSize(int failedInputCacheSize) {
+    this.failedInputCacheSize = failedInputCacheSize;
+    failedInputs = null;
+  }
+
+  /**
+   * Forgets which inputs failed to parse in SLL mode.
+   */
+  public void clearFailedInputs() {
+    failedInputs = null;
+  }
+
   /**
    * The returned parser (and lexer) may contain no token stream or a wrong token
    * stream. However, the parser should not be used for parsing manually anyway.
@@ -195,6 +409,38 @@ public class EnhancedParser implements ParserInterface {
     return parseTokenFilter;
   }
 
+  /**
+   * Sets the cache that lexed tokens are stored in. If a string with the same
+   * content is parsed again with the same parse token filter, the cached tokens
+   * are replayed to the parser instead of running the lexer and the token
+   * filter again. Setting the cache to {@code null} disables token caching
+   * which is the default.
+   * 
+   * The parse token filter must only depend on the tokens it's given since the
+   * tokens are cached after filtering. A thread-safe cache can be shared
+   * between the parsers of multiple threads.
+   * 
+   * @param tokenCache The cache to store lexed tokens in or {@code null}
+   */
+  public void setTokenCache(Cache<LexedTokens.Key, LexedTokens> tokenCache) {
+    this.tokenCache = tokenCache;
+  }
+
+  /**
+   * Enables token caching with a new cache of the given size that may only be
+   * used by this parser.
+   * 
+   * @see #setTokenCache(Cache)
+   * @param maxSize The maximum number of inputs to cache the tokens of
+   */
+  public void enableTokenCache(int maxSize) {
+    setTokenCache(new LRUCache<>(maxSize));
+  }
+
+  public Cache<LexedTokens.Key, LexedTokens> getTokenCache() {
+    return tokenCache;
+  }
+
   /**
    * Parses a string as a translation unit.
    * 
@@ -232,24 +478,29 @@ public class EnhancedParser implements ParserInterface {
       String str,
       ExtendedContext parent,
       Function<GLSLParser, RuleType> parseMethod) {
-    return parse(CharStreams.fromString(str), parent, parseMethod);
+    if (tokenCache == null) {
+      setupLexer(CharStreams.fromString(str));
+      return parse(tokenSource, str, parent, parseMethod);
+    }
+    var tokens = tokenCache.cachedGet(
+        new LexedTokens.Key(ContentHasher.hash(str), parseTokenFilter, throwParseErrors),
+        () -> lex(CharStreams.fromString(str)));
+    input = tokens.getInput();
+    return parse(tokens.createTokenSource(), str, parent, parseMethod);
   }
 
   /**
-   * Parses an int stream (which is similar to a string) using a parser method
-   * reference into a parse tree. This method exists so non-string streams can
-   * also be parsed.
+   * Lexes and filters the given input and stores the resulting tokens.
    * 
-   * @param <RuleType>  The type of the resulting parsed node
-   * @param stream      The int stream to parse
-   * @param parent      The parent to attach to the parsed node
-   * @param parseMethod The parser method reference to use for parsing
-   * @return The parsed string as a parse tree that has the given type
+   * @param stream The input to lex
+   * @return The lexed tokens
    */
-  private <RuleType extends ExtendedContext> RuleType parse(
-      IntStream stream,
-      ExtendedContext parent,
-      Function<GLSLParser, RuleType> parseMethod) {
+  public LexedTokens lex(CharStream stream) {
+    setupLexer(stream);
+    return LexedTokens.lex(stream, tokenSource);
+  }
+
+  private void setupLexer(CharStream stream) {
     if (parseTokenFilter != null) {
       parseTokenFilter.resetState();
     }
@@ -265,12 +516,41 @@ public class EnhancedParser implements ParserInterface {
       lexer.removeErrorListener(ThrowingErrorListener.INSTANCE);
     }
     lexer.reset();
-    tokenStream = new CommonTokenStream(tokenSource);
+  }
+
+  /**
+   * Parses the tokens from the given token source using a parser method
+   * reference into a parse tree.
+   * 
+   * @param <RuleType>  The type of the resulting parsed node
+   * @param source      The token source to read the tokens from
+   * @param str         The input string the tokens were lexed from
+   * @param parent      The parent to attach to the parsed node
+   * @param parseMethod The parser method reference to use for parsing
+   * @return The parse tree that has the given type
+   */
+  private <RuleType extends ExtendedContext> RuleType parse(
+      TokenSource source,
+      String str,
+      ExtendedContext parent,
+      Function<GLSLParser, RuleType> parseMethod) {
+    tokenStream = new CommonTokenStream(source);
     parser.setTokenStream(tokenStream);
     parser.reset();
 
     RuleType node;
-    if (parsingStrategy == ParsingStrategy.SLL_AND_LL_ON_ERROR) {
+    if (parsingStrategy == ParsingStrategy.ADAPTIVE && isKnownFailedInput(str)) {
+      // the SLL attempt is known to fail and would only be wasted time
+      setupLLParsing();
+      try {
+        node = parseMethod.apply(parser);
+        recordOutcome(node.getRuleIndex(), ParseStatistics.Outcome.SLL_SKIPPED);
+      } catch (ParseCancellationException LLException) {
+        recordOutcome(getRuleIndex(LLException), ParseStatistics.Outcome.SLL_SKIPPED);
+        throw LLException;
+      }
+    } else if (parsingStrategy == ParsingStrategy.SLL_AND_LL_ON_ERROR
+        || parsingStrategy == ParsingStrategy.ADAPTIVE) {
       // never throw SLL errors
       parser.removeErrorListener(ThrowingErrorListener.INSTANCE);
       parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
@@ -279,28 +559,32 @@ public class EnhancedParser implements ParserInterface {
       // try to parse with SLL mode
       try {
         node = parseMethod.apply(parser);
+        recordOutcome(node.getRuleIndex(), ParseStatistics.Outcome.SLL_SUCCESS);
       } catch (ParseCancellationException SLLException) {
         // if there was an error in the SLL strategy either there is an error in the
         // string which should (possibly) be reported or the grammar is too difficult
         // for the SLL strategy to handle and the LL strategy has to be used instead
         // NOTE: it seems like the GLSL grammar never requires the LL strategy
-        lexer.reset();
+        // the token stream keeps the tokens it has already read and continues
+        // reading where the SLL attempt stopped, the input is not lexed again
         parser.reset();
+        if (parsingStrategy == ParsingStrategy.ADAPTIVE) {
+          getFailedInputs().put(getFailedInputKey(str), Boolean.TRUE);
+        }
 
         // throw LL errors if enabled
-        if (throwParseErrors) {
-          parser.addErrorListener(ThrowingErrorListener.INSTANCE);
-        } else {
-          parser.removeErrorListener(ThrowingErrorListener.INSTANCE);
-        }
-        parser.setErrorHandler(new DefaultErrorStrategy());
-        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        setupLLParsing();
 
         ParseCancellationException possibleLLException = null;
+        var ruleIndex = getRuleIndex(SLLException);
         try {
           node = parseMethod.apply(parser);
+          recordOutcome(ruleIndex, parser.getNumberOfSyntaxErrors() > 0
+              ? ParseStatistics.Outcome.ERROR
+              : ParseStatistics.Outcome.LL_SUCCESS);
         } catch (ParseCancellationException LLException) {
           possibleLLException = LLException;
+          recordOutcome(ruleIndex, ParseStatistics.Outcome.ERROR);
           throw LLException;
         } finally {
           // notify the parse error consumer of both errors if they exist
@@ -324,4 +608,63 @@ public class EnhancedParser implements ParserInterface {
     node.setParent(parent);
     return node;
   }
+
+  private void setupLLParsing() {
+    if (throwParseErrors) {
+      parser.addErrorListener(ThrowingErrorListener.INSTANCE);
+    } else {
+      parser.removeErrorListener(ThrowingErrorListener.INSTANCE);
+    }
+    parser.setErrorHandler(new DefaultErrorStrategy());
+    parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+  }
+
+  private static long getFailedInputKey(String str) {
+    return ((long) str.length() << 32) | (str.hashCode() & 0xffffffffL);
+  }
+
+  private LRUCache<Long, Boolean> getFailedInputs() {
+    if (failedInputs == null) {
+      failedInputs = new LRUCache<>(failedInputCacheSize);
+    }
+    return failedInputs;
+  }
+
+  private boolean isKnownFailedInput(String str) {
+    // don't hash the input at all while no input has failed
+    if (failedInputs == null || failedInputs.isEmpty()) {
+      return false;
+    }
+    // get instead of containsKey to mark the entry as recently used
+    return failedInputs.get(getFailedInputKey(str)) != null;
+  }
+
+  private void recordOutcome(int ruleIndex, ParseStatistics.Outcome outcome) {
+    parseStatistics.record(ruleIndex, outcome);
+    if (parseOutcomeConsumer != null) {
+      parseOutcomeConsumer.accept(outcome, ruleIndex);
+    }
+  }
+
+  /**
+   * Finds the index of the rule the parse was started with by going up from the
+   * context the SLL attempt failed in. The start rule's context has no parent
+   * since the parent is only set after parsing.
+   */
+  private static int getRuleIndex(ParseCancellationException exception) {
+    var cause = exception.getCause();
+    return cause instanceof RecognitionException recognitionException
+        ? getRuleIndex(recognitionException.getCtx())
+        : -1;
+  }
+
+  private static int getRuleIndex(RuleContext context) {
+    if (context == null) {
+      return -1;
+    }
+    while (context.parent != null) {
+      context = context.parent;
+    }
+    return context.getRuleIndex();
+  }
 }
@@ -0,0 +1,181 @@
+package io.github.douira.glsl_transformer_physics.basic;
+
+import java.util.Arrays;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.misc.Pair;
+
+import io.github.douira.glsl_transformer_physics.cst.token_filter.TokenFilter;
+import io.github.douira.glsl_transformer_physics.util.ContentHash;
+
+/**
+ * Lexed tokens are the result of lexing an input stored in a compact form so
+ * that it can be cached and parsed again without running the lexer. Instead of
+ * keeping a token object for each token, the type, channel, start index, stop
+ * index, line and position in the line are stored in a single int array. The
+ * text of the tokens is read from the shared input stream when it's requested.
+ * 
+ * A token source that replays the tokens can be created as often as needed.
+ * The stored tokens are never modified which means they can be replayed by
+ * multiple threads at the same time.
+ */
+public final class LexedTokens {
+  /**
+   * The key lexed tokens are cached with. Since the token filter is compared by
+   * identity, a token filter that behaves differently after being reconfigured
+   * has to be replaced with a new instance to avoid reusing tokens that were
+   * filtered with the previous configuration.
+   * 
+   * @param inputHash        The content hash of the lexed input
+   * @param tokenFilter      The token filter that was applied to the tokens
+   * @param throwLexerErrors Whether lexer errors were thrown during lexing
+   */
+  public static record Key(ContentHash inputHash, TokenFilter<?> tokenFilter, boolean throwLexerErrors) {
+  }
+
+  private static final int FIELDS = 6;
+  private static final int TYPE = 0;
+  private static final int CHANNEL = 1;
+  private static final int START = 2;
+  private static final int STOP = 3;
+  private static final int LINE = 4;
+  private static final int POSITION = 5;
+
+  private final CharStream input;
+  private final int[] data;
+  private final int size;
+
+  private LexedTokens(CharStream input, int[] data, int size) {
+    this.input = input;
+    this.data = data;
+    this.size = size;
+  }
+
+  /**
+   * Reads all tokens from the given token source until and including the EOF
+   * token and stores them.
+   * 
+   * @param input  The input stream the token source reads from
+   * @param source The token source to read tokens from
+   * @return The lexed tokens
+   */
+  public static LexedTokens lex(CharStream input, TokenSource source) {
+    var data = new int[FIELDS * 256];
+    var size = 0;
+    while (true) {
+      var token = source.nextToken();
+      var offset = size * FIELDS;
+      if (offset + FIELDS > data.length) {
+        data = Arrays.copyOf(data, data.length * 2);
+      }
+      data[offset + TYPE] = token.getType();
+      data[offset + CHANNEL] = token.getChannel();
+      data[offset + START] = token.getStartIndex();
+      data[offset + STOP] = token.getStopIndex();
+      data[offset + LINE] = token.getLine();
+      data[offset + POSITION] = token.getCharPositionInLine();
+      size++;
+      if (token.getType() == Token.EOF) {
+        break;
+      }
+    }
+    return new LexedTokens(input, Arrays.copyOf(data, size * FIELDS), size);
+  }
+
+  public CharStream getInput() {
+    return input;
+  }
+
+  /**
+   * Returns the number of stored tokens including the EOF token.
+   * 
+   * @return The number of tokens
+   */
+  public int size() {
+    return size;
+  }
+
+  public int getType(int index) {
+    return data[index * FIELDS + TYPE];
+  }
+
+  public int getChannel(int index) {
+    return data[index * FIELDS + CHANNEL];
+  }
+
+  public int getStartIndex(int index) {
+    return data[index * FIELDS + START];
+  }
+
+  public int getStopIndex(int index) {
+    return data[index * FIELDS + STOP];
+  }
+
+  public int getLine(int index) {
+    return data[index * FIELDS + LINE];
+  }
+
+  public int getCharPositionInLine(int index) {
+    return data[index * FIELDS + POSITION];
+  }
+
+  /**
+   * Creates a new token source that returns the stored tokens in order. After
+   * the EOF token has been returned, it keeps returning EOF tokens.
+   * 
+   * @return A new token source for the stored tokens
+   */
+  public TokenSource createTokenSource() {
+    return new ReplayTokenSource();
+  }
+
+  private class ReplayTokenSource implements TokenSource {
+    private final Pair<TokenSource, CharStream> sourcePair = new Pair<>(this, input);
+    private int next = 0;
+
+    private int currentIndex() {
+      return Math.min(next, size - 1);
+    }
+
+    @Override
+    public Token nextToken() {
+      var index = currentIndex();
+      next++;
+      var token = new CommonToken(sourcePair,
+          getType(index), getChannel(index), getStartIndex(index), getStopIndex(index));
+      token.setLine(LexedTokens.this.getLine(index));
+      token.setCharPositionInLine(LexedTokens.this.getCharPositionInLine(index));
+      return token;
+    }
+
+    @Override
+    public int getLine() {
+      return LexedTokens.this.getLine(currentIndex());
+    }
+
+    @Override
+    public int getCharPositionInLine() {
+      return LexedTokens.this.getCharPositionInLine(currentIndex());
+    }
+
+    @Override
+    public CharStream getInputStream() {
+      return input;
+    }
+
+    @Override
+    public String getSourceName() {
+      return input.getSourceName();
+    }
+
+    @Override
+    public void setTokenFactory(TokenFactory<?> factory) {
+      // the replayed tokens are always common tokens
+    }
+
+    @Override
+    public TokenFactory<?> getTokenFactory() {
+      return CommonTokenFactory.DEFAULT;
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package io.github.douira.glsl_transformer_physics.basic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.github.douira.glsl_transformer_physics.GLSLParser;
+
+/**
+ * Parse statistics count how parsing went for each parser rule that was used
+ * as the starting rule of a parse. They show how often SLL parsing succeeded,
+ * how often the slower LL parsing had to be used and how often the input
+ * actually contained errors. This can be used to decide which parsing strategy
+ * fits the inputs that are being parsed. The counters are thread-safe and the
+ * statistics can be shared between multiple parsers.
+ */
+public class ParseStatistics {
+  /**
+   * The outcome of parsing an input with one of the strategies that can fall
+   * back to LL parsing.
+   */
+  public enum Outcome {
+    /**
+     * Parsing in SLL mode succeeded.
+     */
+    SLL_SUCCESS,
+
+    /**
+     * Parsing in SLL mode failed but parsing in LL mode succeeded. This means
+     * that the grammar actually needed the LL mode for the input.
+     */
+    LL_SUCCESS,
+
+    /**
+     * Parsing failed in both modes which means the input contains errors.
+     */
+    ERROR,
+
+    /**
+     * Parsing in SLL mode was skipped since the input is known to make it fail
+     * and the input was parsed in LL mode directly.
+     */
+    SLL_SKIPPED
+  }
+
+  private static final Outcome[] outcomes = Outcome.values();
+
+  // the first row is for parses where the rule is unknown
+  private final AtomicLongArray counts = new AtomicLongArray(
+      (GLSLParser.ruleNames.length + 1) * outcomes.length);
+
+  private static int getOffset(int ruleIndex, Outcome outcome) {
+    var row = ruleIndex >= 0 && ruleIndex < GLSLParser.ruleNames.length ? ruleIndex + 1 : 0;
+    return row * outcomes.length + outcome.ordinal();
+  }
+
+  /**
+   * Records a parse with the given outcome.
+   * 
+   * @param ruleIndex The index of the rule that was parsed or -1 if it's unknown
+   * @param outcome   The outcome of the parse
+   */
+  public void record(int ruleIndex, Outcome outcome) {
+    counts.incrementAndGet(getOffset(ruleIndex, outcome));
+  }
+
+  /**
+   * Returns how often parsing the given rule had the given outcome.
+   * 
+   * @param ruleIndex The index of the rule as in {@link GLSLParser#ruleNames}
+   * @param outcome   The outcome to count
+   * @return The number of parses with the outcome
+   */
+  public long getCount(int ruleIndex, Outcome outcome) {
+    return counts.get(getOffset(ruleIndex, outcome));
+  }
+
+  /**
+   * Returns how often parsing any rule had the given outcome.
+   * 
+   * @param outcome The outcome to count
+   * @return The number of parses with the outcome
+   */
+  public long getTotal(Outcome outcome) {
+    var total = 0L;
+    for (var row = 0; row <= GLSLParser.ruleNames.length; row++) {
+      total += counts.get(row * outcomes.length + outcome.ordinal());
+    }
+    return total;
+  }
+
+  /**
+   * Sets all counters to zero.
+   */
+  public void reset() {
+    for (var i = 0; i < counts.length(); i++) {
+      counts.set(i, 0);
+    }
+  }
+
+  @Override
+  public String toString() {
+    var builder = new StringBuilder("ParseStatistics[");
+    var first = true;
+    for (var row = 0; row <= GLSLParser.ruleNames.length; row++) {
+      var rowEmpty = true;
+      for (var outcome : outcomes) {
+        if (counts.get(row * outcomes.length + outcome.ordinal()) != 0) {
+          rowEmpty = false;
+          break;
+        }
+      }
+      if (rowEmpty) {
+        continue;
+      }
+      if (!first) {
+        builder.append(", ");
+      }
+      first = false;
+      builder.append(row == 0 ? "unknown" : GLSLParser.ruleNames[row - 1]).append('{');
+      for (var outcome : outcomes) {
+        if (outcome.ordinal() > 0) {
+          builder.append(", ");
+        }
+        builder.append(outcome).append('=').append(counts.get(row * outcomes.length + outcome.ordinal()));
+      }
+      builder.append('}');
+    }
+    return builder.append(']').toString();
+  }
+}
@@ -0,0 +1,104 @@
+package io.github.douira.glsl_transformer_physics.basic;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.function.*;
+
+/**
+ * The parser pool hands out parsers to worker threads so that multiple inputs
+ * can be parsed at the same time. Parsers are stateful and may only be used by
+ * one thread at a time, but constructing a new one for each input would throw
+ * away its parse and build caches. The pool keeps released parsers around and
+ * hands them out again when they are borrowed.
+ * 
+ * Each parser has its own lexer, parser, token source and caches. The ATN and
+ * the DFA of the generated lexer and parser are static and therefore shared
+ * between all parsers regardless of which pool they came from.
+ * 
+ * Parsers are configured once when they are created by the factory. Changing
+ * the configuration of a borrowed parser changes it for all future borrowers.
+ */
+public class ParserPool<P extends ParserInterface> {
+  private final Supplier<P> parserFactory;
+  private final Deque<P> idleParsers = new ConcurrentLinkedDeque<>();
+  private final ThreadLocal<P> threadParsers;
+
+  /**
+   * Creates a new parser pool that creates parsers with the given factory when
+   * there are no idle parsers left.
+   * 
+   * @param parserFactory The factory that creates and configures new parsers
+   */
+  public ParserPool(Supplier<P> parserFactory) {
+    this.parserFactory = parserFactory;
+    threadParsers = ThreadLocal.withInitial(parserFactory);
+  }
+
+  /**
+   * Borrows a parser from the pool. If there are no idle parsers, a new one is
+   * created. The parser must be returned with {@link #release(ParserInterface)}
+   * once it's not used anymore.
+   * 
+   * @return A parser that is only used by the caller until it's released
+   */
+  public P borrow() {
+    var parser = idleParsers.pollFirst();
+    return parser == null ? parserFactory.get() : parser;
+  }
+
+  /**
+   * Returns a borrowed parser to the pool.
+   * 
+   * @param parser The parser to return
+   */
+  public void release(P parser) {
+    if (parser != null) {
+      idleParsers.offerFirst(parser);
+    }
+  }
+
+  /**
+   * Borrows a parser, runs the given function with it and releases it again
+   * afterwards even if the function throws.
+   * 
+   * @param <R>    The return type of the function
+   * @param action The function to run with the borrowed parser
+   * @return The value returned by the function
+   */
+  public <R> R withParser(Function<P, R> action) {
+    var parser = borrow();
+    try {
+      return action.apply(parser);
+    } finally {
+      release(parser);
+    }
+  }
+
+  /**
+   * Returns the parser that belongs to the current thread. Parsers obtained this
+   * way are not shared with borrowers and live as long as the thread does or
+   * until {@link #removeThreadParser()} is called. This is useful for long-lived
+   * worker threads.
+   * 
+   * @return The parser of the current thread
+   */
+  public P getThreadParser() {
+    return threadParsers.get();
+  }
+
+  /**
+   * Removes the parser of the current thread so that it can be garbage
+   * collected.
+   */
+  public void removeThreadParser() {
+    threadParsers.remove();
+  }
+
+  /**
+   * Removes all idle parsers from the pool. Borrowed parsers that are released
+   * afterwards are added to the pool again.
+   */
+  public void clear() {
+    idleParsers.clear();
+  }
+}
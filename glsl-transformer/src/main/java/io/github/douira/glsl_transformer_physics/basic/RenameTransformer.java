@@ -0,0 +1,144 @@
+package io.github.douira.glsl_transformer_physics.basic;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Function;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.misc.Interval;
+
+import io.github.douira.glsl_transformer_physics.GLSLLexer;
+import io.github.douira.glsl_transformer_physics.ast.node.Identifier;
+import io.github.douira.glsl_transformer_physics.job_parameter.*;
+
+/**
+ * The rename transformer renames identifiers without parsing the code. Only
+ * the lexer is run over the input and each identifier token that has an entry
+ * in the rename map is replaced with the new name. All other parts of the
+ * input, including whitespace, comments and preprocessor directives, are
+ * copied to the output unchanged. This is much faster than parsing the code,
+ * building an AST, renaming with
+ * {@link io.github.douira.glsl_transformer_physics.ast.query.Root#rename(String, String)}
+ * and printing it again if renaming is the only change that needs to be made.
+ * 
+ * The renamed identifiers are the same ones that the AST would contain since
+ * every identifier node is made from an identifier token. Names in the content
+ * of preprocessor directives like {@code #define} are not identifier tokens and
+ * are not renamed, just like they aren't part of the AST. Unlike the AST
+ * transformers, the formatting of the input is preserved.
+ * 
+ * The rename map can depend on the job parameters. The transformer has a lexer
+ * and may only be used by one thread at a time.
+ */
+public class RenameTransformer<T extends JobParameters> implements ParameterizedTransformer<T, String> {
+  private final GLSLLexer lexer = new GLSLLexer(null);
+  private final Function<? super T, Map<String, String>> renameMapSupplier;
+  private T jobParameters;
+
+  {
+    lexer.removeErrorListeners();
+  }
+
+  /**
+   * Creates a new rename transformer that gets the rename map from the job
+   * parameters each time it transforms an input.
+   * 
+   * @param renameMapSupplier The function that returns the map from old names
+   *                          to new names for the given job parameters
+   */
+  public RenameTransformer(Function<? super T, Map<String, String>> renameMapSupplier) {
+    this.renameMapSupplier = renameMapSupplier;
+  }
+
+  /**
+   * Creates a new rename transformer with a fixed rename map.
+   * 
+   * @param renames The map from old names to new names
+   */
+  public RenameTransformer(Map<String, String> renames) {
+    validateRenames(renames);
+    var fixedRenames = Collections.unmodifiableMap(new HashMap<>(renames));
+    this.renameMapSupplier = parameters -> fixedRenames;
+  }
+
+  private static void validateRenames(Map<String, String> renames) {
+    for (var newName : renames.values()) {
+      Identifier.validateContents(newName);
+    }
+  }
+
+  @Override
+  public T getJobParameters() {
+    return jobParameters;
+  }
+
+  @Override
+  public void setJobParameters(T parameters) {
+    jobParameters = parameters;
+  }
+
+  @Override
+  public String transform(String str) throws RecognitionException {
+    var builder = new StringBuilder(str.length() + (str.length() >> 4));
+    try {
+      transform(CharStreams.fromString(str), builder);
+    } catch (IOException e) {
+      // a string builder doesn't throw
+      throw new UncheckedIOException(e);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Reads all code from the reader and writes the renamed code to the writer.
+   * The renamed code is written while the input is being lexed.
+   * 
+   * @param reader The reader to read the code from
+   * @param writer The writer to write the renamed code to
+   * @throws IOException If reading or writing fails
+   */
+  public void transform(Reader reader, Writer writer) throws IOException {
+    transform(CharStreams.fromReader(reader), writer);
+  }
+
+  /**
+   * Lexes the given input and appends the renamed code to the given output.
+   * Each identifier token is looked up in the rename map and the code between
+   * renamed identifiers is copied unchanged.
+   * 
+   * @param input  The code to rename identifiers in
+   * @param output The output to append the renamed code to
+   * @throws IOException If appending to the output fails
+   */
+  public void transform(CharStream input, Appendable output) throws IOException {
+    var renames = renameMapSupplier.apply(jobParameters);
+    if (renames == null || renames.isEmpty()) {
+      if (input.size() > 0) {
+        output.append(input.getText(Interval.of(0, input.size() - 1)));
+      }
+      return;
+    }
+
+    lexer.setInputStream(input);
+    var copied = 0;
+    for (var token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+      if (token.getType() != GLSLLexer.IDENTIFIER) {
+        continue;
+      }
+      var newName = renames.get(token.getText());
+      if (newName == null) {
+        continue;
+      }
+      Identifier.validateContents(newName);
+      var start = token.getStartIndex();
+      if (start > copied) {
+        output.append(input.getText(Interval.of(copied, start - 1)));
+      }
+      output.append(newName);
+      copied = token.getStopIndex() + 1;
+    }
+    if (copied < input.size()) {
+      output.append(input.getText(Interval.of(copied, input.size() - 1)));
+    }
+  }
+}
@@ -0,0 +1,160 @@
+package io.github.douira.glsl_transformer_physics.basic;
+
+import java.util.*;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.misc.Interval;
+
+import io.github.douira.glsl_transformer_physics.GLSLLexer;
+
+/**
+ * The top level splitter splits a translation unit into the pieces of code
+ * that make up its top level constructs without parsing it. Only the lexer is
+ * run and the boundaries are determined by tracking the nesting depth of
+ * parentheses and braces.
+ * 
+ * A directive like {@code #version} or {@code #extension} is a chunk that ends
+ * at the end of its line. Any other chunk ends with a semicolon that isn't
+ * nested in parentheses or braces, or with the closing brace of a block that
+ * directly follows a closing parenthesis, which is how function definitions
+ * end. Each chunk that isn't the version statement therefore corresponds to
+ * one external declaration if the code is valid. Tokens that are left over at
+ * the end of the input form an incomplete chunk. Hidden tokens like comments
+ * and whitespace between chunks are not part of any chunk.
+ * 
+ * The splitter has a lexer and may only be used by one thread at a time.
+ */
+public class TopLevelSplitter {
+  /**
+   * The kind of code a chunk contains.
+   */
+  public enum ChunkType {
+    /**
+     * The {@code #version} statement.
+     */
+    VERSION,
+
+    /**
+     * Any other directive that starts with {@code #}, like {@code #extension}
+     * or {@code #pragma}.
+     */
+    DIRECTIVE,
+
+    /**
+     * A declaration or function definition.
+     */
+    DECLARATION
+  }
+
+  /**
+   * A piece of the input that contains one top level construct.
+   * 
+   * @param type      The type of the chunk
+   * @param text      The code of the chunk from its first to its last token
+   * @param startLine The line the first token of the chunk is on
+   * @param complete  If the chunk ended with a proper boundary and not with the
+   *                  end of the input
+   */
+  public static record Chunk(ChunkType type, String text, int startLine, boolean complete) {
+    /**
+     * Returns the number of lines in the whole input that come before the first
+     * line of the chunk. Nodes parsed from the chunk's text get the source lines
+     * of the chunk's position in the whole input if they are built with this
+     * line offset.
+     * 
+     * @return The number of lines before the chunk
+     */
+    public int lineOffset() {
+      return startLine - 1;
+    }
+  }
+
+  private final GLSLLexer lexer = new GLSLLexer(null);
+
+  {
+    lexer.removeErrorListeners();
+  }
+
+  /**
+   * Splits the given code into chunks.
+   * 
+   * @param input The code to split
+   * @return The chunks in the order they appear in the input
+   */
+  public List<Chunk> split(String input) {
+    var stream = CharStreams.fromString(input);
+    lexer.setInputStream(stream);
+
+    var chunks = new ArrayList<Chunk>();
+    Token chunkStart = null;
+    Token previous = null;
+    var chunkType = ChunkType.DECLARATION;
+    var depth = 0;
+    var functionBody = false;
+
+    for (var token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+      if (token.getChannel() != Token.DEFAULT_CHANNEL) {
+        continue;
+      }
+      var type = token.getType();
+      if (chunkStart == null) {
+        chunkStart = token;
+        depth = 0;
+        functionBody = false;
+        chunkType = type == GLSLLexer.NR ? ChunkType.DIRECTIVE : ChunkType.DECLARATION;
+      } else if (previous == chunkStart && chunkType == ChunkType.DIRECTIVE && type == GLSLLexer.VERSION) {
+        chunkType = ChunkType.VERSION;
+      }
+
+      var end = false;
+      if (chunkType != ChunkType.DECLARATION) {
+        end = type == GLSLLexer.NR_EOL;
+      } else {
+        switch (type) {
+          case GLSLLexer.LPAREN:
+            depth++;
+            break;
+          case GLSLLexer.LBRACE:
+            if (depth == 0) {
+              functionBody = previous != null && previous.getType() == GLSLLexer.RPAREN;
+            }
+            depth++;
+            break;
+          case GLSLLexer.RPAREN:
+            depth = Math.max(0, depth - 1);
+            break;
+          case GLSLLexer.RBRACE:
+            depth = Math.max(0, depth - 1);
+            end = depth == 0 && functionBody;
+            break;
+          case GLSLLexer.SEMICOLON:
+            end = depth == 0;
+            break;
+          default:
+            break;
+        }
+      }
+
+      if (end) {
+        chunks.add(makeChunk(stream, chunkType, chunkStart, token, true));
+        chunkStart = null;
+        previous = null;
+      } else {
+        previous = token;
+      }
+    }
+
+    if (chunkStart != null) {
+      chunks.add(makeChunk(stream, chunkType, chunkStart, previous, false));
+    }
+    return chunks;
+  }
+
+  private static Chunk makeChunk(CharStream stream, ChunkType type, Token start, Token stop, boolean complete) {
+    return new Chunk(
+        type,
+        stream.getText(Interval.of(start.getStartIndex(), stop.getStopIndex())),
+        start.getLine(),
+        complete);
+  }
+}
@@ -1,5 +1,7 @@
 package io.github.douira.glsl_transformer_physics.job_parameter;
 
+import io.github.douira.glsl_transformer_physics.util.ContentHasher;
+
 /**
  * All job parameters have to extend this job parameter base class. It enforces
  * an equals and hashCode method in order to allow the "fixed" part job
@@ -18,4 +20,21 @@ public abstract class JobParameters {
    * Requires the implementation of the hashCode method.
    */
   public abstract int hashCode();
+
+  /**
+   * Writes a stable encoding of the fixed part of these job parameters to the
+   * given hasher. Two job parameter objects that are equal must write the same
+   * values and the values must not change across restarts, which excludes
+   * identity hash codes and the hash codes of enums. This is used to identify
+   * the job parameters of outputs that are stored persistently. Job parameters
+   * that don't override this method can't be encoded and outputs produced with
+   * them are not stored persistently.
+   * 
+   * @param hasher The hasher to write the fixed part to
+   * @return {@code true} if the fixed part was written, {@code false} if these
+   *         job parameters can't be encoded
+   */
+  public boolean updateStableHash(ContentHasher hasher) {
+    return false;
+  }
 }
@@ -1,5 +1,7 @@
 package io.github.douira.glsl_transformer_physics.job_parameter;
 
+import io.github.douira.glsl_transformer_physics.util.ContentHasher;
+
 /**
  * This class is used when the job parameters have no fixed part and the
  * execution plan can't be statically optimized for certain job parameter
@@ -21,4 +23,12 @@ public class NonFixedJobParameters extends JobParameters {
   public int hashCode() {
     return 0;
   }
+
+  /**
+   * Non-fixed job parameters have no fixed part, so nothing is written.
+   */
+  @Override
+  public boolean updateStableHash(ContentHasher hasher) {
+    return true;
+  }
 }
@@ -0,0 +1,37 @@
+package io.github.douira.glsl_transformer_physics.util;
+
+import java.util.function.*;
+
+/**
+ * A cache returns previously computed values for a key and computes them with
+ * a supplier if they are missing. Implementations decide on the eviction
+ * policy and on whether they may be used by multiple threads.
+ */
+public interface Cache<K, V> {
+  /**
+   * Returns the value for the given key and computes it with the given supplier
+   * if it's not in the cache yet.
+   * 
+   * @param key      The key to get the value for
+   * @param supplier The supplier that computes a missing value
+   * @return The cached or newly computed value
+   */
+  V cachedGet(K key, Supplier<V> supplier);
+
+  /**
+   * Returns the value for the given key and computes it with the given supplier
+   * if it's not in the cache yet. If the value was found in the cache, it's
+   * passed through the hydrator before being returned.
+   * 
+   * @param key      The key to get the value for
+   * @param supplier The supplier that computes a missing value
+   * @param hydrator The function that is applied to cache hits
+   * @return The newly computed value or the hydrated cached value
+   */
+  V cachedGetHydrateHit(K key, Supplier<V> supplier, Function<V, V> hydrator);
+
+  /**
+   * Removes all values from the cache.
+   */
+  void clear();
+}
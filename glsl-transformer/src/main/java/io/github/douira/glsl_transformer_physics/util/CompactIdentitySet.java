@@ -0,0 +1,233 @@
+package io.github.douira.glsl_transformer_physics.util;
+
+import java.util.*;
+
+/**
+ * A set that compares its elements by identity and uses as little memory as
+ * possible for small sizes. A single element is stored directly in the set
+ * object, a few elements are stored in a small array that is searched linearly
+ * and only larger sets are backed by an {@link IdentitySet}. Most identifier
+ * names in a shader are used only a few times which means most sets never
+ * allocate anything besides the set object itself.
+ * 
+ * Like other sets, this set may not be modified by multiple threads at the same
+ * time. Null elements are not permitted.
+ */
+public class CompactIdentitySet<E> extends AbstractSet<E> {
+  private static final int MAX_ARRAY_SIZE = 8;
+
+  private static final byte EMPTY = 0;
+  private static final byte SINGLE = 1;
+  private static final byte ARRAY = 2;
+  private static final byte SET = 3;
+
+  /**
+   * Depending on the mode, this is nothing, the single element, an array of
+   * elements or an identity set.
+   */
+  private Object data;
+  private byte mode = EMPTY;
+  private int size;
+  private int modCount;
+
+  public CompactIdentitySet() {
+  }
+
+  public CompactIdentitySet(E element) {
+    add(element);
+  }
+
+  @Override
+  public int size() {
+    return mode == SET ? getSet().size() : size;
+  }
+
+  @SuppressWarnings("unchecked")
+  private IdentitySet<E> getSet() {
+    return (IdentitySet<E>) data;
+  }
+
+  private int indexInArray(Object element) {
+    var array = (Object[]) data;
+    for (var i = 0; i < size; i++) {
+      if (array[i] == element) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public boolean contains(Object element) {
+    switch (mode) {
+      case SINGLE:
+        return data == element;
+      case ARRAY:
+        return indexInArray(element) >= 0;
+      case SET:
+        return getSet().contains(element);
+      default:
+        return false;
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean add(E element) {
+    Objects.requireNonNull(element);
+    switch (mode) {
+      case EMPTY:
+        data = element;
+        mode = SINGLE;
+        break;
+      case SINGLE:
+        if (data == element) {
+          return false;
+        }
+        var array = new Object[4];
+        array[0] = data;
+        array[1] = element;
+        data = array;
+        mode = ARRAY;
+        break;
+      case ARRAY:
+        if (indexInArray(element) >= 0) {
+          return false;
+        }
+        var elements = (Object[]) data;
+        if (size == elements.length) {
+          if (size >= MAX_ARRAY_SIZE) {
+            var set = new IdentitySet<E>(size * 2);
+            for (var existing : elements) {
+              set.add((E) existing);
+            }
+            set.add(element);
+            data = set;
+            mode = SET;
+            modCount++;
+            return true;
+          }
+          elements = Arrays.copyOf(elements, size * 2);
+          data = elements;
+        }
+        elements[size] = element;
+        break;
+      default:
+        if (!getSet().add(element)) {
+          return false;
+        }
+        modCount++;
+        return true;
+    }
+    size++;
+    modCount++;
+    return true;
+  }
+
+  @Override
+  public boolean remove(Object element) {
+    switch (mode) {
+      case SINGLE:
+        if (data != element) {
+          return false;
+        }
+        data = null;
+        mode = EMPTY;
+        break;
+      case ARRAY:
+        var index = indexInArray(element);
+        if (index < 0) {
+          return false;
+        }
+        removeFromArray(index);
+        break;
+      case SET:
+        if (!getSet().remove(element)) {
+          return false;
+        }
+        modCount++;
+        return true;
+      default:
+        return false;
+    }
+    size--;
+    modCount++;
+    return true;
+  }
+
+  private void removeFromArray(int index) {
+    var array = (Object[]) data;
+    System.arraycopy(array, index + 1, array, index, size - index - 1);
+    array[size - 1] = null;
+    if (size == 2) {
+      data = array[0];
+      mode = SINGLE;
+    }
+  }
+
+  @Override
+  public void clear() {
+    data = null;
+    mode = EMPTY;
+    size = 0;
+    modCount++;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    switch (mode) {
+      case SINGLE:
+      case ARRAY:
+        return new SmallIterator();
+      case SET:
+        return getSet().iterator();
+      default:
+        return Collections.emptyIterator();
+    }
+  }
+
+  private class SmallIterator implements Iterator<E> {
+    private int expectedModCount = modCount;
+    private int next = 0;
+    private boolean canRemove = false;
+
+    @Override
+    public boolean hasNext() {
+      return next < size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E next() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (next >= size) {
+        throw new NoSuchElementException();
+      }
+      canRemove = true;
+      var index = next++;
+      return (E) (mode == SINGLE ? data : ((Object[]) data)[index]);
+    }
+
+    @Override
+    public void remove() {
+      if (!canRemove) {
+        throw new IllegalStateException();
+      }
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      canRemove = false;
+      next--;
+      if (mode == SINGLE) {
+        data = null;
+        mode = EMPTY;
+      } else {
+        removeFromArray(next);
+      }
+      size--;
+      expectedModCount = ++modCount;
+    }
+  }
+}
@@ -0,0 +1,258 @@
+package io.github.douira.glsl_transformer_physics.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * A bounded cache that may be shared between threads. The keys are distributed
+ * over a number of segments that each have their own lock and their own
+ * least-recently-used eviction order. Threads that access keys in different
+ * segments don't contend with each other.
+ * 
+ * Missing values are computed outside the segment lock. If multiple threads
+ * request the same missing key at the same time, only one of them computes
+ * the value and the others wait for it. If the computation throws, the entry is
+ * removed again and the exception is rethrown to all waiting threads. If the
+ * computation of a value requests the same key again on the same thread, an
+ * exception is thrown instead of waiting for itself forever.
+ * 
+ * The map methods only see values that have finished computing. Iterating the
+ * cache iterates over a snapshot of the finished entries.
+ * 
+ * Since each segment is bounded separately, the total number of entries never
+ * exceeds the maximum size but entries may be evicted slightly earlier than in
+ * a single {@link LRUCache} if the keys are unevenly distributed.
+ */
+public class ConcurrentLRUCache<K, V> extends AbstractMap<K, V> implements Cache<K, V> {
+  private static final int defaultSegmentCount = 16;
+
+  private final Segment<K, V>[] segments;
+  private final int segmentMask;
+
+  private static class LoadTask<V> extends FutureTask<V> {
+    private final Thread loader = Thread.currentThread();
+
+    LoadTask(Callable<V> callable) {
+      super(callable);
+    }
+
+    static <V> LoadTask<V> completed(V value) {
+      var task = new LoadTask<>(() -> value);
+      task.run();
+      return task;
+    }
+
+    V getIfCompleted() {
+      if (!isDone() || isCancelled()) {
+        return null;
+      }
+      try {
+        return get();
+      } catch (InterruptedException | ExecutionException e) {
+        return null;
+      }
+    }
+  }
+
+  private static class Segment<K, V> extends LinkedHashMap<K, LoadTask<V>> {
+    private final int maxSize;
+
+    Segment(int maxSize) {
+      super((int) Math.ceil(maxSize / 0.75f) + 1, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, LoadTask<V>> eldest) {
+      return size() > maxSize;
+    }
+  }
+
+  /**
+   * Creates a new concurrent cache with the given maximum size and the given
+   * number of segments. The segment count is rounded down to a power of two and
+   * reduced if there are fewer entries than segments.
+   * 
+   * @param maxSize      The maximum number of entries
+   * @param segmentCount The number of separately locked segments
+   */
+  @SuppressWarnings("unchecked")
+  public ConcurrentLRUCache(int maxSize, int segmentCount) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("The maximum size must be positive!");
+    }
+    segmentCount = Integer.highestOneBit(Math.max(1, Math.min(segmentCount, maxSize)));
+    segments = new Segment[segmentCount];
+    segmentMask = segmentCount - 1;
+    var segmentSize = maxSize / segmentCount;
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = new Segment<>(segmentSize);
+    }
+  }
+
+  public ConcurrentLRUCache(int maxSize) {
+    this(maxSize, defaultSegmentCount);
+  }
+
+  private Segment<K, V> getSegment(Object key) {
+    var hash = key == null ? 0 : key.hashCode();
+    return segments[(hash ^ (hash >>> 16)) & segmentMask];
+  }
+
+  private V getValue(Segment<K, V> segment, K key, LoadTask<V> task) {
+    if (task.loader == Thread.currentThread() && !task.isDone()) {
+      throw new IllegalStateException(
+          "The cache value supplier requested the value it's computing: " + key);
+    }
+    var interrupted = false;
+    try {
+      while (true) {
+        try {
+          return task.get();
+        } catch (InterruptedException e) {
+          // the value is still needed, keep waiting and restore the flag later
+          interrupted = true;
+        } catch (ExecutionException e) {
+          synchronized (segment) {
+            if (segment.get(key) == task) {
+              segment.remove(key);
+            }
+          }
+          var cause = e.getCause();
+          if (cause instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+          }
+          if (cause instanceof Error error) {
+            throw error;
+          }
+          throw new IllegalStateException("The cache value supplier threw a checked exception.", cause);
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private V cachedGet(K key, Supplier<V> supplier, Function<V, V> hydrator) {
+    var segment = getSegment(key);
+    LoadTask<V> task;
+    var computeHere = false;
+    synchronized (segment) {
+      task = segment.get(key);
+      if (task == null) {
+        task = new LoadTask<>(supplier::get);
+        segment.put(key, task);
+        computeHere = true;
+      }
+    }
+    if (computeHere) {
+      task.run();
+      return getValue(segment, key, task);
+    }
+    var value = getValue(segment, key, task);
+    return hydrator == null ? value : hydrator.apply(value);
+  }
+
+  @Override
+  public V cachedGet(K key, Supplier<V> supplier) {
+    return cachedGet(key, supplier, null);
+  }
+
+  @Override
+  public V cachedGetHydrateHit(K key, Supplier<V> supplier, Function<V, V> hydrator) {
+    return cachedGet(key, supplier, hydrator);
+  }
+
+  @Override
+  public V get(Object key) {
+    var segment = getSegment(key);
+    LoadTask<V> task;
+    synchronized (segment) {
+      task = segment.get(key);
+    }
+    return task == null ? null : task.getIfCompleted();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public V put(K key, V value) {
+    Objects.requireNonNull(value);
+    var segment = getSegment(key);
+    LoadTask<V> previous;
+    synchronized (segment) {
+      previous = segment.put(key, LoadTask.completed(value));
+    }
+    return previous == null ? null : previous.getIfCompleted();
+  }
+
+  /**
+   * Removes the value for the given key from the cache.
+   * 
+   * @param key The key to remove
+   * @return The removed value or {@code null} if there was no finished value
+   */
+  @Override
+  public V remove(Object key) {
+    var segment = getSegment(key);
+    LoadTask<V> previous;
+    synchronized (segment) {
+      previous = segment.remove(key);
+    }
+    return previous == null ? null : previous.getIfCompleted();
+  }
+
+  /**
+   * Returns the number of entries in the cache. Entries that are still being
+   * computed are included.
+   * 
+   * @return The number of entries
+   */
+  @Override
+  public int size() {
+    var size = 0;
+    for (var segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    for (var segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  /**
+   * Returns a snapshot of the finished entries of the cache. Changes to the
+   * returned set don't affect the cache.
+   * 
+   * @return The finished entries
+   */
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    var entries = new LinkedHashMap<K, V>();
+    for (var segment : segments) {
+      synchronized (segment) {
+        for (var entry : segment.entrySet()) {
+          var value = entry.getValue().getIfCompleted();
+          if (value != null) {
+            entries.put(entry.getKey(), value);
+          }
+        }
+      }
+    }
+    return entries.entrySet();
+  }
+}
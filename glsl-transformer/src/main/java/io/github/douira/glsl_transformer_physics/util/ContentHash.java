@@ -0,0 +1,62 @@
+package io.github.douira.glsl_transformer_physics.util;
+
+import java.util.Arrays;
+
+/**
+ * A strong hash of some content. It's used to identify inputs by their content
+ * without keeping the content itself around. Two content hashes are equal if
+ * their digests are equal. Use a {@link ContentHasher} to create them.
+ */
+public final class ContentHash {
+  private final byte[] digest;
+  private final int hashCode;
+
+  ContentHash(byte[] digest) {
+    this.digest = digest;
+    this.hashCode = Arrays.hashCode(digest);
+  }
+
+  /**
+   * Returns a copy of the digest bytes.
+   * 
+   * @return The digest
+   */
+  public byte[] getDigest() {
+    return digest.clone();
+  }
+
+  /**
+   * Returns the digest as a lowercase hexadecimal string.
+   * 
+   * @return The digest in hexadecimal
+   */
+  public String toHexString() {
+    var builder = new StringBuilder(digest.length * 2);
+    for (var b : digest) {
+      builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+      builder.append(Character.forDigit(b & 0xF, 16));
+    }
+    return builder.toString();
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    return Arrays.equals(digest, ((ContentHash) obj).digest);
+  }
+
+  @Override
+  public String toString() {
+    return toHexString();
+  }
+}
@@ -0,0 +1,65 @@
+package io.github.douira.glsl_transformer_physics.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+
+/**
+ * Builds a {@link ContentHash} from a sequence of values using SHA-256.
+ * Strings are prefixed with their length so that the boundaries between
+ * consecutive values are part of the hash. A hasher can only be finished once.
+ */
+public class ContentHasher {
+  private static final String ALGORITHM = "SHA-256";
+  private final MessageDigest digest;
+
+  public ContentHasher() {
+    try {
+      digest = MessageDigest.getInstance(ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException("The hash algorithm " + ALGORITHM + " is not available.", e);
+    }
+  }
+
+  public ContentHasher update(int value) {
+    digest.update((byte) (value >>> 24));
+    digest.update((byte) (value >>> 16));
+    digest.update((byte) (value >>> 8));
+    digest.update((byte) value);
+    return this;
+  }
+
+  public ContentHasher update(String value) {
+    if (value == null) {
+      return update(-1);
+    }
+    var bytes = value.getBytes(StandardCharsets.UTF_8);
+    update(bytes.length);
+    digest.update(bytes);
+    return this;
+  }
+
+  public ContentHasher update(byte[] value) {
+    update(value.length);
+    digest.update(value);
+    return this;
+  }
+
+  public ContentHasher update(ContentHash value) {
+    return update(value.getDigest());
+  }
+
+  public ContentHash finish() {
+    return new ContentHash(digest.digest());
+  }
+
+  /**
+   * Hashes a single string.
+   * 
+   * @param value The string to hash
+   * @return The hash of the string
+   */
+  public static ContentHash hash(String value) {
+    return new ContentHasher().update(value).finish();
+  }
+}
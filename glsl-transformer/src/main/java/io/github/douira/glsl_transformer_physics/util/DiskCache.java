@@ -0,0 +1,411 @@
+package io.github.douira.glsl_transformer_physics.util;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * A size-bounded cache of byte arrays that is stored in a directory and
+ * survives restarts. The keys are content hashes created by a
+ * {@link ContentHasher}.
+ * 
+ * The values are appended to segment files and never modified. A memory-mapped
+ * index file maps the keys to the location of their value in a segment. When
+ * the total size of the segments exceeds the maximum size, the oldest segment
+ * is deleted together with all index entries that point into it. Each segment
+ * is an eighth of the maximum size but at least 64 KiB, which is why the
+ * maximum size can't be smaller than that. The index has
+ * a fixed number of slots and each key may only be placed in a small range of
+ * slots. If all of them are taken, an existing entry is overwritten.
+ * 
+ * Every stored value is preceded by its key, its length and a checksum. A value
+ * is only returned if all of them match which means that truncated segments,
+ * damaged files or an index that points to the wrong location result in a
+ * cache miss and never in wrong data. If the index file itself is unreadable,
+ * the whole cache is reset.
+ * 
+ * The methods of this class are synchronized. A directory may only be used by
+ * one disk cache at a time, also across processes.
+ */
+public class DiskCache implements Closeable {
+  private static final int MAGIC = 0x474C5443;
+  private static final int FORMAT_VERSION = 1;
+  private static final int KEY_SIZE = 32;
+  private static final int INDEX_HEADER_SIZE = 16;
+
+  // key, segment id, offset, length
+  private static final int SLOT_SIZE = KEY_SIZE + 12;
+
+  // key, length, checksum
+  private static final int RECORD_HEADER_SIZE = KEY_SIZE + 8;
+  private static final int MAX_PROBES = 16;
+  private static final int MIN_SEGMENT_SIZE = 1 << 16;
+  private static final int DEFAULT_CAPACITY = 1 << 14;
+  private static final String INDEX_FILE = "index.bin";
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".bin";
+
+  private final Path directory;
+  private final long maxBytes;
+  private final long segmentSize;
+  private final int capacity;
+  private final FileChannel indexChannel;
+  private final MappedByteBuffer index;
+  private final TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+  private long totalBytes;
+
+  /**
+   * Opens or creates a disk cache in the given directory. If the directory
+   * contains a cache with a different capacity or an unreadable index, it's
+   * reset.
+   * 
+   * @param directory The directory to store the cache in
+   * @param maxBytes  The maximum total size of the stored values, at least 64
+   *                  KiB
+   * @param capacity  The number of slots in the index
+   */
+  public DiskCache(Path directory, long maxBytes, int capacity) {
+    if (maxBytes < MIN_SEGMENT_SIZE) {
+      // a single segment is never evicted and may be this large
+      throw new IllegalArgumentException("The maximum size must be at least " + MIN_SEGMENT_SIZE + " bytes!");
+    }
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("The capacity must be positive!");
+    }
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.segmentSize = Math.min(Integer.MAX_VALUE, Math.max(MIN_SEGMENT_SIZE, maxBytes / 8));
+    this.capacity = capacity;
+
+    try {
+      Files.createDirectories(directory);
+      indexChannel = FileChannel.open(directory.resolve(INDEX_FILE),
+          StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+      var indexSize = INDEX_HEADER_SIZE + (long) capacity * SLOT_SIZE;
+      var valid = indexChannel.size() == indexSize;
+      if (indexChannel.size() > indexSize) {
+        // mapping only grows the file, an index of a larger capacity is shrunk here
+        indexChannel.truncate(indexSize);
+      }
+      index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexSize);
+      valid = valid
+          && index.getInt(0) == MAGIC
+          && index.getInt(4) == FORMAT_VERSION
+          && index.getInt(8) == capacity;
+      openSegments();
+      if (!valid) {
+        reset();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("The disk cache in " + directory + " could not be opened.", e);
+    }
+  }
+
+  /**
+   * Opens or creates a disk cache in the given directory with the default index
+   * capacity.
+   * 
+   * @param directory The directory to store the cache in
+   * @param maxBytes  The maximum total size of the stored values, at least 64
+   *                  KiB
+   */
+  public DiskCache(Path directory, long maxBytes) {
+    this(directory, maxBytes, DEFAULT_CAPACITY);
+  }
+
+  private void openSegments() throws IOException {
+    try (var stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (var path : stream) {
+        var name = path.getFileName().toString();
+        int id;
+        try {
+          id = Integer.parseInt(name.substring(
+              SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+          continue;
+        }
+        if (id <= 0) {
+          continue;
+        }
+        var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.put(id, channel);
+        totalBytes += channel.size();
+      }
+    }
+  }
+
+  private Path getSegmentPath(int id) {
+    return directory.resolve(SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+  }
+
+  private void deleteSegment(int id) throws IOException {
+    var channel = segments.remove(id);
+    if (channel != null) {
+      totalBytes -= channel.size();
+      channel.close();
+    }
+    Files.deleteIfExists(getSegmentPath(id));
+  }
+
+  /**
+   * Deletes all segments and clears the index. Segments can't be used without
+   * the index entries that point into them.
+   */
+  private void reset() throws IOException {
+    for (var id : new ArrayList<>(segments.keySet())) {
+      deleteSegment(id);
+    }
+    totalBytes = 0;
+    for (int i = INDEX_HEADER_SIZE; i < index.capacity(); i++) {
+      index.put(i, (byte) 0);
+    }
+    index.putInt(0, MAGIC);
+    index.putInt(4, FORMAT_VERSION);
+    index.putInt(8, capacity);
+    index.putInt(12, 0);
+  }
+
+  private static byte[] getKeyBytes(ContentHash key) {
+    var digest = key.getDigest();
+    if (digest.length != KEY_SIZE) {
+      throw new IllegalArgumentException("The key must be a " + KEY_SIZE + " byte content hash.");
+    }
+    return digest;
+  }
+
+  private int getSlotPosition(int slot) {
+    return INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+  }
+
+  private int getHomeSlot(ContentHash key) {
+    return Math.floorMod(key.hashCode(), capacity);
+  }
+
+  private boolean slotHasKey(int position, byte[] key) {
+    for (int i = 0; i < KEY_SIZE; i++) {
+      if (index.get(position + i) != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isSlotEmpty(int position) {
+    return index.getInt(position + KEY_SIZE) == 0;
+  }
+
+  private int findSlot(ContentHash key, byte[] keyBytes) {
+    var home = getHomeSlot(key);
+    for (int i = 0; i < Math.min(MAX_PROBES, capacity); i++) {
+      var slot = (home + i) % capacity;
+      var position = getSlotPosition(slot);
+      if (!isSlotEmpty(position) && slotHasKey(position, keyBytes)) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  private int findInsertSlot(ContentHash key, byte[] keyBytes) {
+    var existing = findSlot(key, keyBytes);
+    if (existing >= 0) {
+      return existing;
+    }
+    var home = getHomeSlot(key);
+    for (int i = 0; i < Math.min(MAX_PROBES, capacity); i++) {
+      var slot = (home + i) % capacity;
+      if (isSlotEmpty(getSlotPosition(slot))) {
+        return slot;
+      }
+    }
+    return home;
+  }
+
+  private void clearSlot(int slot) {
+    index.putInt(getSlotPosition(slot) + KEY_SIZE, 0);
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      var read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new EOFException();
+      }
+    }
+    buffer.flip();
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, position + buffer.position());
+    }
+  }
+
+  private static int checksum(byte[] value) {
+    var crc = new CRC32();
+    crc.update(value, 0, value.length);
+    return (int) crc.getValue();
+  }
+
+  private byte[] readValue(int slot, byte[] keyBytes) {
+    var position = getSlotPosition(slot);
+    var segmentId = index.getInt(position + KEY_SIZE);
+    var offset = index.getInt(position + KEY_SIZE + 4);
+    var length = index.getInt(position + KEY_SIZE + 8);
+    var channel = segments.get(segmentId);
+    if (channel == null || offset < 0 || length < 0) {
+      return null;
+    }
+    try {
+      if ((long) offset + RECORD_HEADER_SIZE + length > channel.size()) {
+        return null;
+      }
+      var buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+      readFully(channel, buffer, offset);
+      var storedKey = new byte[KEY_SIZE];
+      buffer.get(storedKey);
+      if (!Arrays.equals(storedKey, keyBytes) || buffer.getInt() != length) {
+        return null;
+      }
+      var storedChecksum = buffer.getInt();
+      var value = new byte[length];
+      buffer.get(value);
+      return checksum(value) == storedChecksum ? value : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the value stored for the given key or {@code null} if there is no
+   * intact value for it.
+   * 
+   * @param key The key to look up
+   * @return The stored value or {@code null}
+   */
+  public synchronized byte[] get(ContentHash key) {
+    var keyBytes = getKeyBytes(key);
+    var slot = findSlot(key, keyBytes);
+    if (slot < 0) {
+      return null;
+    }
+    var value = readValue(slot, keyBytes);
+    if (value == null) {
+      clearSlot(slot);
+    }
+    return value;
+  }
+
+  private int getWritableSegment(int recordSize) throws IOException {
+    if (!segments.isEmpty()) {
+      var last = segments.lastEntry();
+      var size = last.getValue().size();
+      if (size == 0 || size + recordSize <= segmentSize) {
+        return last.getKey();
+      }
+    }
+    var id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+    segments.put(id, FileChannel.open(getSegmentPath(id),
+        StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE));
+    return id;
+  }
+
+  private void evict() throws IOException {
+    while (totalBytes > maxBytes && segments.size() > 1) {
+      var id = segments.firstKey();
+      deleteSegment(id);
+      for (int slot = 0; slot < capacity; slot++) {
+        if (index.getInt(getSlotPosition(slot) + KEY_SIZE) == id) {
+          clearSlot(slot);
+        }
+      }
+    }
+  }
+
+  /**
+   * Stores a value for the given key. Values that are larger than a segment are
+   * not stored. If the value can't be written, it's silently not stored.
+   * 
+   * @param key   The key to store the value under
+   * @param value The value to store
+   */
+  public synchronized void put(ContentHash key, byte[] value) {
+    var keyBytes = getKeyBytes(key);
+    var recordSize = RECORD_HEADER_SIZE + value.length;
+    if (recordSize > segmentSize) {
+      return;
+    }
+    try {
+      var segmentId = getWritableSegment(recordSize);
+      var channel = segments.get(segmentId);
+      var offset = channel.size();
+      var buffer = ByteBuffer.allocate(recordSize);
+      buffer.put(keyBytes);
+      buffer.putInt(value.length);
+      buffer.putInt(checksum(value));
+      buffer.put(value);
+      buffer.flip();
+      writeFully(channel, buffer, offset);
+      totalBytes += recordSize;
+
+      // the index is only updated once the value has been written completely
+      var position = getSlotPosition(findInsertSlot(key, keyBytes));
+      for (int i = 0; i < KEY_SIZE; i++) {
+        index.put(position + i, keyBytes[i]);
+      }
+      index.putInt(position + KEY_SIZE + 4, (int) offset);
+      index.putInt(position + KEY_SIZE + 8, value.length);
+      index.putInt(position + KEY_SIZE, segmentId);
+      evict();
+    } catch (IOException e) {
+      // a value that can't be written is simply not cached
+    }
+  }
+
+  /**
+   * Returns the total size of the segment files in bytes.
+   * 
+   * @return The size of the stored values including their headers
+   */
+  public synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Removes all values from the cache and deletes the segment files.
+   */
+  public synchronized void clear() {
+    try {
+      reset();
+    } catch (IOException e) {
+      throw new UncheckedIOException("The disk cache in " + directory + " could not be cleared.", e);
+    }
+  }
+
+  /**
+   * Writes all changes to the storage device.
+   */
+  public synchronized void flush() {
+    try {
+      for (var channel : segments.values()) {
+        channel.force(false);
+      }
+      index.force();
+    } catch (IOException e) {
+      throw new UncheckedIOException("The disk cache in " + directory + " could not be flushed.", e);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    index.force();
+    for (var channel : segments.values()) {
+      channel.close();
+    }
+    segments.clear();
+    indexChannel.close();
+  }
+}
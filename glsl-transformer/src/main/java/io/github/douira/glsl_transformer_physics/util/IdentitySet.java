@@ -0,0 +1,205 @@
+package io.github.douira.glsl_transformer_physics.util;
+
+import java.util.*;
+
+/**
+ * A compact set that compares its elements by identity. The elements are
+ * stored in a single array with open addressing and linear probing, which
+ * avoids the entry objects a {@link HashSet} creates for each element and the
+ * calls to {@code hashCode} and {@code equals}. Removed elements leave a marker
+ * in the array so that iterating and removing at the same time is possible.
+ * The array is rebuilt once too many of these markers have accumulated.
+ * 
+ * Like other sets, this set may not be modified by multiple threads at the same
+ * time. Null elements are not permitted.
+ */
+public class IdentitySet<E> extends AbstractSet<E> {
+  private static final Object REMOVED = new Object();
+  private static final int MIN_CAPACITY = 8;
+
+  private Object[] table;
+  private int size;
+  private int used;
+  private int modCount;
+
+  public IdentitySet(int expectedSize) {
+    table = new Object[capacityFor(expectedSize)];
+  }
+
+  public IdentitySet() {
+    table = new Object[MIN_CAPACITY];
+  }
+
+  private static int capacityFor(int expectedSize) {
+    var capacity = MIN_CAPACITY;
+    // keeps the load factor at or below two thirds
+    while (capacity * 2 < expectedSize * 3) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  private static int slot(Object element, int mask) {
+    var hash = System.identityHashCode(element);
+    return (hash ^ (hash >>> 16)) * 0x9E3779B9 & mask;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean contains(Object element) {
+    if (element == null) {
+      return false;
+    }
+    var mask = table.length - 1;
+    for (var i = slot(element, mask);; i = (i + 1) & mask) {
+      var current = table[i];
+      if (current == null) {
+        return false;
+      }
+      if (current == element) {
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public boolean add(E element) {
+    Objects.requireNonNull(element);
+    var mask = table.length - 1;
+    var freeSlot = -1;
+    var i = slot(element, mask);
+    for (;; i = (i + 1) & mask) {
+      var current = table[i];
+      if (current == null) {
+        break;
+      }
+      if (current == element) {
+        return false;
+      }
+      if (current == REMOVED && freeSlot < 0) {
+        freeSlot = i;
+      }
+    }
+    if (freeSlot >= 0) {
+      table[freeSlot] = element;
+    } else {
+      table[i] = element;
+      used++;
+    }
+    size++;
+    modCount++;
+    if (used * 3 > table.length * 2) {
+      rebuild();
+    }
+    return true;
+  }
+
+  @Override
+  public boolean remove(Object element) {
+    if (element == null) {
+      return false;
+    }
+    var mask = table.length - 1;
+    for (var i = slot(element, mask);; i = (i + 1) & mask) {
+      var current = table[i];
+      if (current == null) {
+        return false;
+      }
+      if (current == element) {
+        table[i] = REMOVED;
+        size--;
+        modCount++;
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public void clear() {
+    if (used > 0) {
+      Arrays.fill(table, null);
+      size = 0;
+      used = 0;
+      modCount++;
+    }
+  }
+
+  /**
+   * Rebuilds the table with a capacity that fits the current size. Removal
+   * markers are dropped in the process.
+   */
+  private void rebuild() {
+    var oldTable = table;
+    table = new Object[capacityFor(size + 1)];
+    var mask = table.length - 1;
+    for (var element : oldTable) {
+      if (element != null && element != REMOVED) {
+        var i = slot(element, mask);
+        while (table[i] != null) {
+          i = (i + 1) & mask;
+        }
+        table[i] = element;
+      }
+    }
+    used = size;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return new Iterator<E>() {
+      private final Object[] iteratedTable = table;
+      private int expectedModCount = modCount;
+      private int next = advance(0);
+      private int last = -1;
+
+      private int advance(int from) {
+        while (from < iteratedTable.length) {
+          var current = iteratedTable[from];
+          if (current != null && current != REMOVED) {
+            return from;
+          }
+          from++;
+        }
+        return from;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next < iteratedTable.length;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public E next() {
+        if (modCount != expectedModCount) {
+          throw new ConcurrentModificationException();
+        }
+        if (next >= iteratedTable.length) {
+          throw new NoSuchElementException();
+        }
+        last = next;
+        next = advance(next + 1);
+        return (E) iteratedTable[last];
+      }
+
+      @Override
+      public void remove() {
+        if (last < 0) {
+          throw new IllegalStateException();
+        }
+        if (modCount != expectedModCount) {
+          throw new ConcurrentModificationException();
+        }
+        // removing never rebuilds the table so the iterated table stays valid
+        iteratedTable[last] = REMOVED;
+        last = -1;
+        size--;
+        expectedModCount = ++modCount;
+      }
+    };
+  }
+}
@@ -3,7 +3,12 @@ package io.github.douira.glsl_transformer_physics.util;
 import java.util.*;
 import java.util.function.*;
 
-public class LRUCache<K, V> extends LinkedHashMap<K, V> {
+/**
+ * A least-recently-used cache based on an access-ordered linked hash map. This
+ * cache may not be used by multiple threads at the same time since even reads
+ * modify the access order. Use {@link ConcurrentLRUCache} for that.
+ */
+public class LRUCache<K, V> extends LinkedHashMap<K, V> implements Cache<K, V> {
   private final int maxSize;
 
   public LRUCache(int maxSize, float loadFactor) {
@@ -20,6 +25,7 @@ public class LRUCache<K, V> extends LinkedHashMap<K, V> {
     return size() > maxSize;
   }
 
+  @Override
   public V cachedGet(K key, Supplier<V> supplier) {
     V value = get(key);
     if (value == null) {
@@ -29,6 +35,7 @@ public class LRUCache<K, V> extends LinkedHashMap<K, V> {
     return value;
   }
 
+  @Override
   public V cachedGetHydrateHit(K key, Supplier<V> supplier, Function<V, V> hydrator) {
     V value = get(key);
     if (value == null) {
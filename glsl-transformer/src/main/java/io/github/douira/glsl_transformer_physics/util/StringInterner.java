@@ -0,0 +1,45 @@
+package io.github.douira.glsl_transformer_physics.util;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Interns strings so that equal strings share a single instance. Unlike
+ * {@link String#intern()}, the interned strings are held weakly by a map owned
+ * by the interner and are collected once nothing else references them. The
+ * map is split into segments that are locked separately so that trees being
+ * built on multiple threads rarely wait for each other.
+ */
+public class StringInterner {
+  private static final int SEGMENTS = 16;
+
+  @SuppressWarnings("unchecked")
+  private final WeakHashMap<String, WeakReference<String>>[] segments = new WeakHashMap[SEGMENTS];
+
+  public StringInterner() {
+    for (var i = 0; i < SEGMENTS; i++) {
+      segments[i] = new WeakHashMap<>();
+    }
+  }
+
+  /**
+   * Returns the shared instance of the given string. If there is none yet, the
+   * given string becomes the shared instance.
+   * 
+   * @param str The string to intern
+   * @return The shared instance of the string
+   */
+  public String intern(String str) {
+    var hash = str.hashCode();
+    var segment = segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    synchronized (segment) {
+      var reference = segment.get(str);
+      var interned = reference == null ? null : reference.get();
+      if (interned == null) {
+        segment.put(str, new WeakReference<>(str));
+        interned = str;
+      }
+      return interned;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+#version 460 core
+
+layout(local_size_x = 16, local_size_y = 16) in;
+
+layout(std430, binding = 0) buffer LightBuffer {
+  uint lightCount;
+  vec4 lights[];
+} lightBuffer;
+
+layout(std140, binding = 1) uniform CameraData {
+  mat4 view;
+  mat4 projection;
+  vec4 viewport;
+} camera;
+
+layout(rgba16f, binding = 2) uniform restrict writeonly image2D outputImage;
+layout(binding = 3) uniform sampler2DArray albedoArray;
+layout(binding = 4) uniform usampler3D voxelData;
+layout(binding = 0, offset = 0) uniform atomic_uint visibleLights;
+
+shared uint tileLightCount;
+shared uint tileLights[64];
+
+struct Light {
+  vec3 position;
+  float radius;
+  vec3 color;
+  uint flags;
+};
+
+subroutine vec3 shadeFunction(Light light, vec3 position);
+
+subroutine(shadeFunction) vec3 shadePoint(Light light, vec3 position) {
+  float dist = distance(light.position, position);
+  return light.color * max(1.0 - dist / light.radius, 0.0);
+}
+
+subroutine uniform shadeFunction shade;
+
+Light unpackLight(uint index) {
+  vec4 a = lightBuffer.lights[index * 2u];
+  vec4 b = lightBuffer.lights[index * 2u + 1u];
+  return Light(a.xyz, a.w, b.xyz, floatBitsToUint(b.w));
+}
+
+void main() {
+  ivec2 pixel = ivec2(gl_GlobalInvocationID.xy);
+  if (gl_LocalInvocationIndex == 0u) {
+    tileLightCount = 0u;
+  }
+  barrier();
+
+  for (uint i = gl_LocalInvocationIndex; i < lightBuffer.lightCount; i += 256u) {
+    Light light = unpackLight(i);
+    vec4 viewPos = camera.view * vec4(light.position, 1.0);
+    if ((light.flags & 1u) != 0u && -viewPos.z + light.radius > 0.0) {
+      uint slot = atomicAdd(tileLightCount, 1u);
+      if (slot < 64u) {
+        tileLights[slot] = i;
+        atomicCounterIncrement(visibleLights);
+      }
+    }
+  }
+  memoryBarrierShared();
+  barrier();
+
+  vec2 uv = (vec2(pixel) + 0.5) / camera.viewport.zw;
+  vec3 position = vec3(uv * 2.0 - 1.0, 0.0);
+  vec3 color = texture(albedoArray, vec3(uv, 0.0)).rgb;
+  uint voxel = texelFetch(voxelData, ivec3(pixel >> 2, 0), 0).r;
+  vec3 lighting = vec3(0.0);
+  uint count = min(tileLightCount, 64u);
+  uint i = 0u;
+  while (i < count) {
+    lighting += shade(unpackLight(tileLights[i]), position);
+    i++;
+  }
+  color *= voxel > 0u ? lighting : vec3(1.0);
+  imageStore(outputImage, pixel, vec4(color, 1.0));
+}
@@ -0,0 +1,152 @@
+#version 330 core
+
+#define SHADOW_SAMPLES 8
+#define FOG_DENSITY 0.8
+
+uniform sampler2D gtexture;
+uniform sampler2D lightmap;
+uniform sampler2D shadowtex0;
+uniform sampler2D noisetex;
+
+uniform mat4 shadowModelView;
+uniform mat4 shadowProjection;
+uniform mat4 gbufferModelViewInverse;
+uniform vec3 shadowLightPosition;
+uniform vec3 fogColor;
+uniform vec3 skyColor;
+uniform float fogStart;
+uniform float fogEnd;
+uniform float rainStrength;
+uniform float frameTimeCounter;
+uniform int isEyeInWater;
+uniform float alphaTestRef = 0.1;
+
+in vec2 texcoord;
+in vec2 lmcoord;
+in vec4 glcolor;
+in vec3 normal;
+in vec3 viewPos;
+in float vertexDistance;
+
+layout(location = 0) out vec4 fragColor;
+
+const float PI = 3.14159265358979;
+const vec2 poissonDisk[8] = vec2[](
+	vec2(-0.94201624, -0.39906216),
+	vec2(0.94558609, -0.76890725),
+	vec2(-0.094184101, -0.92938870),
+	vec2(0.34495938, 0.29387760),
+	vec2(-0.91588581, 0.45771432),
+	vec2(-0.81544232, -0.87912464),
+	vec2(-0.38277543, 0.27676845),
+	vec2(0.97484398, 0.75648379));
+
+struct Material {
+	vec3 albedo;
+	float roughness;
+	float metalness;
+	float emission;
+};
+
+float luminance(vec3 color) {
+	return dot(color, vec3(0.2126, 0.7152, 0.0722));
+}
+
+vec3 toLinear(vec3 srgb) {
+	return pow(srgb, vec3(2.2));
+}
+
+vec3 toSRGB(vec3 linear) {
+	return pow(linear, vec3(1.0 / 2.2));
+}
+
+float interleavedGradientNoise(vec2 coord) {
+	return fract(52.9829189 * fract(dot(coord, vec2(0.06711056, 0.00583715))));
+}
+
+vec3 distortShadow(vec3 shadowPos) {
+	float distortion = length(shadowPos.xy) * 0.9 + 0.1;
+	shadowPos.xy /= distortion;
+	shadowPos.z *= 0.5;
+	return shadowPos;
+}
+
+vec3 getShadowPos(vec3 view, vec3 worldNormal) {
+	vec4 playerPos = gbufferModelViewInverse * vec4(view, 1.0);
+	playerPos.xyz += worldNormal * 0.05;
+	vec4 shadowPos = shadowProjection * (shadowModelView * playerPos);
+	shadowPos.xyz = distortShadow(shadowPos.xyz);
+	return shadowPos.xyz * 0.5 + 0.5;
+}
+
+float sampleShadow(vec3 shadowPos, float dither) {
+	if (shadowPos.x < 0.0 || shadowPos.x > 1.0 || shadowPos.y < 0.0 || shadowPos.y > 1.0) {
+		return 1.0;
+	}
+
+	float angle = dither * 2.0 * PI;
+	mat2 rotation = mat2(cos(angle), -sin(angle), sin(angle), cos(angle));
+	float visibility = 0.0;
+	for (int i = 0; i < SHADOW_SAMPLES; i++) {
+		vec2 offset = rotation * poissonDisk[i] / 2048.0;
+		float depth = texture(shadowtex0, shadowPos.xy + offset).r;
+		visibility += step(shadowPos.z - 0.0005, depth);
+	}
+	return visibility / float(SHADOW_SAMPLES);
+}
+
+Material getMaterial(vec4 albedo) {
+	Material material;
+	material.albedo = toLinear(albedo.rgb);
+	material.roughness = 0.8;
+	material.metalness = 0.0;
+	material.emission = 0.0;
+
+	float lum = luminance(material.albedo);
+	if (lum > 0.9) {
+		material.emission = clamp((lum - 0.9) * 10.0, 0.0, 1.0);
+	}
+	return material;
+}
+
+vec3 diffuseLighting(Material material, vec3 lightDir, float shadow, vec2 light) {
+	float NdotL = max(dot(normal, lightDir), 0.0);
+	vec3 direct = vec3(1.0, 0.95, 0.85) * NdotL * shadow * (1.0 - rainStrength * 0.7);
+	vec3 blockLight = vec3(1.0, 0.6, 0.3) * pow(light.x, 4.0);
+	vec3 ambient = skyColor * light.y * 0.3 + vec3(0.02);
+	return material.albedo * (direct + blockLight + ambient) + material.albedo * material.emission;
+}
+
+vec3 applyFog(vec3 color, float dist) {
+	float fogAmount;
+	switch (isEyeInWater) {
+		case 1:
+			fogAmount = 1.0 - exp(-dist * 0.05);
+			break;
+		case 2:
+			fogAmount = 1.0 - exp(-dist * 0.8);
+			break;
+		default:
+			fogAmount = smoothstep(fogStart, fogEnd, dist) * FOG_DENSITY;
+			break;
+	}
+	return mix(color, toLinear(fogColor), clamp(fogAmount, 0.0, 1.0));
+}
+
+void main() {
+	vec4 albedo = texture(gtexture, texcoord) * glcolor;
+	if (albedo.a < alphaTestRef) {
+		discard;
+	}
+
+	Material material = getMaterial(albedo);
+	vec3 lightDir = normalize(shadowLightPosition);
+	vec3 worldNormal = mat3(gbufferModelViewInverse) * normal;
+	float dither = interleavedGradientNoise(gl_FragCoord.xy + frameTimeCounter);
+	float shadow = sampleShadow(getShadowPos(viewPos, worldNormal), dither);
+
+	vec3 color = diffuseLighting(material, lightDir, shadow, lmcoord);
+	color = applyFog(color, vertexDistance);
+
+	fragColor = vec4(toSRGB(color), albedo.a);
+}
@@ -0,0 +1,76 @@
+#version 150 compatibility
+#extension GL_ARB_explicit_attrib_location : enable
+#pragma optimize(on)
+
+#define WAVING_FOLIAGE
+#ifdef WAVING_FOLIAGE
+#define WAVE_SPEED 1.5
+#endif
+
+precision highp float;
+
+attribute vec4 mc_Entity;
+attribute vec4 at_tangent;
+attribute vec2 mc_midTexCoord;
+
+uniform mat4 gbufferModelView;
+uniform mat4 gbufferProjection;
+uniform vec3 cameraPosition;
+uniform float frameTimeCounter;
+uniform int worldTime;
+
+varying vec2 texcoord;
+varying vec2 lmcoord;
+varying vec4 glcolor;
+flat out int blockId;
+noperspective out float depth;
+centroid out vec3 tangentSpace[3];
+
+const int waveBlocks[4] = int[4](31, 18, 161, 175);
+
+bool isWaving(int id) {
+  for (int i = 0; i < waveBlocks.length(); ++i) {
+    if (waveBlocks[i] == id) {
+      return true;
+    }
+  }
+  return false;
+}
+
+vec3 wave(in vec3 worldPos, inout float strength, out vec2 direction) {
+  float t = frameTimeCounter * WAVE_SPEED;
+  direction = vec2(sin(t + worldPos.x), cos(t * 0.7 + worldPos.z));
+  strength *= (worldTime % 24000 > 12000) ? 0.5 : 1.0;
+  return worldPos + vec3(direction.x, 0.0, direction.y) * strength * 0.05;
+}
+
+void main() {
+  texcoord = (gl_TextureMatrix[0] * gl_MultiTexCoord0).xy;
+  lmcoord = (gl_TextureMatrix[1] * gl_MultiTexCoord1).xy;
+  glcolor = gl_Color;
+  blockId = int(mc_Entity.x + 0.5);
+
+  vec4 position = gl_ModelViewMatrix * gl_Vertex;
+  vec3 worldPos = (gbufferModelView * position).xyz + cameraPosition;
+  float strength = float(blockId & 0xFF) / 255.0;
+  vec2 direction;
+  if (isWaving(blockId) && texcoord.t < mc_midTexCoord.t) {
+    worldPos = wave(worldPos, strength, direction);
+  } else if (blockId == 8 || blockId == 9) {
+    worldPos.y -= 0.1 + sin(worldPos.x * 2.0 + frameTimeCounter) * 0.02;
+  }
+
+  vec3 normal = normalize(gl_NormalMatrix * gl_Normal);
+  vec3 tangent = normalize(gl_NormalMatrix * at_tangent.xyz);
+  tangentSpace[0] = tangent;
+  tangentSpace[1] = cross(tangent, normal) * sign(at_tangent.w);
+  tangentSpace[2] = normal;
+
+  int steps = 0;
+  do {
+    steps++;
+  } while (steps < 2 && !isWaving(blockId));
+
+  gl_Position = gl_ProjectionMatrix * gbufferModelView * vec4(worldPos - cameraPosition, 1.0);
+  depth = gl_Position.z / gl_Position.w;
+}